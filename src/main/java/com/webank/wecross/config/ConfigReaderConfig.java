@@ -5,6 +5,7 @@ import static com.webank.wecross.utils.ConfigUtils.fileIsExists;
 import com.moandjiezana.toml.Toml;
 import com.webank.wecross.common.WeCrossDefault;
 import com.webank.wecross.exception.WeCrossException;
+import com.webank.wecross.network.NettySsl;
 import com.webank.wecross.network.p2p.netty.factory.P2PConfig;
 import com.webank.wecross.network.rpc.netty.RPCConfig;
 import java.util.List;
@@ -151,6 +152,69 @@ public class ConfigReaderConfig {
             logger.info("threadQueueCapacity not set, use default: {}", threadQueueCapacity);
         }
 
+        String codec = (String) p2pMap.get("codec");
+        if (codec == null) {
+            codec = "binary";
+            logger.info("codec not set, use default: {}", codec);
+        } else if (!codec.equals("binary") && !codec.equals("json")) {
+            String errorMessage =
+                    "\"codec\" in [p2p] item must be binary or json, please check "
+                            + WeCrossDefault.MAIN_CONFIG_FILE;
+            throw new WeCrossException(WeCrossException.ErrorCode.UNEXPECTED_CONFIG, errorMessage);
+        }
+
+        // frames larger than this are deflated for peers accepting it, 0 turns it off
+        Long compressThreshold = (Long) p2pMap.get("compressThreshold");
+        if (compressThreshold == null) {
+            compressThreshold = new Long(4096);
+            logger.info("compressThreshold not set, use default: {}", compressThreshold);
+        } else if (compressThreshold < 0) {
+            String errorMessage =
+                    "\"compressThreshold\" in [p2p] item must not be negative, please check "
+                            + WeCrossDefault.MAIN_CONFIG_FILE;
+            throw new WeCrossException(WeCrossException.ErrorCode.UNEXPECTED_CONFIG, errorMessage);
+        }
+
+        // routers before multiple connections reject all but the first one, keep 1 with them
+        Long connectionsPerPeer = (Long) p2pMap.get("connectionsPerPeer");
+        if (connectionsPerPeer == null) {
+            connectionsPerPeer = new Long(1);
+            logger.info("connectionsPerPeer not set, use default: {}", connectionsPerPeer);
+        } else if (connectionsPerPeer < 1) {
+            String errorMessage =
+                    "\"connectionsPerPeer\" in [p2p] item must be positive, please check "
+                            + WeCrossDefault.MAIN_CONFIG_FILE;
+            throw new WeCrossException(WeCrossException.ErrorCode.UNEXPECTED_CONFIG, errorMessage);
+        }
+
+        // requests beyond this many unanswered ones to a peer fail at once as overloaded
+        Long maxInFlightPerPeer = (Long) p2pMap.get("maxInFlightPerPeer");
+        if (maxInFlightPerPeer == null) {
+            maxInFlightPerPeer = new Long(1000);
+            logger.info("maxInFlightPerPeer not set, use default: {}", maxInFlightPerPeer);
+        } else if (maxInFlightPerPeer < 1) {
+            String errorMessage =
+                    "\"maxInFlightPerPeer\" in [p2p] item must be positive, please check "
+                            + WeCrossDefault.MAIN_CONFIG_FILE;
+            throw new WeCrossException(WeCrossException.ErrorCode.UNEXPECTED_CONFIG, errorMessage);
+        }
+
+        // openssl is used if available with auto
+        String sslProvider = (String) p2pMap.get("sslProvider");
+        if (sslProvider == null) {
+            sslProvider = NettySsl.PROVIDER_AUTO;
+            logger.info("sslProvider not set, use default: {}", sslProvider);
+        } else if (!NettySsl.isValidProvider(sslProvider)) {
+            String errorMessage =
+                    "\"sslProvider\" in [p2p] item must be auto, openssl or jdk, please check "
+                            + WeCrossDefault.MAIN_CONFIG_FILE;
+            throw new WeCrossException(WeCrossException.ErrorCode.UNEXPECTED_CONFIG, errorMessage);
+        }
+
+        // cipher suites in order of preference, the defaults of the provider if not set
+        @SuppressWarnings("unchecked")
+        List<String> ciphers = (List<String>) p2pMap.get("ciphers");
+
         p2PConfig.setCaCert(resolver.getResource(caCertPath));
         p2PConfig.setSslCert(resolver.getResource(sslCertPath));
         p2PConfig.setSslKey(resolver.getResource(sslKeyPath));
@@ -159,6 +223,12 @@ public class ConfigReaderConfig {
         p2PConfig.setPeers(peers);
         p2PConfig.setThreadNum(threadNum);
         p2PConfig.setThreadQueueCapacity(threadQueueCapacity);
+        p2PConfig.setCodec(codec);
+        p2PConfig.setCompressThreshold(compressThreshold);
+        p2PConfig.setConnectionsPerPeer(connectionsPerPeer);
+        p2PConfig.setMaxInFlightPerPeer(maxInFlightPerPeer);
+        p2PConfig.setSslProvider(sslProvider);
+        p2PConfig.setCiphers(ciphers);
 
         return p2PConfig;
     }
@@ -244,12 +314,30 @@ public class ConfigReaderConfig {
 
         PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
 
+        // openssl is used if available with auto
+        String sslProvider = (String) rpcMap.get("sslProvider");
+        if (sslProvider == null) {
+            sslProvider = NettySsl.PROVIDER_AUTO;
+            logger.info("rpc sslProvider not set, use default: {}", sslProvider);
+        } else if (!NettySsl.isValidProvider(sslProvider)) {
+            String errorMessage =
+                    "\"sslProvider\" in [rpc] item must be auto, openssl or jdk, please check "
+                            + WeCrossDefault.MAIN_CONFIG_FILE;
+            throw new WeCrossException(WeCrossException.ErrorCode.UNEXPECTED_CONFIG, errorMessage);
+        }
+
+        // cipher suites in order of preference, the defaults of the provider if not set
+        @SuppressWarnings("unchecked")
+        List<String> ciphers = (List<String>) rpcMap.get("ciphers");
+
         rpcConfig.setCaCert(resolver.getResource(caCertPath));
         rpcConfig.setSslCert(resolver.getResource(sslCertPath));
         rpcConfig.setSslKey(resolver.getResource(sslKeyPath));
         rpcConfig.setListenIP(listenIP);
         rpcConfig.setSslSwitch(sslSwitch.intValue());
         rpcConfig.setListenPort(listenPort);
+        rpcConfig.setSslProvider(sslProvider);
+        rpcConfig.setCiphers(ciphers);
 
         logger.info(" RPC config: {}", rpcConfig);
 
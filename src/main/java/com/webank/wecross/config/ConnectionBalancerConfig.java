@@ -0,0 +1,38 @@
+package com.webank.wecross.config;
+
+import com.moandjiezana.toml.Toml;
+import com.webank.wecross.resource.balancer.ConnectionBalancer;
+import com.webank.wecross.resource.balancer.ConnectionBalancerFactory;
+import javax.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ConnectionBalancerConfig {
+    private static Logger logger = LoggerFactory.getLogger(ConnectionBalancerConfig.class);
+
+    @Resource Toml toml;
+
+    @Bean
+    public ConnectionBalancer newConnectionBalancer() {
+        // remote routers serving the same chain share its requests by this strategy
+        String strategy = toml.getString("advanced.connectionBalancer");
+        if (strategy == null) {
+            strategy = ConnectionBalancerFactory.EWMA;
+            if (logger.isDebugEnabled()) {
+                logger.debug("[advanced.connectionBalancer] not set, use default: " + strategy);
+            }
+        } else if (!ConnectionBalancerFactory.isValidStrategy(strategy)) {
+            logger.error(
+                    "Unsupported [advanced.connectionBalancer]: {}, use default: {}",
+                    strategy,
+                    ConnectionBalancerFactory.EWMA);
+            strategy = ConnectionBalancerFactory.EWMA;
+        }
+
+        logger.info("Connection balancer: {}", strategy);
+        return ConnectionBalancerFactory.build(strategy);
+    }
+}
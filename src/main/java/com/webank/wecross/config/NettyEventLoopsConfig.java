@@ -0,0 +1,50 @@
+package com.webank.wecross.config;
+
+import com.moandjiezana.toml.Toml;
+import com.webank.wecross.network.NettyEventLoops;
+import javax.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class NettyEventLoopsConfig {
+    private static Logger logger = LoggerFactory.getLogger(NettyEventLoopsConfig.class);
+
+    @Resource Toml toml;
+
+    @Bean
+    public NettyEventLoops newNettyEventLoops() {
+        Boolean epoll = toml.getBoolean("advanced.eventLoop.epoll");
+        if (epoll == null) {
+            epoll = true;
+            if (logger.isDebugEnabled()) {
+                logger.debug("[advanced.eventLoop.epoll] not set, use default: " + epoll);
+            }
+        }
+
+        // p2p and rpc listen on one socket each
+        Long bossThreads = toml.getLong("advanced.eventLoop.bossThreads");
+        if (bossThreads == null) {
+            bossThreads = (long) 1;
+            if (logger.isDebugEnabled()) {
+                logger.debug(
+                        "[advanced.eventLoop.bossThreads] not set, use default: " + bossThreads);
+            }
+        }
+
+        // 0 leaves it to netty, twice the number of cores
+        Long workerThreads = toml.getLong("advanced.eventLoop.workerThreads");
+        if (workerThreads == null) {
+            workerThreads = (long) 0;
+            if (logger.isDebugEnabled()) {
+                logger.debug(
+                        "[advanced.eventLoop.workerThreads] not set, use default: "
+                                + workerThreads);
+            }
+        }
+
+        return new NettyEventLoops(epoll, bossThreads.intValue(), workerThreads.intValue());
+    }
+}
@@ -1,5 +1,6 @@
 package com.webank.wecross.config;
 
+import com.webank.wecross.network.NettyEventLoops;
 import com.webank.wecross.network.p2p.P2PService;
 import com.webank.wecross.network.p2p.netty.NettyBootstrap;
 import com.webank.wecross.network.p2p.netty.NettyService;
@@ -11,6 +12,7 @@ import com.webank.wecross.network.p2p.netty.factory.P2PConfig;
 import com.webank.wecross.network.p2p.netty.factory.SeqMapperFactory;
 import com.webank.wecross.network.p2p.netty.factory.ThreadPoolTaskExecutorFactory;
 import com.webank.wecross.network.p2p.netty.message.MessageCallBack;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageCompressor;
 import com.webank.wecross.peer.PeerManager;
 import com.webank.wecross.zone.ZoneManager;
 import javax.annotation.Resource;
@@ -27,6 +29,8 @@ public class P2PServiceConfig {
 
     @Resource ZoneManager zoneManager;
 
+    @Resource NettyEventLoops nettyEventLoops;
+
     @Bean
     public P2PService newP2PService() {
         ThreadPoolTaskExecutor threadPool =
@@ -35,15 +39,21 @@ public class P2PServiceConfig {
                         p2pConfig.getThreadQueueCapacity(),
                         "p2p-callback");
         SeqMapper seqMapper = SeqMapperFactory.build();
+        MessageCompressor messageCompressor = new MessageCompressor();
+        messageCompressor.setThreshold(p2pConfig.getCompressThreshold().intValue());
         MessageCallBack messageCallback =
-                MessageCallbackFactory.build(seqMapper, peerManager, zoneManager);
+                MessageCallbackFactory.build(
+                        seqMapper, messageCompressor, peerManager, zoneManager);
         NettyBootstrap nettyBootstrap =
-                NettyBootstrapFactory.build(p2pConfig, threadPool, messageCallback);
+                NettyBootstrapFactory.build(
+                        p2pConfig, threadPool, messageCallback, nettyEventLoops);
         NettyService nettyService =
-                NettyServiceFactory.build(seqMapper, threadPool, nettyBootstrap);
+                NettyServiceFactory.build(seqMapper, messageCompressor, threadPool, nettyBootstrap);
 
         P2PService p2PService = new P2PService();
         p2PService.setNettyService(nettyService);
+        // JSON is still accepted from peers, binary is only used once a peer agrees to it
+        p2PService.setBinaryCodecEnabled(!"json".equals(p2pConfig.getCodec()));
         return p2PService;
     }
 }
@@ -1,5 +1,6 @@
 package com.webank.wecross.config;
 
+import com.webank.wecross.network.NettyEventLoops;
 import com.webank.wecross.network.rpc.RPCService;
 import com.webank.wecross.network.rpc.URIHandlerDispatcher;
 import com.webank.wecross.network.rpc.netty.RPCBootstrap;
@@ -12,10 +13,13 @@ import org.springframework.context.annotation.Configuration;
 public class RPCServiceConfig {
     @Resource RPCConfig rpcConfig;
 
+    @Resource NettyEventLoops nettyEventLoops;
+
     @Bean
     public RPCService newRPCService() {
         RPCBootstrap rpcBootstrap = new RPCBootstrap();
         rpcBootstrap.setConfig(rpcConfig);
+        rpcBootstrap.setEventLoops(nettyEventLoops);
 
         URIHandlerDispatcher uriHandlerDispatcher = new URIHandlerDispatcher();
         rpcBootstrap.setUriHandlerDispatcher(uriHandlerDispatcher);
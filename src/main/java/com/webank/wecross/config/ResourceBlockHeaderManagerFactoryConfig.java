@@ -1,16 +1,124 @@
 package com.webank.wecross.config;
 
+import com.moandjiezana.toml.Toml;
+import com.webank.wecross.common.WeCrossDefault;
+import com.webank.wecross.exception.WeCrossException;
 import com.webank.wecross.stubmanager.MemoryBlockHeaderManagerFactory;
 import javax.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class ResourceBlockHeaderManagerFactoryConfig {
+    private static Logger logger =
+            LoggerFactory.getLogger(ResourceBlockHeaderManagerFactoryConfig.class);
+
+    @Resource Toml toml;
+
     @Resource ResourceThreadPoolConfig.ResourceThreadPool resourceThreadPool;
 
     @Bean
-    public MemoryBlockHeaderManagerFactory newResourceBlockHeaderManagerFactory() {
-        return new MemoryBlockHeaderManagerFactory(resourceThreadPool);
+    public MemoryBlockHeaderManagerFactory newResourceBlockHeaderManagerFactory()
+            throws WeCrossException {
+        MemoryBlockHeaderManagerFactory factory =
+                new MemoryBlockHeaderManagerFactory(resourceThreadPool);
+
+        factory.setMaxCacheSize(
+                (int) getPositive("maxCacheSize", factory.getMaxCacheSize(), Integer.MAX_VALUE));
+        factory.setSyncWindow(
+                (int) getPositive("syncWindow", factory.getSyncWindow(), Integer.MAX_VALUE));
+        factory.setSyncBatchSize(
+                (int) getPositive("syncBatchSize", factory.getSyncBatchSize(), Integer.MAX_VALUE));
+        factory.setSyncBatchTimeout(
+                getPositive("syncBatchTimeout", factory.getSyncBatchTimeout(), Long.MAX_VALUE));
+
+        // further behind the tip, e.g. after a long downtime, sync from the tip like a cold start
+        factory.setMaxCatchUpBlocks(
+                getPositive("maxCatchUpBlocks", factory.getMaxCatchUpBlocks(), Long.MAX_VALUE));
+
+        long minPollDelay = getPositive("minPollDelay", factory.getMinPollDelay(), Long.MAX_VALUE);
+        long maxPollDelay = getPositive("maxPollDelay", factory.getMaxPollDelay(), Long.MAX_VALUE);
+        if (minPollDelay > maxPollDelay) {
+            String errorMessage =
+                    "[advanced.blockHeaderManager.minPollDelay] must not be greater than"
+                            + " [advanced.blockHeaderManager.maxPollDelay], please check "
+                            + WeCrossDefault.MAIN_CONFIG_FILE;
+            throw new WeCrossException(WeCrossException.ErrorCode.UNEXPECTED_CONFIG, errorMessage);
+        }
+        factory.setMinPollDelay(minPollDelay);
+        factory.setMaxPollDelay(maxPollDelay);
+
+        String storage = toml.getString("advanced.blockHeaderManager.storage");
+        if (storage != null) {
+            if (!storage.equals(MemoryBlockHeaderManagerFactory.STORAGE_MEMORY)
+                    && !storage.equals(MemoryBlockHeaderManagerFactory.STORAGE_MMAP)) {
+                logger.error(
+                        "Unsupported [advanced.blockHeaderManager.storage]: {}, use default: {}",
+                        storage,
+                        factory.getStorage());
+            } else {
+                factory.setStorage(storage);
+            }
+        }
+
+        String storagePath = toml.getString("advanced.blockHeaderManager.path");
+        if (storagePath == null) {
+            storagePath = factory.getStoragePath();
+            if (logger.isDebugEnabled()) {
+                logger.debug(
+                        "[advanced.blockHeaderManager.path] not set, use default: " + storagePath);
+            }
+        } else if (storagePath.trim().isEmpty()) {
+            String errorMessage =
+                    "[advanced.blockHeaderManager.path] must not be empty, please check "
+                            + WeCrossDefault.MAIN_CONFIG_FILE;
+            throw new WeCrossException(WeCrossException.ErrorCode.UNEXPECTED_CONFIG, errorMessage);
+        }
+        factory.setStoragePath(storagePath);
+
+        factory.setSegmentSize(
+                (int) getPositive("segmentSize", factory.getSegmentSize(), Integer.MAX_VALUE));
+        factory.setMaxSegments(
+                (int) getPositive("maxSegments", factory.getMaxSegments(), Integer.MAX_VALUE));
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(
+                    "Block header storage: {}, path: {}, segmentSize: {}, maxSegments: {}",
+                    factory.getStorage(),
+                    factory.getStoragePath(),
+                    factory.getSegmentSize(),
+                    factory.getMaxSegments());
+        }
+
+        return factory;
+    }
+
+    private long getPositive(String key, long defaultValue, long maxValue)
+            throws WeCrossException {
+        Long value = toml.getLong("advanced.blockHeaderManager." + key);
+        if (value == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(
+                        "[advanced.blockHeaderManager."
+                                + key
+                                + "] not set, use default: "
+                                + defaultValue);
+            }
+            return defaultValue;
+        }
+
+        if (value <= 0 || value > maxValue) {
+            String errorMessage =
+                    "[advanced.blockHeaderManager."
+                            + key
+                            + "] must be "
+                            + (value <= 0 ? "positive" : "at most " + maxValue)
+                            + ", please check "
+                            + WeCrossDefault.MAIN_CONFIG_FILE;
+            throw new WeCrossException(WeCrossException.ErrorCode.UNEXPECTED_CONFIG, errorMessage);
+        }
+        return value;
     }
 }
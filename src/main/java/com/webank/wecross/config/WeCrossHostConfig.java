@@ -55,6 +55,9 @@ public class WeCrossHostConfig {
 
         // Service layer set processor
         p2PService.setNetworkProcessor(p2PProcessor);
+        // peers also carry their seq on heartbeats
+        p2PService.setSeqHandler(
+                (node, seq) -> p2PProcessor.onPeerSeq(peerManager.getPeerInfo(node), seq));
 
         host.start();
         return host;
@@ -1,9 +1,14 @@
 package com.webank.wecross.config;
 
+import com.webank.wecross.peer.PeerManager;
+import com.webank.wecross.remote.BlockHeaderPushService;
+import com.webank.wecross.resource.balancer.ConnectionBalancer;
 import com.webank.wecross.stub.Connection;
+import com.webank.wecross.stub.Path;
 import com.webank.wecross.stub.ResourceInfo;
 import com.webank.wecross.stubmanager.MemoryBlockHeaderManagerFactory;
 import com.webank.wecross.stubmanager.StubManager;
+import com.webank.wecross.utils.core.PathUtils;
 import com.webank.wecross.zone.Chain;
 import com.webank.wecross.zone.Zone;
 import com.webank.wecross.zone.ZoneManager;
@@ -22,6 +27,10 @@ public class ZoneManagerConfig {
 
     @Resource private MemoryBlockHeaderManagerFactory resourceBlockHeaderManagerFactory;
 
+    @Resource private PeerManager peerManager;
+
+    @Resource private ConnectionBalancer connectionBalancer;
+
     @Bean
     public ZoneManager newZoneManager() {
         System.out.println("Initializing ZoneManager ...");
@@ -30,16 +39,39 @@ public class ZoneManagerConfig {
         zoneManager.setZones(zones);
         zoneManager.setStubManager(stubManager);
         zoneManager.setResourceBlockHeaderManagerFactory(resourceBlockHeaderManagerFactory);
+        zoneManager.setConnectionBalancer(connectionBalancer);
         addChangeEvent(zoneManager);
 
+        BlockHeaderPushService blockHeaderPushService = new BlockHeaderPushService();
+        blockHeaderPushService.setZoneManager(zoneManager);
+        blockHeaderPushService.setPeerManager(peerManager);
+        zoneManager.setBlockHeaderPushService(blockHeaderPushService);
+
         return zoneManager;
     }
 
     private void addChangeEvent(ZoneManager zoneManager) {
         Map<String, Zone> zones = zoneManager.getZones();
-        for (Zone zone : zones.values()) {
-            Map<String, Chain> chains = zone.getChains();
-            for (Chain chain : chains.values()) {
+        for (Map.Entry<String, Zone> zoneEntry : zones.entrySet()) {
+            Map<String, Chain> chains = zoneEntry.getValue().getChains();
+            for (Map.Entry<String, Chain> chainEntry : chains.entrySet()) {
+                Chain chain = chainEntry.getValue();
+
+                // the chain is known by this path in the peer info of peers
+                Path path = new Path();
+                path.setZone(zoneEntry.getKey());
+                path.setChain(PathUtils.toPureName(chainEntry.getKey()));
+                String chainPath = path.toString();
+
+                // peers learn a new checksum by the changed seq
+                chain.setChecksumChangeHandler(
+                        new Chain.ChecksumChangeHandler() {
+                            @Override
+                            public void onChecksumChange(String checksum) {
+                                zoneManager.newSeq(chainPath);
+                            }
+                        });
+
                 Connection localConnection = chain.getLocalConnection();
                 if (localConnection != null) {
                     localConnection.setConnectionEventHandler(
@@ -47,7 +79,7 @@ public class ZoneManagerConfig {
                                 @Override
                                 public void onResourcesChange(List<ResourceInfo> resourceInfos) {
                                     chain.updateLocalResources(resourceInfos);
-                                    zoneManager.newSeq();
+                                    zoneManager.newSeq(chainPath);
                                 }
                             });
                 }
@@ -12,13 +12,26 @@ import com.webank.wecross.stubmanager.MemoryBlockHeaderManagerFactory;
 import com.webank.wecross.stubmanager.StubManager;
 import com.webank.wecross.utils.ConfigUtils;
 import com.webank.wecross.zone.Chain;
+import com.webank.wecross.zone.ChainChecksumCache;
 import com.webank.wecross.zone.ChainInfo;
 import com.webank.wecross.zone.Zone;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +42,9 @@ import org.springframework.context.annotation.Configuration;
 public class ZonesConfig {
     private Logger logger = LoggerFactory.getLogger(ZonesConfig.class);
 
+    private static final int DEFAULT_BOOTSTRAP_THREADS = 8;
+    private static final String DEFAULT_CHECKSUM_CACHE = "checksums.properties";
+
     @Resource Toml toml;
 
     @Resource StubManager stubManager;
@@ -94,93 +110,257 @@ public class ZonesConfig {
     public Map<String, Chain> getChains(String zone, Map<String, String> chainsDir)
             throws WeCrossException {
         Map<String, Chain> stubMap = new HashMap<>();
+        if (chainsDir.isEmpty()) {
+            return stubMap;
+        }
 
-        for (String chainName : chainsDir.keySet()) {
-            String stubPath = chainsDir.get(chainName);
-            String stubFile = stubPath + File.separator + WeCrossDefault.STUB_CONFIG_FILE;
-            Toml stubToml;
-            try {
-                stubToml = ConfigUtils.getToml(stubFile);
-            } catch (WeCrossException e) {
-                String errorMessage = "Parse " + stubFile + " failed";
-                logger.error(errorMessage, e);
-                throw new WeCrossException(
-                        WeCrossException.ErrorCode.UNEXPECTED_CONFIG, errorMessage);
+        // connecting and fetching the genesis block may block for seconds, load chains in parallel
+        List<String> chainNames = new ArrayList<String>(chainsDir.keySet());
+        Collections.sort(chainNames);
+        int threads = Math.min(getBootstrapThreads(), chainNames.size());
+        ExecutorService executor =
+                Executors.newFixedThreadPool(threads, newThreadFactory("chain-bootstrap-"));
+        ChainChecksumCache checksumCache = newChecksumCache();
+        Map<String, Boolean> checksumCached = new ConcurrentHashMap<String, Boolean>();
+
+        long bootstrapStart = System.currentTimeMillis();
+        try {
+            Map<String, Future<Chain>> futures = new LinkedHashMap<String, Future<Chain>>();
+            for (String chainName : chainNames) {
+                String stubPath = chainsDir.get(chainName);
+                futures.put(
+                        chainName,
+                        executor.submit(
+                                () ->
+                                        loadChain(
+                                                zone,
+                                                chainName,
+                                                stubPath,
+                                                checksumCache,
+                                                checksumCached)));
             }
 
-            String type = stubToml.getString("common.type");
-            if (type == null) {
-                String errorMessage =
-                        "\"type\" in [common] item  not found, please check " + stubFile;
-                throw new WeCrossException(WeCrossException.ErrorCode.FIELD_MISSING, errorMessage);
+            // wait for every chain and report failures in chain name order, whichever fails first
+            WeCrossException firstException = null;
+            for (Map.Entry<String, Future<Chain>> entry : futures.entrySet()) {
+                try {
+                    stubMap.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    WeCrossException exception =
+                            e.getCause() instanceof WeCrossException
+                                    ? (WeCrossException) e.getCause()
+                                    : new WeCrossException(
+                                            WeCrossException.ErrorCode.INTERNAL_ERROR,
+                                            "Load chain " + entry.getKey() + " failed",
+                                            e.getCause());
+                    logger.error(
+                            "Load chain {} failed: {}", entry.getKey(), exception.getMessage());
+                    if (firstException == null) {
+                        firstException = exception;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new WeCrossException(
+                            WeCrossException.ErrorCode.INTERNAL_ERROR, "Load chains interrupted");
+                }
             }
 
-            String configureChainName = stubToml.getString("common.name");
-            if (Objects.isNull(configureChainName) || !chainName.equals(configureChainName)) {
-                String errorMessage =
-                        "name = '"
-                                + configureChainName
-                                + "' in [common] item is not the same as the dir name: "
-                                + chainName;
-                throw new WeCrossException(WeCrossException.ErrorCode.FIELD_MISSING, errorMessage);
+            if (firstException != null) {
+                throw firstException;
             }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (String chainName : chainNames) {
+            stubMap.get(chainName).start();
+        }
+
+        logger.info(
+                "Load {} chains in {} ms, threads: {}",
+                stubMap.size(),
+                System.currentTimeMillis() - bootstrapStart,
+                threads);
 
-            StubFactory stubFactory = stubManager.getStubFactory(type);
-            if (stubFactory == null) {
-                logger.error("Can not find stub type: {}", type);
+        revalidateChecksums(zone, stubMap, checksumCache, checksumCached.keySet());
+        return stubMap;
+    }
+
+    /** Cached checksums are trusted on startup, check them against the chains in background */
+    private void revalidateChecksums(
+            String zone,
+            Map<String, Chain> chains,
+            ChainChecksumCache checksumCache,
+            Set<String> chainNames) {
+        if (chainNames.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor =
+                Executors.newSingleThreadExecutor(newThreadFactory("chain-checksum-"));
+        for (String chainName : new TreeSet<String>(chainNames)) {
+            Chain chain = chains.get(chainName);
+            executor.execute(
+                    () -> {
+                        Connection connection = chain.getLocalConnection();
+                        try {
+                            String checksum =
+                                    ChainInfo.buildChecksum(chain.getDriver(), connection);
+                            checksumCache.put(
+                                    zone + "." + chainName, connection.getProperties(), checksum);
+                            chain.updateChecksum(checksum);
+                        } catch (WeCrossException e) {
+                            logger.warn(
+                                    "Revalidate checksum of chain {} failed, keep cached: {}",
+                                    chainName,
+                                    e.getMessage());
+                        }
+                    });
+        }
+        executor.shutdown();
+    }
+
+    private Chain loadChain(
+            String zone,
+            String chainName,
+            String stubPath,
+            ChainChecksumCache checksumCache,
+            Map<String, Boolean> checksumCached)
+            throws WeCrossException {
+        long startTime = System.currentTimeMillis();
+        String stubFile = stubPath + File.separator + WeCrossDefault.STUB_CONFIG_FILE;
+        Toml stubToml;
+        try {
+            stubToml = ConfigUtils.getToml(stubFile);
+        } catch (WeCrossException e) {
+            String errorMessage = "Parse " + stubFile + " failed";
+            logger.error(errorMessage, e);
+            throw new WeCrossException(WeCrossException.ErrorCode.UNEXPECTED_CONFIG, errorMessage);
+        }
 
-                throw new WeCrossException(-1, "Cannot find stub type: " + type);
+        String type = stubToml.getString("common.type");
+        if (type == null) {
+            String errorMessage = "\"type\" in [common] item  not found, please check " + stubFile;
+            throw new WeCrossException(WeCrossException.ErrorCode.FIELD_MISSING, errorMessage);
+        }
+
+        String configureChainName = stubToml.getString("common.name");
+        if (Objects.isNull(configureChainName) || !chainName.equals(configureChainName)) {
+            String errorMessage =
+                    "name = '"
+                            + configureChainName
+                            + "' in [common] item is not the same as the dir name: "
+                            + chainName;
+            throw new WeCrossException(WeCrossException.ErrorCode.FIELD_MISSING, errorMessage);
+        }
+
+        StubFactory stubFactory = stubManager.getStubFactory(type);
+        if (stubFactory == null) {
+            logger.error("Can not find stub type: {}", type);
+
+            throw new WeCrossException(-1, "Cannot find stub type: " + type);
+        }
+        long connectionStart = System.currentTimeMillis();
+        Connection localConnection = stubFactory.newConnection(stubPath);
+        long connectionTime = System.currentTimeMillis() - connectionStart;
+
+        if (localConnection == null) {
+            logger.error("Init localConnection: {}-{} failed", stubPath, type);
+
+            throw new WeCrossException(-1, "Init localConnection failed");
+        }
+
+        Driver driver = stubFactory.newDriver();
+        List<ResourceInfo> resources = localConnection.getResources();
+        long checksumStart = System.currentTimeMillis();
+        String chainPath = zone + "." + chainName;
+        String checksum = checksumCache.get(chainPath, localConnection.getProperties());
+        if (checksum != null) {
+            checksumCached.put(chainName, Boolean.TRUE);
+        } else {
+            checksum = ChainInfo.buildChecksum(driver, localConnection);
+            checksumCache.put(chainPath, localConnection.getProperties(), checksum);
+        }
+        long checksumTime = System.currentTimeMillis() - checksumStart;
+
+        ChainInfo chainInfo = new ChainInfo();
+        chainInfo.setName(chainName);
+        chainInfo.setProperties(localConnection.getProperties());
+        chainInfo.setStubType(type);
+        chainInfo.setResources(resources);
+        chainInfo.setChecksum(checksum);
+
+        Chain chain = new Chain(zone, chainInfo, driver, localConnection);
+        chain.setDriver(stubFactory.newDriver());
+        chain.setBlockHeaderManager(resourceBlockHeaderManagerFactory.build(chain));
+        for (ResourceInfo resourceInfo : resources) {
+            com.webank.wecross.resource.Resource resource =
+                    new com.webank.wecross.resource.Resource();
+            Path path = new Path();
+            path.setZone(zone);
+            path.setChain(chainInfo.getName());
+            path.setResource(resourceInfo.getName());
+            resource.setPath(path);
+            resource.setDriver(chain.getDriver());
+            resource.addConnection(null, localConnection);
+            resource.setStubType(type);
+            resource.setResourceInfo(resourceInfo);
+
+            resource.setBlockHeaderManager(chain.getBlockHeaderManager());
+
+            chain.getResources().put(resourceInfo.getName(), resource);
+            logger.info(
+                    "Load local resource({}.{}.{}): {}",
+                    zone,
+                    chainName,
+                    resource.getResourceInfo().getName(),
+                    resource.getResourceInfo());
+        }
+        logger.info(
+                "Load chain {} in {} ms, connection: {} ms, checksum: {} ms{}",
+                chainName,
+                System.currentTimeMillis() - startTime,
+                connectionTime,
+                checksumTime,
+                checksumCached.containsKey(chainName) ? " (cached)" : "");
+        return chain;
+    }
+
+    private ChainChecksumCache newChecksumCache() {
+        String path = toml.getString("advanced.checksumCache");
+        if (path == null) {
+            path = DEFAULT_CHECKSUM_CACHE;
+            if (logger.isDebugEnabled()) {
+                logger.debug("[advanced.checksumCache] not set, use default: " + path);
             }
-            Connection localConnection = stubFactory.newConnection(stubPath);
+        }
+        return new ChainChecksumCache(new File(path));
+    }
 
-            if (localConnection == null) {
-                logger.error("Init localConnection: {}-{} failed", stubPath, type);
+    private ThreadFactory newThreadFactory(String prefix) {
+        return new ThreadFactory() {
+            private AtomicInteger index = new AtomicInteger(0);
 
-                throw new WeCrossException(-1, "Init localConnection failed");
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, prefix + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
             }
+        };
+    }
 
-            Driver driver = stubFactory.newDriver();
-            List<ResourceInfo> resources = localConnection.getResources();
-            String checksum = ChainInfo.buildChecksum(driver, localConnection);
-
-            ChainInfo chainInfo = new ChainInfo();
-            chainInfo.setName(chainName);
-            chainInfo.setProperties(localConnection.getProperties());
-            chainInfo.setStubType(type);
-            chainInfo.setResources(resources);
-            chainInfo.setChecksum(checksum);
-
-            Chain chain = new Chain(zone, chainInfo, driver, localConnection);
-            chain.setDriver(stubFactory.newDriver());
-            chain.setBlockHeaderManager(resourceBlockHeaderManagerFactory.build(chain));
-            for (ResourceInfo resourceInfo : resources) {
-                com.webank.wecross.resource.Resource resource =
-                        new com.webank.wecross.resource.Resource();
-                Path path = new Path();
-                path.setZone(zone);
-                path.setChain(chainInfo.getName());
-                path.setResource(resourceInfo.getName());
-                resource.setPath(path);
-                resource.setDriver(chain.getDriver());
-                resource.addConnection(null, localConnection);
-                resource.setStubType(type);
-                resource.setResourceInfo(resourceInfo);
-
-                resource.setBlockHeaderManager(chain.getBlockHeaderManager());
-
-                chain.getResources().put(resourceInfo.getName(), resource);
-                logger.info(
-                        "Load local resource({}.{}.{}): {}",
-                        zone,
-                        chainName,
-                        resource.getResourceInfo().getName(),
-                        resource.getResourceInfo());
+    private int getBootstrapThreads() {
+        Long bootstrapThreads = toml.getLong("advanced.chainBootstrapThreads");
+        if (bootstrapThreads == null || bootstrapThreads <= 0) {
+            bootstrapThreads = (long) DEFAULT_BOOTSTRAP_THREADS;
+            if (logger.isDebugEnabled()) {
+                logger.debug(
+                        "[advanced.chainBootstrapThreads] not set, use default: "
+                                + bootstrapThreads);
             }
-            stubMap.put(chainName, chain);
-            chain.start();
         }
-
-        return stubMap;
+        return bootstrapThreads.intValue();
     }
 
     public Toml getToml() {
@@ -1,7 +1,11 @@
 package com.webank.wecross.host;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.webank.wecross.account.AccountManager;
+import com.webank.wecross.common.NetworkQueryStatus;
+import com.webank.wecross.network.NetworkCallback;
 import com.webank.wecross.network.NetworkMessage;
+import com.webank.wecross.network.NetworkResponse;
 import com.webank.wecross.network.p2p.P2PService;
 import com.webank.wecross.network.rpc.RPCService;
 import com.webank.wecross.peer.Peer;
@@ -77,7 +81,7 @@ public class WeCrossHost {
                 flag = false;
             }
 
-            broadcastResourceSeq();
+            announceResourceSeq();
             dumpStatus();
         }
         System.exit(0);
@@ -101,23 +105,47 @@ public class WeCrossHost {
         }
     }
 
-    private void broadcastResourceSeq() {
+    /**
+     * Announce the seq to peers which have not seen it yet, that is after a change or a new
+     * connection. Changes within one loop are announced once, peers learn seqs missed here from
+     * heartbeats.
+     */
+    private void announceResourceSeq() {
         int seq = zoneManager.getSeq();
 
-        PeerSeqMessageData peerSeqMessageData = new PeerSeqMessageData();
-        peerSeqMessageData.setSeq(seq);
-
-        NetworkMessage<Object> msg = new NetworkMessage<>();
-        msg.newSeq();
-        msg.setData(peerSeqMessageData);
-        msg.setVersion(Versions.currentVersion);
-        msg.setMethod("seq");
-
         for (Peer peer : peerManager.getPeerInfos().values()) {
+            if (peer.getAnnouncedSeq() == seq) {
+                continue;
+            }
+            peer.setAnnouncedSeq(seq);
+
+            PeerSeqMessageData peerSeqMessageData = new PeerSeqMessageData();
+            peerSeqMessageData.setSeq(seq);
+
+            NetworkMessage<Object> msg = new NetworkMessage<>();
+            msg.newSeq();
+            msg.setData(peerSeqMessageData);
+            msg.setVersion(Versions.currentVersion);
+            msg.setMethod("seq");
+
+            NetworkCallback<Object> callback =
+                    new NetworkCallback<Object>() {
+                        @Override
+                        public void onResponse(
+                                int status, String message, NetworkResponse<Object> response) {
+                            if (status != NetworkQueryStatus.SUCCESS
+                                    && peer.getAnnouncedSeq() == seq) {
+                                // announce again in the next loop
+                                peer.setAnnouncedSeq(0);
+                            }
+                        }
+                    };
+            callback.setTypeReference(new TypeReference<NetworkResponse<Object>>() {});
+
             if (logger.isDebugEnabled()) {
                 logger.debug("Send peer seq, to peer:{}, seq:{}", peer, seq);
             }
-            zoneManager.getP2PService().asyncSendMessage(peer, msg, null);
+            zoneManager.getP2PService().asyncSendMessage(peer, msg, callback);
         }
     }
 
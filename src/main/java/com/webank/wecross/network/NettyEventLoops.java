@@ -0,0 +1,74 @@
+package com.webank.wecross.network;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Event loop groups shared by the p2p server, the p2p client and the rpc server. The native epoll
+ * transport is used on Linux when enabled, NIO otherwise.
+ */
+public class NettyEventLoops {
+    private static final Logger logger = LoggerFactory.getLogger(NettyEventLoops.class);
+
+    private boolean epoll;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+
+    /**
+     * @param useEpoll use the epoll transport if available
+     * @param bossThreads threads accepting connections
+     * @param workerThreads threads serving connections, 0 for twice the number of cores
+     */
+    public NettyEventLoops(boolean useEpoll, int bossThreads, int workerThreads) {
+        if (useEpoll && !Epoll.isAvailable()) {
+            logger.warn(" epoll not available, use nio, cause: {}", Epoll.unavailabilityCause());
+        }
+        this.epoll = useEpoll && Epoll.isAvailable();
+
+        if (epoll) {
+            bossGroup = new EpollEventLoopGroup(bossThreads, new DefaultThreadFactory("boss"));
+            workerGroup =
+                    new EpollEventLoopGroup(workerThreads, new DefaultThreadFactory("worker"));
+        } else {
+            bossGroup = new NioEventLoopGroup(bossThreads, new DefaultThreadFactory("boss"));
+            workerGroup = new NioEventLoopGroup(workerThreads, new DefaultThreadFactory("worker"));
+        }
+
+        logger.info(
+                " event loops, epoll: {}, boss threads: {}, worker threads: {}",
+                epoll,
+                bossThreads,
+                workerThreads);
+    }
+
+    public boolean isEpoll() {
+        return epoll;
+    }
+
+    public EventLoopGroup getBossGroup() {
+        return bossGroup;
+    }
+
+    public EventLoopGroup getWorkerGroup() {
+        return workerGroup;
+    }
+
+    public Class<? extends ServerChannel> getServerChannelClass() {
+        return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public Class<? extends SocketChannel> getChannelClass() {
+        return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+}
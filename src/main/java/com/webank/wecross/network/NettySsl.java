@@ -0,0 +1,74 @@
+package com.webank.wecross.network;
+
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TLS settings shared by p2p and rpc. OpenSSL (netty-tcnative) is preferred when available, it
+ * also issues session tickets on its own. Sessions are cached on both sides, so that a reconnect
+ * resumes the session instead of a full handshake. Clients resume by the host and port of the
+ * server, their handlers must be created with them.
+ */
+public class NettySsl {
+    private static final Logger logger = LoggerFactory.getLogger(NettySsl.class);
+
+    public static final String PROVIDER_AUTO = "auto";
+    public static final String PROVIDER_OPENSSL = "openssl";
+    public static final String PROVIDER_JDK = "jdk";
+
+    /** sessions cached by a context, default 1024 */
+    public static final long SESSION_CACHE_SIZE = 1024;
+    /** seconds a cached session can be resumed, default 3600 */
+    public static final long SESSION_TIMEOUT = 3600;
+
+    public static boolean isValidProvider(String provider) {
+        return PROVIDER_AUTO.equals(provider)
+                || PROVIDER_OPENSSL.equals(provider)
+                || PROVIDER_JDK.equals(provider);
+    }
+
+    /** @param provider auto, openssl or jdk, OpenSSL falls back to the JDK if not available */
+    public static SslProvider getProvider(String provider) {
+        if (PROVIDER_JDK.equals(provider)) {
+            return SslProvider.JDK;
+        }
+
+        if (OpenSsl.isAvailable()) {
+            return SslProvider.OPENSSL;
+        }
+
+        if (PROVIDER_OPENSSL.equals(provider)) {
+            logger.warn(" openssl not available, use jdk, cause: {}", OpenSsl.unavailabilityCause());
+        }
+        return SslProvider.JDK;
+    }
+
+    /**
+     * Set provider, session cache and cipher suites
+     *
+     * @param builder
+     * @param provider auto, openssl or jdk
+     * @param ciphers cipher suites to use, those not supported are left out, null or empty for
+     *     the defaults of the provider
+     * @return
+     */
+    public static SslContextBuilder configure(
+            SslContextBuilder builder, String provider, List<String> ciphers) {
+        SslProvider sslProvider = getProvider(provider);
+        builder.sslProvider(sslProvider)
+                .sessionCacheSize(SESSION_CACHE_SIZE)
+                .sessionTimeout(SESSION_TIMEOUT);
+
+        if (ciphers != null && !ciphers.isEmpty()) {
+            builder.ciphers(ciphers, SupportedCipherSuiteFilter.INSTANCE);
+        }
+
+        logger.info(" ssl provider: {}, ciphers: {}", sslProvider, ciphers);
+        return builder;
+    }
+}
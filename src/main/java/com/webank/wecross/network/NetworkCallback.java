@@ -3,13 +3,17 @@ package com.webank.wecross.network;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.webank.wecross.network.p2p.codec.BinaryCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 
 public abstract class NetworkCallback<T> {
     private TypeReference<?> typeReference;
     protected int status;
     protected String message;
     protected NetworkResponse<T> data;
-    private ObjectMapper objectMapper = new ObjectMapper();
+    private static ObjectMapper objectMapper = new ObjectMapper();
+    private static BinaryCodec binaryCodec = new BinaryCodec(objectMapper);
 
     public void execute() {
         this.onResponse(status, message, data);
@@ -21,14 +25,18 @@ public abstract class NetworkCallback<T> {
         this.status = status;
     }
 
-    public NetworkResponse<Object> parseContent(String content) throws Exception {
+    public NetworkResponse<Object> parseContent(ByteBuf content) throws Exception {
         if (typeReference == null) {
             throw new Exception("Callback message type has not been set");
         }
 
-        NetworkResponse<Object> networkResponse =
-                (NetworkResponse<Object>) objectMapper.readValue(content, typeReference);
-        return networkResponse;
+        if (BinaryCodec.isBinary(content)) {
+            return binaryCodec.decodeResponse(content, typeReference);
+        }
+
+        return (NetworkResponse<Object>)
+                objectMapper.readValue(
+                        new ByteBufInputStream(content.duplicate()), typeReference);
     }
 
     @JsonIgnore
@@ -1,11 +1,16 @@
 package com.webank.wecross.network;
 
 import com.webank.wecross.network.p2p.netty.common.Node;
+import io.netty.buffer.ByteBuf;
 
 public interface NetworkProcessor {
     interface Callback {
-        void onResponse(String responseContent);
+        void onResponse(byte[] responseContent);
     }
 
-    void process(Node node, String content, NetworkProcessor.Callback callback);
+    /**
+     * content is JSON or BinaryCodec encoded, the response is encoded the same way. content is
+     * only valid until process returns.
+     */
+    void process(Node node, ByteBuf content, NetworkProcessor.Callback callback);
 }
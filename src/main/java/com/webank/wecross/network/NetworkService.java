@@ -3,6 +3,7 @@ package com.webank.wecross.network;
 import com.webank.wecross.peer.Peer;
 
 public interface NetworkService {
+    /** Messages to the same peer are not ordered, see Connections */
     <T> void asyncSendMessage(Peer peer, NetworkMessage<T> msg, NetworkCallback<?> callback);
 
     void setNetworkProcessor(NetworkProcessor networkProcessor);
@@ -8,11 +8,15 @@ import com.webank.wecross.network.NetworkCallback;
 import com.webank.wecross.network.NetworkMessage;
 import com.webank.wecross.network.NetworkProcessor;
 import com.webank.wecross.network.NetworkResponse;
+import com.webank.wecross.network.p2p.codec.BinaryCodec;
 import com.webank.wecross.network.p2p.netty.common.Node;
 import com.webank.wecross.peer.Peer;
+import com.webank.wecross.peer.PeerInfoDeltaMessageData;
 import com.webank.wecross.peer.PeerInfoMessageData;
 import com.webank.wecross.peer.PeerManager;
 import com.webank.wecross.peer.PeerSeqMessageData;
+import com.webank.wecross.remote.BlockHeaderMessageData;
+import com.webank.wecross.remote.BlockHeaderPushService;
 import com.webank.wecross.resource.Resource;
 import com.webank.wecross.restserver.Versions;
 import com.webank.wecross.routine.RoutineManager;
@@ -23,11 +27,18 @@ import com.webank.wecross.stub.Request;
 import com.webank.wecross.stub.Response;
 import com.webank.wecross.zone.ChainInfo;
 import com.webank.wecross.zone.ZoneManager;
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class P2PProcessor implements NetworkProcessor {
+    public static final String REQUEST_PEER_INFO_DELTA_METHOD = "requestPeerInfoDelta";
+
     private Logger logger = LoggerFactory.getLogger(P2PProcessor.class);
 
     private PeerManager peerManager;
@@ -35,6 +46,7 @@ public class P2PProcessor implements NetworkProcessor {
     private P2PService p2PService;
     private RoutineManager routineManager;
     private ObjectMapper objectMapper = new ObjectMapper();
+    private BinaryCodec binaryCodec = new BinaryCodec(objectMapper);
 
     public PeerManager getPeerManager() {
         return peerManager;
@@ -69,14 +81,14 @@ public class P2PProcessor implements NetworkProcessor {
     }
 
     public NetworkResponse<Object> onStatusMessage(
-            Peer peerInfo, String method, String p2pRequestString) {
+            Peer peerInfo, String method, P2PRequestContent requestContent) {
 
         NetworkResponse<Object> response = new NetworkResponse<Object>();
         response.setVersion(Versions.currentVersion);
         response.setErrorCode(NetworkQueryStatus.SUCCESS);
         response.setMessage(NetworkQueryStatus.getStatusMessage(NetworkQueryStatus.SUCCESS));
         if (logger.isDebugEnabled()) {
-            logger.debug("request string: {}", p2pRequestString);
+            logger.debug("request string: {}", requestContent);
         }
 
         try {
@@ -87,9 +99,7 @@ public class P2PProcessor implements NetworkProcessor {
                             logger.debug("Receive requestPeerInfo from peer {}", method, peerInfo);
                         }
                         NetworkMessage<Object> p2pRequest =
-                                objectMapper.readValue(
-                                        p2pRequestString,
-                                        new TypeReference<NetworkMessage<Object>>() {});
+                                requestContent.read(new TypeReference<NetworkMessage<Object>>() {});
 
                         p2pRequest.checkP2PMessage(method);
 
@@ -105,117 +115,116 @@ public class P2PProcessor implements NetworkProcessor {
                         response.setData(data);
                         break;
                     }
+                case REQUEST_PEER_INFO_DELTA_METHOD:
+                    {
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Receive {} from peer {}", method, peerInfo);
+                        }
+                        NetworkMessage<PeerInfoDeltaMessageData> p2pRequest =
+                                requestContent.read(
+                                        new TypeReference<
+                                                NetworkMessage<PeerInfoDeltaMessageData>>() {});
+
+                        p2pRequest.checkP2PMessage(method);
+
+                        PeerInfoDeltaMessageData since = p2pRequest.getData();
+                        if (since == null) {
+                            since = new PeerInfoDeltaMessageData();
+                        }
+
+                        response.setMessage("request " + method + " success");
+                        response.setSeq(p2pRequest.getSeq());
+                        response.setData(
+                                zoneManager.getChainsInfoDelta(since.getEpoch(), since.getSeq()));
+                        break;
+                    }
                 case "seq":
                     {
                         if (logger.isDebugEnabled()) {
                             logger.debug("Receive seq from peer:{}", peerInfo);
                         }
                         NetworkMessage<PeerSeqMessageData> p2pRequest =
-                                objectMapper.readValue(
-                                        p2pRequestString,
+                                requestContent.read(
                                         new TypeReference<NetworkMessage<PeerSeqMessageData>>() {});
 
                         PeerSeqMessageData data = (PeerSeqMessageData) p2pRequest.getData();
                         if (data != null && p2pRequest.getMethod().equals("seq")) {
-                            int currentSeq = data.getSeq();
-                            if (peerManager.hasPeerChanged(peerInfo.getNode(), currentSeq)) {
-                                NetworkMessage<Object> msg = new NetworkMessage<>();
-                                msg.newSeq();
-
-                                msg.setData(null);
-                                msg.setVersion(Versions.currentVersion);
-                                msg.setMethod("requestPeerInfo");
-                                if (logger.isDebugEnabled()) {
-                                    logger.debug(
-                                            "Request peerInfo to peer:{}, seq:{}",
-                                            peerInfo,
-                                            msg.getSeq());
-                                }
-
-                                NetworkCallback<PeerInfoMessageData> callback =
-                                        new NetworkCallback<PeerInfoMessageData>() {
-                                            @Override
-                                            public void onResponse(
-                                                    int status,
-                                                    String message,
-                                                    NetworkResponse<PeerInfoMessageData>
-                                                            responseMsg) {
-                                                if (logger.isTraceEnabled()) {
-                                                    logger.trace("Receive peerInfo:{}", peerInfo);
-                                                }
-                                                try {
-                                                    if (responseMsg != null
-                                                            && responseMsg.getData() != null) {
-
-                                                        PeerInfoMessageData data =
-                                                                (PeerInfoMessageData)
-                                                                        responseMsg.getData();
-                                                        int newSeq = data.getSeq();
-                                                        if (peerManager.hasPeerChanged(
-                                                                peerInfo.getNode(), newSeq)) {
-
-                                                            // compare and update
-                                                            Map<String, ChainInfo> newChains =
-                                                                    data.getChainInfos();
-
-                                                            // update zonemanager
-                                                            boolean changed = false;
-                                                            changed |=
-                                                                    zoneManager.removeRemoteChains(
-                                                                            peerInfo,
-                                                                            peerInfo
-                                                                                    .getChainInfos(),
-                                                                            false);
-                                                            changed |=
-                                                                    zoneManager.addRemoteChains(
-                                                                            peerInfo, newChains);
-                                                            if (changed) {
-                                                                if (logger.isDebugEnabled()) {
-                                                                    logger.debug(
-                                                                            "Update peerInfo from {}, seq:{}, resource:{}",
-                                                                            peerInfo,
-                                                                            newSeq,
-                                                                            newChains);
-                                                                    peerInfo.setChainInfos(
-                                                                            newSeq, newChains);
-                                                                }
-                                                            }
-                                                        } else {
-                                                            if (logger.isDebugEnabled()) {
-                                                                logger.debug(
-                                                                        "Peer info not changed, seq:{}",
-                                                                        newSeq);
-                                                            }
-                                                        }
-                                                    } else {
-                                                        logger.warn(
-                                                                "Receive unrecognized seq message("
-                                                                        + responseMsg
-                                                                        + ") from peer:"
-                                                                        + peerInfo);
-                                                    }
-                                                } catch (WeCrossException e) {
-                                                    logger.error(
-                                                            "Update peerInfo error({}): {}",
-                                                            e.getErrorCode(),
-                                                            e);
-                                                } catch (Exception e) {
-                                                    logger.error(
-                                                            "Update peerInfo error(Internal error): {}",
-                                                            e);
-                                                }
-                                            }
-                                        };
-                                callback.setTypeReference(
-                                        new TypeReference<
-                                                NetworkResponse<PeerInfoMessageData>>() {});
-
-                                p2PService.asyncSendMessage(peerInfo, msg, callback);
-                            }
+                            onPeerSeq(peerInfo, data.getSeq());
                         } else {
                             logger.warn("Receive unrecognized seq message from peer:" + peerInfo);
                         }
 
+                        break;
+                    }
+                case P2PService.NEGOTIATE_CODEC_METHOD:
+                    {
+                        NetworkMessage<List<String>> p2pRequest =
+                                requestContent.read(
+                                        new TypeReference<NetworkMessage<List<String>>>() {});
+                        p2pRequest.checkP2PMessage(method);
+
+                        String codec = BinaryCodec.JSON;
+                        List<String> codecs = p2pRequest.getData();
+                        if (p2PService.isBinaryCodecEnabled()
+                                && codecs != null
+                                && codecs.contains(BinaryCodec.BINARY)) {
+                            codec = BinaryCodec.BINARY;
+                            if (peerInfo != null) {
+                                // the peer decodes what it offers, no need to ask it back
+                                peerInfo.startCodecNegotiation();
+                                peerInfo.setCodec(codec);
+                            }
+                        }
+
+                        response.setMessage("request " + method + " success");
+                        response.setSeq(p2pRequest.getSeq());
+                        response.setData(codec);
+                        break;
+                    }
+                case BlockHeaderPushService.SUBSCRIBE_METHOD:
+                    {
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Receive subscribeBlockHeader from peer: {}", peerInfo);
+                        }
+                        NetworkMessage<BlockHeaderMessageData> p2pRequest =
+                                requestContent.read(
+                                        new TypeReference<
+                                                NetworkMessage<BlockHeaderMessageData>>() {});
+
+                        p2pRequest.checkP2PMessage(method);
+                        zoneManager
+                                .getBlockHeaderPushService()
+                                .onSubscribe(peerInfo, p2pRequest.getData());
+
+                        response.setMessage("request " + method + " success");
+                        response.setSeq(p2pRequest.getSeq());
+                        break;
+                    }
+                case BlockHeaderPushService.PUSH_METHOD:
+                    {
+                        NetworkMessage<BlockHeaderMessageData> p2pRequest =
+                                requestContent.read(
+                                        new TypeReference<
+                                                NetworkMessage<BlockHeaderMessageData>>() {});
+
+                        p2pRequest.checkP2PMessage(method);
+                        if (logger.isDebugEnabled()) {
+                            logger.debug(
+                                    "Receive block header {} of {} from peer: {}",
+                                    p2pRequest.getData().getBlockNumber(),
+                                    p2pRequest.getData().getPath(),
+                                    peerInfo);
+                        }
+
+                        // false tells the peer to stop pushing
+                        boolean accepted =
+                                zoneManager
+                                        .getBlockHeaderPushService()
+                                        .onBlockHeader(peerInfo, p2pRequest.getData());
+
+                        response.setMessage("request " + method + " success");
+                        response.setSeq(p2pRequest.getSeq());
+                        response.setData(accepted);
                         break;
                     }
                 default:
@@ -224,9 +233,7 @@ public class P2PProcessor implements NetworkProcessor {
                             logger.debug("request method: " + method);
                         }
                         NetworkMessage<Object> p2pRequest =
-                                objectMapper.readValue(
-                                        p2pRequestString,
-                                        new TypeReference<NetworkMessage<Object>>() {});
+                                requestContent.read(new TypeReference<NetworkMessage<Object>>() {});
                         response.setErrorCode(NetworkQueryStatus.METHOD_ERROR);
                         response.setSeq(p2pRequest.getSeq());
                         response.setMessage("Unsupported method: " + method);
@@ -250,12 +257,212 @@ public class P2PProcessor implements NetworkProcessor {
         return response;
     }
 
+    /**
+     * Fetch the chains of a peer if its seq changed, on seq announcements and heartbeats
+     *
+     * @param peerInfo
+     * @param currentSeq seq of the peer
+     */
+    public void onPeerSeq(Peer peerInfo, int currentSeq) {
+        if (peerInfo == null) {
+            return;
+        }
+
+        if (peerManager.hasPeerChanged(peerInfo.getNode(), currentSeq)) {
+            if (peerInfo.isPeerInfoDeltaSupported()) {
+                requestPeerInfoDelta(peerInfo);
+            } else {
+                requestPeerInfo(peerInfo);
+            }
+        }
+    }
+
+    /** Ask a peer for all its chains, the way peers before delta updates are asked */
+    private void requestPeerInfo(Peer peerInfo) {
+        NetworkMessage<Object> msg = new NetworkMessage<>();
+        msg.newSeq();
+
+        msg.setData(null);
+        msg.setVersion(Versions.currentVersion);
+        msg.setMethod("requestPeerInfo");
+        if (logger.isDebugEnabled()) {
+            logger.debug("Request peerInfo to peer:{}, seq:{}", peerInfo, msg.getSeq());
+        }
+
+        NetworkCallback<PeerInfoMessageData> callback =
+                new NetworkCallback<PeerInfoMessageData>() {
+                    @Override
+                    public void onResponse(
+                            int status,
+                            String message,
+                            NetworkResponse<PeerInfoMessageData> responseMsg) {
+                        if (logger.isTraceEnabled()) {
+                            logger.trace("Receive peerInfo:{}", peerInfo);
+                        }
+                        try {
+                            if (responseMsg != null && responseMsg.getData() != null) {
+                                PeerInfoMessageData data =
+                                        (PeerInfoMessageData) responseMsg.getData();
+                                updatePeerInfo(
+                                        peerInfo,
+                                        0,
+                                        data.getSeq(),
+                                        true,
+                                        data.getChainInfos(),
+                                        new ArrayList<>());
+                            } else {
+                                logger.warn(
+                                        "Receive unrecognized seq message("
+                                                + responseMsg
+                                                + ") from peer:"
+                                                + peerInfo);
+                            }
+                        } catch (WeCrossException e) {
+                            logger.error("Update peerInfo error({}): {}", e.getErrorCode(), e);
+                        } catch (Exception e) {
+                            logger.error("Update peerInfo error(Internal error): {}", e);
+                        }
+                    }
+                };
+        callback.setTypeReference(new TypeReference<NetworkResponse<PeerInfoMessageData>>() {});
+
+        p2PService.asyncSendMessage(peerInfo, msg, callback);
+    }
+
+    /** Ask a peer for the chains changed since the seq last seen, falls back to all chains */
+    private void requestPeerInfoDelta(Peer peerInfo) {
+        PeerInfoDeltaMessageData since = new PeerInfoDeltaMessageData();
+        since.setEpoch(peerInfo.getEpoch());
+        since.setSeq(peerInfo.getSeq());
+
+        NetworkMessage<Object> msg = new NetworkMessage<>();
+        msg.newSeq();
+        msg.setData(since);
+        msg.setVersion(Versions.currentVersion);
+        msg.setMethod(REQUEST_PEER_INFO_DELTA_METHOD);
+        if (logger.isDebugEnabled()) {
+            logger.debug(
+                    "Request peerInfo delta to peer:{}, since seq:{}", peerInfo, since.getSeq());
+        }
+
+        NetworkCallback<PeerInfoDeltaMessageData> callback =
+                new NetworkCallback<PeerInfoDeltaMessageData>() {
+                    @Override
+                    public void onResponse(
+                            int status,
+                            String message,
+                            NetworkResponse<PeerInfoDeltaMessageData> responseMsg) {
+                        if (status != NetworkQueryStatus.SUCCESS
+                                || responseMsg == null
+                                || responseMsg.getData() == null) {
+                            // peers before delta updates do not know the method
+                            if (status == NetworkQueryStatus.METHOD_ERROR) {
+                                peerInfo.setPeerInfoDeltaSupported(false);
+                            }
+                            logger.warn(
+                                    "Request peerInfo delta failed, peer: {}, message: {}",
+                                    peerInfo,
+                                    message);
+                            requestPeerInfo(peerInfo);
+                            return;
+                        }
+
+                        try {
+                            PeerInfoDeltaMessageData data =
+                                    (PeerInfoDeltaMessageData) responseMsg.getData();
+                            updatePeerInfo(
+                                    peerInfo,
+                                    data.getEpoch(),
+                                    data.getSeq(),
+                                    data.isFull(),
+                                    data.getChainInfos() != null
+                                            ? data.getChainInfos()
+                                            : new HashMap<>(),
+                                    data.getRemovedChains() != null
+                                            ? data.getRemovedChains()
+                                            : new ArrayList<>());
+                        } catch (WeCrossException e) {
+                            logger.error("Update peerInfo error({}): {}", e.getErrorCode(), e);
+                        } catch (Exception e) {
+                            logger.error("Update peerInfo error(Internal error): {}", e);
+                        }
+                    }
+                };
+        callback.setTypeReference(
+                new TypeReference<NetworkResponse<PeerInfoDeltaMessageData>>() {});
+
+        p2PService.asyncSendMessage(peerInfo, msg, callback);
+    }
+
+    /**
+     * Apply chains of a peer in place
+     *
+     * @param peerInfo
+     * @param epoch epoch of seq, 0 for peers sending no epoch
+     * @param seq
+     * @param full true if chainInfos holds all chains of the peer
+     * @param chainInfos chains added or changed
+     * @param removedChains paths of the chains removed
+     * @throws Exception
+     */
+    private void updatePeerInfo(
+            Peer peerInfo,
+            long epoch,
+            int seq,
+            boolean full,
+            Map<String, ChainInfo> chainInfos,
+            Collection<String> removedChains)
+            throws Exception {
+        synchronized (peerInfo) {
+            // seqs of one epoch only grow, answers may arrive out of order
+            if (epoch == peerInfo.getEpoch()
+                    && (seq == peerInfo.getSeq() || (epoch != 0 && seq < peerInfo.getSeq()))) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Peer info not changed, seq:{}", seq);
+                }
+                return;
+            }
+
+            Map<String, ChainInfo> oldChains = peerInfo.getChainInfos();
+            Map<String, ChainInfo> newChains;
+            if (full) {
+                newChains = chainInfos;
+                removedChains = new ArrayList<>();
+                for (String chainPath : oldChains.keySet()) {
+                    if (!chainInfos.containsKey(chainPath)) {
+                        removedChains.add(chainPath);
+                    }
+                }
+            } else {
+                newChains = new HashMap<>(oldChains);
+                newChains.putAll(chainInfos);
+                for (String chainPath : removedChains) {
+                    newChains.remove(chainPath);
+                }
+            }
+
+            boolean changed =
+                    zoneManager.updateRemoteChains(peerInfo, oldChains, chainInfos, removedChains);
+            peerInfo.setChainInfos(epoch, seq, newChains);
+
+            if (changed && logger.isDebugEnabled()) {
+                logger.debug(
+                        "Update peerInfo from {}, seq:{}, full: {}, changed:{}, removed:{}",
+                        peerInfo,
+                        seq,
+                        full,
+                        chainInfos.keySet(),
+                        removedChains);
+            }
+        }
+    }
+
     public void onTransactionMessage(
             String network,
             String chain,
             String resource,
             String method,
-            String p2pRequestString,
+            P2PRequestContent requestContent,
             NetworkProcessor.Callback callback) {
         Path path = new Path();
         path.setZone(network);
@@ -267,7 +474,7 @@ public class P2PProcessor implements NetworkProcessor {
         networkResponse.setErrorCode(NetworkQueryStatus.SUCCESS);
         networkResponse.setMessage(NetworkQueryStatus.getStatusMessage(NetworkQueryStatus.SUCCESS));
         if (logger.isDebugEnabled()) {
-            logger.debug("request string: {}", p2pRequestString);
+            logger.debug("request string: {}", requestContent);
         }
 
         try {
@@ -288,8 +495,7 @@ public class P2PProcessor implements NetworkProcessor {
                             logger.debug("On remote transaction request");
                         }
                         NetworkMessage<Request> p2pRequest =
-                                objectMapper.readValue(
-                                        p2pRequestString,
+                                requestContent.read(
                                         new TypeReference<NetworkMessage<Request>>() {});
                         p2pRequest.checkP2PMessage(method);
 
@@ -300,11 +506,10 @@ public class P2PProcessor implements NetworkProcessor {
                                     public void onResponse(Response response) {
                                         networkResponse.setData(response);
                                         networkResponse.setSeq(p2pRequest.getSeq());
-                                        String responseContent = new String();
+                                        byte[] responseContent = null;
                                         try {
                                             responseContent =
-                                                    objectMapper.writeValueAsString(
-                                                            networkResponse);
+                                                    requestContent.encodeResponse(networkResponse);
                                         } catch (Exception e) {
                                             logger.warn("Process request error:", e);
                                             NetworkResponse<Object> errorResponse =
@@ -315,7 +520,7 @@ public class P2PProcessor implements NetworkProcessor {
                                             errorResponse.setMessage(e.getLocalizedMessage());
                                             try {
                                                 responseContent =
-                                                        objectMapper.writeValueAsString(
+                                                        requestContent.encodeResponse(
                                                                 errorResponse);
                                             } catch (Exception e1) {
                                                 logger.error(
@@ -332,9 +537,7 @@ public class P2PProcessor implements NetworkProcessor {
                 default:
                     {
                         NetworkMessage<Object> p2pRequest =
-                                objectMapper.readValue(
-                                        p2pRequestString,
-                                        new TypeReference<NetworkMessage<Object>>() {});
+                                requestContent.read(new TypeReference<NetworkMessage<Object>>() {});
                         logger.warn("Unsupported method: {}", method);
                         networkResponse.setErrorCode(NetworkQueryStatus.METHOD_ERROR);
                         networkResponse.setMessage("Unsupported method: " + method);
@@ -354,7 +557,7 @@ public class P2PProcessor implements NetworkProcessor {
         }
 
         try {
-            callback.onResponse(objectMapper.writeValueAsString(networkResponse));
+            callback.onResponse(requestContent.encodeResponse(networkResponse));
 
         } catch (Exception e1) {
             logger.error("Can't serialize error response: " + resource.toString());
@@ -362,23 +565,28 @@ public class P2PProcessor implements NetworkProcessor {
     }
 
     @Override
-    public void process(Node node, String content, NetworkProcessor.Callback callback) {
-        NetworkMessage<?> networkMessage = new NetworkMessage<>();
+    public void process(Node node, ByteBuf content, NetworkProcessor.Callback callback) {
+        P2PRequestContent requestContent = null;
         try {
-            networkMessage = objectMapper.readValue(content, NetworkMessage.class);
+            // parsed once, the typed data is read from it by each method
+            requestContent = new P2PRequestContent(objectMapper, binaryCodec, content);
 
-            String method = networkMessage.getMethod();
+            String method = requestContent.getMethod();
+            if (method == null) {
+                throw new Exception("method not found in request package");
+            }
             String r[] = method.split("/");
 
             Peer peerInfo = peerManager.getPeerInfo(node);
 
             if (r.length == 1) {
                 /** method */
-                NetworkResponse<Object> networkResponse = onStatusMessage(peerInfo, r[0], content);
-                callback.onResponse(objectMapper.writeValueAsString(networkResponse));
+                NetworkResponse<Object> networkResponse =
+                        onStatusMessage(peerInfo, r[0], requestContent);
+                callback.onResponse(requestContent.encodeResponse(networkResponse));
             } else if (r.length == 4) {
                 /** network/stub/resource/method */
-                onTransactionMessage(r[0], r[1], r[2], r[3], content, callback);
+                onTransactionMessage(r[0], r[1], r[2], r[3], requestContent, callback);
             } else {
                 throw new Exception("invalid method parameter, method: " + method);
             }
@@ -388,13 +596,18 @@ public class P2PProcessor implements NetworkProcessor {
             NetworkResponse<Object> networkResponse = new NetworkResponse<>();
             networkResponse.setMessage(e.getMessage());
             networkResponse.setErrorCode(NetworkQueryStatus.INTERNAL_ERROR);
-            networkResponse.setSeq(networkMessage.getSeq());
-            networkResponse.setVersion(networkMessage.getVersion());
+            if (requestContent != null) {
+                networkResponse.setSeq(requestContent.getSeq());
+                networkResponse.setVersion(requestContent.getVersion());
+            }
             try {
-                callback.onResponse(objectMapper.writeValueAsString(networkResponse));
+                callback.onResponse(
+                        requestContent != null
+                                ? requestContent.encodeResponse(networkResponse)
+                                : objectMapper.writeValueAsBytes(networkResponse));
 
             } catch (Exception e1) {
-                logger.error("writeValueAsString exception: {}, e: {}", node, e1);
+                logger.error("encode response exception: {}, e: {}", node, e1);
             }
         }
     }
@@ -0,0 +1,87 @@
+package com.webank.wecross.network.p2p;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.webank.wecross.network.NetworkMessage;
+import com.webank.wecross.network.NetworkResponse;
+import com.webank.wecross.network.p2p.codec.BinaryCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A received P2P request, parsed once whatever codec it was sent with. The response is encoded
+ * with the same codec as the request.
+ *
+ * <p>The content is not copied, so binary data must be read before the request processing returns.
+ */
+public class P2PRequestContent {
+    private ObjectMapper objectMapper;
+    private BinaryCodec binaryCodec;
+    private ByteBuf content;
+    private JsonNode tree;
+    private NetworkMessage<Object> header;
+
+    public P2PRequestContent(ObjectMapper objectMapper, BinaryCodec binaryCodec, ByteBuf content)
+            throws IOException {
+        this.objectMapper = objectMapper;
+        this.binaryCodec = binaryCodec;
+        this.content = content;
+
+        if (BinaryCodec.isBinary(content)) {
+            header = binaryCodec.decodeHeader(content);
+        } else {
+            tree = objectMapper.readTree(new ByteBufInputStream(content.duplicate()));
+            header = new NetworkMessage<Object>();
+            header.setVersion(tree.path("version").asText(null));
+            header.setSeq(tree.path("seq").asInt());
+            header.setMethod(tree.path("method").asText(null));
+        }
+    }
+
+    public boolean isBinary() {
+        return tree == null;
+    }
+
+    public String getMethod() {
+        return header.getMethod();
+    }
+
+    public String getVersion() {
+        return header.getVersion();
+    }
+
+    public int getSeq() {
+        return header.getSeq();
+    }
+
+    public <T> NetworkMessage<T> read(TypeReference<NetworkMessage<T>> typeReference)
+            throws IOException {
+        if (isBinary()) {
+            return binaryCodec.decodeMessage(content, typeReference);
+        }
+
+        try {
+            return objectMapper.convertValue(tree, typeReference);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    public byte[] encodeResponse(NetworkResponse<?> response) throws IOException {
+        if (isBinary()) {
+            return binaryCodec.encodeResponse(response);
+        }
+
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Override
+    public String toString() {
+        return isBinary()
+                ? "binary(" + content.readableBytes() + " bytes)"
+                : content.toString(StandardCharsets.UTF_8);
+    }
+}
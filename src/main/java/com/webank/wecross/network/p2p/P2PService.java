@@ -1,8 +1,11 @@
 package com.webank.wecross.network.p2p;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.webank.wecross.common.NetworkQueryStatus;
 import com.webank.wecross.network.*;
+import com.webank.wecross.network.p2p.codec.BinaryCodec;
+import com.webank.wecross.network.p2p.netty.HeartBeatProcessor;
 import com.webank.wecross.network.p2p.netty.MessageType;
 import com.webank.wecross.network.p2p.netty.NettyService;
 import com.webank.wecross.network.p2p.netty.RequestProcessor;
@@ -11,13 +14,21 @@ import com.webank.wecross.network.p2p.netty.response.Response;
 import com.webank.wecross.network.p2p.netty.response.ResponseCallBack;
 import com.webank.wecross.network.p2p.netty.response.StatusCode;
 import com.webank.wecross.peer.Peer;
+import com.webank.wecross.restserver.Versions;
+import io.netty.buffer.ByteBuf;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class P2PService implements NetworkService {
     private Logger logger = LoggerFactory.getLogger(P2PService.class);
+    public static final String NEGOTIATE_CODEC_METHOD = "negotiateCodec";
+
     private ObjectMapper objectMapper = new ObjectMapper();
+    private BinaryCodec binaryCodec = new BinaryCodec(objectMapper);
+    private boolean binaryCodecEnabled = true;
 
     private NettyService nettyService;
 
@@ -35,13 +46,19 @@ public class P2PService implements NetworkService {
             return;
         }
 
+        negotiateCodec(peer);
+
         // build request object
         Request request = new Request();
         request.setType(MessageType.RESOURCE_REQUEST);
         try {
-            request.setContent(objectMapper.writeValueAsString(msg));
+            if (BinaryCodec.BINARY.equals(peer.getCodec())) {
+                request.setContent(binaryCodec.encodeMessage(msg));
+            } else {
+                request.setContent(objectMapper.writeValueAsBytes(msg));
+            }
         } catch (Exception e) {
-            logger.error(" P2PMessage to json error: {}", e);
+            logger.error(" P2PMessage encode error: {}", e);
             executeCallback(callback, NetworkQueryStatus.INTERNAL_ERROR, e.getMessage(), null);
             return;
         }
@@ -60,7 +77,7 @@ public class P2PService implements NetworkService {
                             logger.trace(" receive response: {}", response);
                         }
                         if (callback != null) {
-                            String content = response.getContent();
+                            ByteBuf content = response.getContent();
                             try {
                                 /** send request failed or request transfer failed */
                                 if (response.getErrorCode() != StatusCode.SUCCESS) {
@@ -69,9 +86,14 @@ public class P2PService implements NetworkService {
 
                                 NetworkResponse<Object> networkResponse =
                                         callback.parseContent(content);
-                                /** remote execute return not ok */
+                                /** remote execute return not ok, keep its status */
                                 if (networkResponse.getErrorCode() != NetworkQueryStatus.SUCCESS) {
-                                    throw new IOException(networkResponse.getMessage());
+                                    executeCallback(
+                                            callback,
+                                            networkResponse.getErrorCode(),
+                                            networkResponse.getMessage(),
+                                            null);
+                                    return;
                                 }
 
                                 executeCallback(
@@ -99,6 +121,39 @@ public class P2PService implements NetworkService {
                 });
     }
 
+    /**
+     * Ask a newly seen peer which codec it accepts. Peers not knowing the method answer an error
+     * and keep receiving JSON, so do requests sent before the answer arrives.
+     */
+    private void negotiateCodec(Peer peer) {
+        if (!binaryCodecEnabled || !peer.startCodecNegotiation()) {
+            return;
+        }
+
+        NetworkMessage<List<String>> msg = new NetworkMessage<List<String>>();
+        msg.newSeq();
+        msg.setVersion(Versions.currentVersion);
+        msg.setMethod(NEGOTIATE_CODEC_METHOD);
+        msg.setData(Arrays.asList(BinaryCodec.BINARY, BinaryCodec.JSON));
+
+        NetworkCallback<String> callback =
+                new NetworkCallback<String>() {
+                    @Override
+                    public void onResponse(
+                            int status, String message, NetworkResponse<String> response) {
+                        if (status == NetworkQueryStatus.SUCCESS
+                                && response != null
+                                && BinaryCodec.BINARY.equals(response.getData())) {
+                            peer.setCodec(BinaryCodec.BINARY);
+                        }
+                        logger.info("Peer {} codec: {}", peer, peer.getCodec());
+                    }
+                };
+        callback.setTypeReference(new TypeReference<NetworkResponse<String>>() {});
+
+        asyncSendMessage(peer, msg, callback);
+    }
+
     @Override
     public void setNetworkProcessor(NetworkProcessor networkProcessor) {
         RequestProcessor nettyRequestProcessor =
@@ -110,6 +165,17 @@ public class P2PService implements NetworkService {
         nettyRequestProcessor.setNetworkProcessor(networkProcessor);
     }
 
+    /** Handle seqs of peers carried by their heartbeats */
+    public void setSeqHandler(HeartBeatProcessor.SeqHandler seqHandler) {
+        HeartBeatProcessor heartBeatProcessor =
+                (HeartBeatProcessor)
+                        nettyService
+                                .getChannelHandlerCallBack()
+                                .getCallBack()
+                                .getProcessor(MessageType.HEARTBEAT);
+        heartBeatProcessor.setSeqHandler(seqHandler);
+    }
+
     @Override
     public void start() throws Exception {
         nettyService.start();
@@ -119,6 +185,14 @@ public class P2PService implements NetworkService {
         this.nettyService = nettyService;
     }
 
+    public boolean isBinaryCodecEnabled() {
+        return binaryCodecEnabled;
+    }
+
+    public void setBinaryCodecEnabled(boolean binaryCodecEnabled) {
+        this.binaryCodecEnabled = binaryCodecEnabled;
+    }
+
     protected <T> void checkP2PMessage(NetworkMessage<T> msg) throws Exception {
         if (msg.getVersion().isEmpty()) {
             throw new Exception("message version is empty");
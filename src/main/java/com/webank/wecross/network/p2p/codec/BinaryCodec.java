@@ -0,0 +1,253 @@
+package com.webank.wecross.network.p2p.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.webank.wecross.network.NetworkMessage;
+import com.webank.wecross.network.NetworkResponse;
+import com.webank.wecross.stub.Request;
+import com.webank.wecross.stub.ResourceInfo;
+import com.webank.wecross.stub.Response;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact encoding of NetworkMessage and NetworkResponse between routers.
+ *
+ * <p>layout => [magic(1 Byte)][format(1 Byte)][header fields][data tag(1 Byte)][data]
+ *
+ * <p>Strings and byte arrays are length prefixed (4 Byte, -1 for null). The stub Request and
+ * Response of transaction forwarding are encoded field by field, any other data is embedded as
+ * JSON. JSON content always starts with '{', so the magic byte tells both encodings apart.
+ */
+public class BinaryCodec {
+    public static final String JSON = "json";
+    public static final String BINARY = "binary/1";
+
+    public static final byte MAGIC = (byte) 0xB1;
+    public static final byte FORMAT_VERSION = 1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_JSON = 1;
+    private static final byte TAG_REQUEST = 2;
+    private static final byte TAG_RESPONSE = 3;
+
+    private ObjectMapper objectMapper;
+
+    public BinaryCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public static boolean isBinary(byte[] content) {
+        return content != null && content.length > 0 && content[0] == MAGIC;
+    }
+
+    public static boolean isBinary(ByteBuf content) {
+        return content != null
+                && content.isReadable()
+                && content.getByte(content.readerIndex()) == MAGIC;
+    }
+
+    public byte[] encodeMessage(NetworkMessage<?> message) throws IOException {
+        ByteBuf out = Unpooled.buffer(256);
+        out.writeByte(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        writeString(out, message.getVersion());
+        out.writeInt(message.getSeq());
+        writeString(out, message.getMethod());
+        writeData(out, message.getData());
+        return toBytes(out);
+    }
+
+    /** Read the header fields only, data is decoded later once its type is known */
+    public NetworkMessage<Object> decodeHeader(ByteBuf content) throws IOException {
+        try {
+            ByteBuf in = openBuffer(content);
+            NetworkMessage<Object> message = new NetworkMessage<Object>();
+            message.setVersion(readString(in));
+            message.setSeq(in.readInt());
+            message.setMethod(readString(in));
+            return message;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated binary message", e);
+        }
+    }
+
+    /** @param typeReference type of the whole message, e.g. NetworkMessage&lt;Request&gt; */
+    public <T> NetworkMessage<T> decodeMessage(ByteBuf content, TypeReference<?> typeReference)
+            throws IOException {
+        try {
+            ByteBuf in = openBuffer(content);
+            NetworkMessage<T> message = new NetworkMessage<T>();
+            message.setVersion(readString(in));
+            message.setSeq(in.readInt());
+            message.setMethod(readString(in));
+            message.setData(readData(in, typeReference));
+            return message;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated binary message", e);
+        }
+    }
+
+    public byte[] encodeResponse(NetworkResponse<?> response) throws IOException {
+        ByteBuf out = Unpooled.buffer(256);
+        out.writeByte(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        writeString(out, response.getVersion());
+        out.writeInt(response.getSeq());
+        out.writeInt(response.getErrorCode());
+        writeString(out, response.getMessage());
+        writeData(out, response.getData());
+        return toBytes(out);
+    }
+
+    /** @param typeReference type of the whole response, e.g. NetworkResponse&lt;Response&gt; */
+    public <T> NetworkResponse<T> decodeResponse(ByteBuf content, TypeReference<?> typeReference)
+            throws IOException {
+        try {
+            ByteBuf in = openBuffer(content);
+            NetworkResponse<T> response = new NetworkResponse<T>();
+            response.setVersion(readString(in));
+            response.setSeq(in.readInt());
+            response.setErrorCode(in.readInt());
+            response.setMessage(readString(in));
+            response.setData(readData(in, typeReference));
+            return response;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated binary response", e);
+        }
+    }
+
+    private void writeData(ByteBuf out, Object data) throws IOException {
+        if (data == null) {
+            out.writeByte(TAG_NULL);
+        } else if (data instanceof Request) {
+            Request request = (Request) data;
+            out.writeByte(TAG_REQUEST);
+            out.writeInt(request.getType());
+            writeString(out, request.getPath());
+            writeBytes(out, request.getData());
+            writeBytes(
+                    out,
+                    request.getResourceInfo() == null
+                            ? null
+                            : objectMapper.writeValueAsBytes(request.getResourceInfo()));
+        } else if (data instanceof Response) {
+            Response response = (Response) data;
+            out.writeByte(TAG_RESPONSE);
+            out.writeInt(response.getErrorCode());
+            writeString(out, response.getErrorMessage());
+            writeBytes(out, response.getData());
+        } else {
+            out.writeByte(TAG_JSON);
+            writeBytes(out, objectMapper.writeValueAsBytes(data));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T readData(ByteBuf in, TypeReference<?> typeReference) throws IOException {
+        JavaType dataType = objectMapper.getTypeFactory().constructType(typeReference);
+        dataType = dataType.containedTypeCount() > 0 ? dataType.containedType(0) : null;
+
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_JSON:
+                {
+                    byte[] json = readBytes(in);
+                    return dataType == null
+                            ? (T) objectMapper.readTree(json)
+                            : (T) objectMapper.readValue(json, dataType);
+                }
+            case TAG_REQUEST:
+                {
+                    checkDataType(dataType, Request.class);
+                    Request request = new Request();
+                    request.setType(in.readInt());
+                    request.setPath(readString(in));
+                    request.setData(readBytes(in));
+                    byte[] resourceInfo = readBytes(in);
+                    if (resourceInfo != null) {
+                        request.setResourceInfo(
+                                objectMapper.readValue(resourceInfo, ResourceInfo.class));
+                    }
+                    return (T) request;
+                }
+            case TAG_RESPONSE:
+                {
+                    checkDataType(dataType, Response.class);
+                    Response response = new Response();
+                    response.setErrorCode(in.readInt());
+                    response.setErrorMessage(readString(in));
+                    response.setData(readBytes(in));
+                    return (T) response;
+                }
+            default:
+                throw new IOException("Unknown data tag: " + tag);
+        }
+    }
+
+    private void checkDataType(JavaType dataType, Class<?> clazz) throws IOException {
+        if (dataType != null && !dataType.getRawClass().isAssignableFrom(clazz)) {
+            throw new IOException(
+                    "Unexpected data type: " + clazz.getSimpleName() + ", expected: " + dataType);
+        }
+    }
+
+    /** The content is read through a duplicate, its reader index is left untouched */
+    private ByteBuf openBuffer(ByteBuf content) throws IOException {
+        if (!isBinary(content) || content.readableBytes() < 2) {
+            throw new IOException("Not a binary message");
+        }
+        byte format = content.getByte(content.readerIndex() + 1);
+        if (format != FORMAT_VERSION) {
+            throw new IOException("Unsupported binary format: " + format);
+        }
+
+        ByteBuf in = content.duplicate();
+        in.skipBytes(2);
+        return in;
+    }
+
+    private byte[] toBytes(ByteBuf out) {
+        byte[] bytes = new byte[out.readableBytes()];
+        out.readBytes(bytes);
+        return bytes;
+    }
+
+    private void writeString(ByteBuf out, String value) {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String readString(ByteBuf in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeBytes(ByteBuf out, byte[] value) {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(value.length);
+        out.writeBytes(value);
+    }
+
+    private byte[] readBytes(ByteBuf in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.readableBytes()) {
+            throw new IOException("Invalid length: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        in.readBytes(bytes);
+        return bytes;
+    }
+}
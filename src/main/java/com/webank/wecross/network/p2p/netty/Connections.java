@@ -2,19 +2,56 @@ package com.webank.wecross.network.p2p.netty;
 
 import com.webank.wecross.network.p2p.netty.common.Node;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AttributeKey;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Channels of the connected peers. A peer may be connected by several channels, requests go to
+ * the channel with the least requests in flight. With more than one channel the first one is
+ * kept for large messages, so that they do not hold up the small ones.
+ *
+ * <p>Messages are ordered per channel only. With more than one channel, two messages sent to a
+ * peer one after the other may arrive the other way round, so nothing sent to peers may depend on
+ * their order. Peer info carries its seq and block header pushes their block number for this.
+ */
 public class Connections {
 
     private static final Logger logger = LoggerFactory.getLogger(Connections.class);
 
+    private static final AttributeKey<AtomicInteger> IN_FLIGHT = AttributeKey.valueOf("inFlight");
+
+    /** messages from this length on go to the large message channel */
+    public static final int LARGE_MESSAGE_LENGTH = 1024 * 1024;
+
+    /**
+     * channels of one peer, all of them share the node of the first channel. Replaced as a whole
+     * on change, so that it is read without locks.
+     */
+    private static class PeerChannels {
+        private final Node node;
+        private final List<ChannelHandlerContext> channels;
+        /** hosts of the peer in host2NodeID */
+        private final Set<String> hosts;
+
+        PeerChannels(Node node, List<ChannelHandlerContext> channels, Set<String> hosts) {
+            this.node = node;
+            this.channels = Collections.unmodifiableList(channels);
+            this.hosts = Collections.unmodifiableSet(hosts);
+        }
+    }
+
     public Set<Node> getConfiguredPeers() {
         return configuredPeers;
     }
@@ -26,17 +63,33 @@ public class Connections {
     /** all Peers should connect */
     private Set<Node> configuredPeers;
 
-    /** nodeID => ChannelHandlerContext */
-    private Map<String, ChannelHandlerContext> nodeID2ChannelHandler = new HashMap<>();
+    /** channels kept to each peer */
+    private int connectionsPerPeer = 1;
+
+    /** requests in flight to one peer at most, further requests fail as overloaded */
+    private int maxInFlightPerPeer = 1000;
+
+    /** nodeID => channels of the peer, changed by connect and disconnect only */
+    private Map<String, PeerChannels> nodeID2Channels = new ConcurrentHashMap<>();
     /** Peer Host => nodeID */
-    private Map<String, String> host2NodeID = new HashMap<>();
+    private Map<String, String> host2NodeID = new ConcurrentHashMap<>();
+    /** channels of all peers, iterated by heartbeats */
+    private List<ChannelHandlerContext> allChannels = new CopyOnWriteArrayList<>();
+
+    public int getConnectionsPerPeer() {
+        return connectionsPerPeer;
+    }
+
+    public void setConnectionsPerPeer(int connectionsPerPeer) {
+        this.connectionsPerPeer = connectionsPerPeer;
+    }
 
-    public Map<String, ChannelHandlerContext> getNodeID2ChannelHandler() {
-        return nodeID2ChannelHandler;
+    public int getMaxInFlightPerPeer() {
+        return maxInFlightPerPeer;
     }
 
-    public void setNodeID2ChannelHandler(Map<String, ChannelHandlerContext> nodeID2ChannelHandler) {
-        this.nodeID2ChannelHandler = nodeID2ChannelHandler;
+    public void setMaxInFlightPerPeer(int maxInFlightPerPeer) {
+        this.maxInFlightPerPeer = maxInFlightPerPeer;
     }
 
     public Map<String, String> getHost2NodeID() {
@@ -47,6 +100,43 @@ public class Connections {
         this.host2NodeID = host2NodeID;
     }
 
+    /** @return requests sent on the channel and not answered yet */
+    public static AtomicInteger getInFlight(ChannelHandlerContext ctx) {
+        AtomicInteger inFlight = ctx.channel().attr(IN_FLIGHT).get();
+        if (inFlight == null) {
+            AtomicInteger newInFlight = new AtomicInteger();
+            inFlight = ctx.channel().attr(IN_FLIGHT).setIfAbsent(newInFlight);
+            if (inFlight == null) {
+                inFlight = newInFlight;
+            }
+        }
+        return inFlight;
+    }
+
+    /**
+     * @param nodeID
+     * @return requests sent on all channels of the peer and not answered yet
+     */
+    public int getInFlight(String nodeID) {
+        int inFlight = 0;
+        PeerChannels peerChannels = nodeID2Channels.get(nodeID);
+        if (peerChannels != null) {
+            for (ChannelHandlerContext ctx : peerChannels.channels) {
+                inFlight += getInFlight(ctx).get();
+            }
+        }
+        return inFlight;
+    }
+
+    /**
+     * @param nodeID
+     * @param ctx channel chosen for the next request
+     * @return true if the peer has too many requests in flight or the channel buffers too much
+     */
+    public boolean isOverloaded(String nodeID, ChannelHandlerContext ctx) {
+        return !ctx.channel().isWritable() || getInFlight(nodeID) >= maxInFlightPerPeer;
+    }
+
     /**
      * get all should reconnect nodes
      *
@@ -56,17 +146,29 @@ public class Connections {
         Set<Node> hostSet = new HashSet<>();
         Set<Node> configuredPeers = getConfiguredPeers();
         for (Node host : configuredPeers) {
-            synchronized (host2NodeID) {
-                if (host2NodeID.containsKey(host.getIPPort())) {
-                    continue;
-                }
+            if (missingConnections(host) > 0) {
+                hostSet.add(host);
             }
-            hostSet.add(host);
         }
 
         return hostSet;
     }
 
+    /**
+     * @param host
+     * @return how many channels to the configured host are still to be connected
+     */
+    public int missingConnections(Node host) {
+        String nodeID = host2NodeID.get(host.getIPPort());
+        if (nodeID == null) {
+            return connectionsPerPeer;
+        }
+
+        PeerChannels peerChannels = nodeID2Channels.get(nodeID);
+        int connected = peerChannels == null ? 0 : peerChannels.channels.size();
+        return Math.max(connectionsPerPeer - connected, 0);
+    }
+
     /**
      * get all active channel handler context
      *
@@ -75,17 +177,14 @@ public class Connections {
     public List<ChannelHandlerContext> activeChannelHandlers() {
 
         List<ChannelHandlerContext> result = new ArrayList<>();
-        synchronized (nodeID2ChannelHandler) {
-            for (Map.Entry<String, ChannelHandlerContext> entry :
-                    nodeID2ChannelHandler.entrySet()) {
-                if (entry.getValue().channel().isActive()) {
-                    result.add(entry.getValue());
-                } else {
-                    logger.warn(
-                            " channel handler not active ??? node: {}, ctx: {}",
-                            entry.getKey(),
-                            System.identityHashCode(entry.getValue()));
-                }
+        for (ChannelHandlerContext ctx : allChannels) {
+            if (ctx.channel().isActive()) {
+                result.add(ctx);
+            } else {
+                logger.warn(
+                        " channel handler not active ??? node: {}, ctx: {}",
+                        ctx.channel().attr(AttributeKey.valueOf("NodeID")).get(),
+                        System.identityHashCode(ctx));
             }
         }
 
@@ -96,8 +195,9 @@ public class Connections {
      * @param node
      * @param ctx
      * @param connectToServer
+     * @return the node of the peer, shared by all its channels
      */
-    public void addChannelHandler(Node node, ChannelHandlerContext ctx, boolean connectToServer) {
+    public Node addChannelHandler(Node node, ChannelHandlerContext ctx, boolean connectToServer) {
         int hashCode = System.identityHashCode(ctx);
 
         logger.info(
@@ -107,41 +207,63 @@ public class Connections {
                 hashCode,
                 ctx.channel().isActive());
 
-        ChannelHandlerContext oldCtx = null;
-        synchronized (nodeID2ChannelHandler) {
-            oldCtx = nodeID2ChannelHandler.get(node.getNodeID());
+        AtomicBoolean added = new AtomicBoolean(false);
+        PeerChannels peerChannels =
+                nodeID2Channels.compute(
+                        node.getNodeID(),
+                        (nodeID, current) ->
+                                addChannel(current, node, ctx, connectToServer, added));
 
-            if (oldCtx == null) {
-                nodeID2ChannelHandler.put(node.getNodeID(), ctx);
+        if (!added.get()) {
+            logger.info(" connection exist, host: {}, node: {} ", node, node.getNodeID());
+            throw new UnsupportedOperationException(
+                    " existing connection, node : " + node.getNodeID() + ", hashCode: " + hashCode);
+        }
 
-                synchronized (host2NodeID) {
-                    host2NodeID.put(node.getIPPort(), node.getNodeID());
-                }
-            }
+        return peerChannels.node;
+    }
+
+    /** @return channels of the peer with ctx added, called atomically for the peer */
+    private PeerChannels addChannel(
+            PeerChannels current,
+            Node node,
+            ChannelHandlerContext ctx,
+            boolean connectToServer,
+            AtomicBoolean added) {
+        String nodeID = node.getNodeID();
+        if (current == null) {
+            current = new PeerChannels(node, new ArrayList<>(), new HashSet<>());
         }
 
-        if (oldCtx != null) {
-            logger.info(" connection exist, host: {}, node: {} ", node, node.getNodeID());
-            if (connectToServer) {
-                synchronized (host2NodeID) {
-                    for (Map.Entry<String, String> entry : host2NodeID.entrySet()) {
-                        if (entry.getValue().equals(node.getNodeID())) {
-                            host2NodeID.remove(entry.getKey());
-                            host2NodeID.put(node.getIPPort(), node.getNodeID());
-                            logger.info(
-                                    " update, last host: {}, host: {}, node: {} ",
-                                    entry.getKey(),
-                                    node,
-                                    node.getNodeID());
-                            break;
-                        }
-                    }
-                }
+        Set<String> hosts = new HashSet<>(current.hosts);
+        if (current.channels.size() >= connectionsPerPeer) {
+            if (!connectToServer || hosts.contains(node.getIPPort())) {
+                return current;
             }
 
-            throw new UnsupportedOperationException(
-                    " existing connection, node : " + node.getNodeID() + ", hashCode: " + hashCode);
+            // the configured host counts as connected
+            Iterator<String> iterator = hosts.iterator();
+            if (iterator.hasNext()) {
+                String lastHost = iterator.next();
+                iterator.remove();
+                host2NodeID.remove(lastHost, nodeID);
+                logger.info(
+                        " update, last host: {}, host: {}, node: {} ", lastHost, node, nodeID);
+            }
+            hosts.add(node.getIPPort());
+            host2NodeID.put(node.getIPPort(), nodeID);
+            return new PeerChannels(current.node, current.channels, hosts);
         }
+
+        List<ChannelHandlerContext> channels = new ArrayList<>(current.channels);
+        channels.add(ctx);
+        if (channels.size() == 1 || connectToServer) {
+            hosts.add(node.getIPPort());
+            host2NodeID.put(node.getIPPort(), nodeID);
+        }
+        allChannels.add(ctx);
+        added.set(true);
+        return new PeerChannels(current.node, channels, hosts);
     }
 
     /**
@@ -149,19 +271,48 @@ public class Connections {
      * @return
      */
     public ChannelHandlerContext getChannelHandler(String nodeID) {
-        ChannelHandlerContext ctx = null;
-        synchronized (nodeID2ChannelHandler) {
-            ctx = nodeID2ChannelHandler.get(nodeID);
+        return getChannelHandler(nodeID, 0);
+    }
+
+    /**
+     * @param nodeID
+     * @param length message length
+     * @return the large message channel for large messages, otherwise the writable channel with
+     *     the least requests in flight, so consecutive messages may take different channels
+     */
+    public ChannelHandlerContext getChannelHandler(String nodeID, int length) {
+        PeerChannels peerChannels = nodeID2Channels.get(nodeID);
+        if (peerChannels == null || peerChannels.channels.isEmpty()) {
+            return null;
         }
 
-        return ctx;
+        List<ChannelHandlerContext> channels = peerChannels.channels;
+        if (channels.size() == 1 || length >= LARGE_MESSAGE_LENGTH) {
+            return channels.get(0);
+        }
+
+        ChannelHandlerContext result = null;
+        int leastInFlight = Integer.MAX_VALUE;
+        for (int i = 1; i < channels.size(); ++i) {
+            ChannelHandlerContext ctx = channels.get(i);
+            int inFlight = getInFlight(ctx).get();
+            if (ctx.channel().isActive()
+                    && ctx.channel().isWritable()
+                    && inFlight < leastInFlight) {
+                result = ctx;
+                leastInFlight = inFlight;
+            }
+        }
+
+        return result == null ? channels.get(0) : result;
     }
 
     /**
      * @param node
      * @param ctx
+     * @return true once the last channel of the peer is removed
      */
-    public void removeChannelHandler(Node node, ChannelHandlerContext ctx) {
+    public boolean removeChannelHandler(Node node, ChannelHandlerContext ctx) {
         int hashCode = System.identityHashCode(ctx);
 
         logger.info(
@@ -170,37 +321,43 @@ public class Connections {
                 node.getNodeID(),
                 hashCode);
 
-        ChannelHandlerContext oldCtx = null;
-        synchronized (nodeID2ChannelHandler) {
-            oldCtx = nodeID2ChannelHandler.get(node.getNodeID());
+        AtomicBoolean removed = new AtomicBoolean(false);
+        AtomicBoolean lastChannel = new AtomicBoolean(false);
+        nodeID2Channels.computeIfPresent(
+                node.getNodeID(),
+                (nodeID, current) -> {
+                    if (!current.channels.contains(ctx)) {
+                        return current;
+                    }
 
-            if (oldCtx != null && oldCtx == ctx) {
-                nodeID2ChannelHandler.remove(node.getNodeID());
-                logger.info(" remove channel handler, node: {}", node.getNodeID());
-            }
-        }
+                    removed.set(true);
+                    allChannels.remove(ctx);
+                    logger.info(" remove channel handler, node: {}", nodeID);
 
-        if (oldCtx != null && oldCtx == ctx) {
-            synchronized (host2NodeID) {
-                for (Map.Entry<String, String> entry : host2NodeID.entrySet()) {
-                    if (entry.getValue().equals(node.getNodeID())) {
-                        logger.info(
-                                " remove host info, host: {}, node: {} ",
-                                entry.getKey(),
-                                entry.getValue());
-                        host2NodeID.remove(entry.getKey());
-                        break;
+                    List<ChannelHandlerContext> channels = new ArrayList<>(current.channels);
+                    channels.remove(ctx);
+                    if (!channels.isEmpty()) {
+                        return new PeerChannels(current.node, channels, current.hosts);
                     }
-                }
-            }
-        }
 
-        if (oldCtx == null) {
+                    lastChannel.set(true);
+                    for (String host : current.hosts) {
+                        // unless taken by another node meanwhile
+                        if (host2NodeID.remove(host, nodeID)) {
+                            logger.info(" remove host info, host: {}, node: {} ", host, nodeID);
+                        }
+                    }
+                    return null;
+                });
+
+        if (!removed.get()) {
             logger.warn(
                     " channel handler not exist, host: {}, node: {}, ctx: {}",
                     node,
                     node.getNodeID(),
                     hashCode);
         }
+
+        return lastChannel.get();
     }
 }
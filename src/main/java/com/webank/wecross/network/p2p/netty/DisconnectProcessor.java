@@ -21,6 +21,7 @@ public class DisconnectProcessor implements Processor {
     public void process(ChannelHandlerContext ctx, Node node, Message message) {
         Peer peer = peerManager.getPeerInfo(node);
         if (peer != null) {
+            peer.resetCodec();
             zoneManager.removeRemoteChains(peer, peer.getChainInfos(), true);
             peerManager.removePeerInfo(node);
         }
@@ -3,14 +3,52 @@ package com.webank.wecross.network.p2p.netty;
 import com.webank.wecross.network.p2p.netty.common.Node;
 import com.webank.wecross.network.p2p.netty.message.processor.Processor;
 import com.webank.wecross.network.p2p.netty.message.proto.Message;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageSerializer;
+import com.webank.wecross.zone.ZoneManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
+import java.nio.ByteBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Heartbeats carry the seq of the sender, so that a peer which missed a seq announcement learns
+ * the change within a heartbeat period. The seq is only sent on version 1 connections, heartbeats
+ * of older routers carry no data.
+ *
+ * <p>Heartbeats are only sent on channels nothing was written to for a heartbeat period, they are
+ * encoded once and shared by all channels. The encoded version 1 heartbeat is replaced when the seq
+ * changes.
+ *
+ * <p>heartbeat data => [seq(4 Byte)]
+ */
 public class HeartBeatProcessor implements Processor {
 
     private static final Logger logger = LoggerFactory.getLogger(HeartBeatProcessor.class);
 
+    public interface SeqHandler {
+        void onSeq(Node node, int seq);
+    }
+
+    /** an encoded heartbeat and the seq it carries */
+    private static class EncodedHeartBeat {
+        private final int seq;
+        private final ByteBuf buffer;
+
+        EncodedHeartBeat(int seq, ByteBuf buffer) {
+            this.seq = seq;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final ByteBuf legacyHeartBeat =
+            encode(Message.builder(MessageType.HEARTBEAT));
+
+    private ZoneManager zoneManager;
+    private SeqHandler seqHandler;
+    private volatile EncodedHeartBeat heartBeat;
+
     @Override
     public String name() {
         return "HeartBeat";
@@ -18,9 +56,70 @@ public class HeartBeatProcessor implements Processor {
 
     @Override
     public void process(ChannelHandlerContext ctx, Node node, Message message) {
-        // log with do nothing
+        ByteBuf data = message.getData();
+        if (data.readableBytes() < 4) {
+            // log with do nothing
+            if (logger.isTraceEnabled()) {
+                logger.trace(" receive heartbeat, host: {}, seq: {}", node, message.getSeq());
+            }
+            return;
+        }
+
+        int seq = data.getInt(data.readerIndex());
         if (logger.isTraceEnabled()) {
-            logger.trace(" receive heartbeat, host: {}, seq: {}", node, message.getSeq());
+            logger.trace(" receive heartbeat, host: {}, peer seq: {}", node, seq);
         }
+
+        if (seqHandler != null) {
+            seqHandler.onSeq(node, seq);
+        }
+    }
+
+    /**
+     * Heartbeat to send on the connection, a duplicate of the shared encoded one. Released by the
+     * write like any other buffer, which leaves the shared one untouched.
+     */
+    public ByteBuf getHeartBeat(ChannelHandlerContext ctx) {
+        byte version = ProtocolVersionProcessor.getProtocolVersion(ctx);
+        if (zoneManager == null || version == Message.PROTOCOL_VERSION_0) {
+            return legacyHeartBeat.duplicate();
+        }
+
+        int seq = zoneManager.getSeq();
+        EncodedHeartBeat current = heartBeat;
+        if (current == null || current.seq != seq) {
+            // racing threads may encode it twice, either one is fine
+            Message message =
+                    Message.builder(
+                            MessageType.HEARTBEAT, ByteBuffer.allocate(4).putInt(seq).array());
+            message.setVersion(version);
+            current = new EncodedHeartBeat(seq, encode(message));
+            heartBeat = current;
+        }
+        return current.buffer.duplicate();
+    }
+
+    /** heap buffer, so that a replaced one is simply collected */
+    private static ByteBuf encode(Message message) {
+        ByteBuf buffer =
+                Unpooled.buffer(message.getHeaderLength() + message.getData().readableBytes());
+        new MessageSerializer().serialize(message, buffer);
+        return Unpooled.unreleasableBuffer(buffer);
+    }
+
+    public ZoneManager getZoneManager() {
+        return zoneManager;
+    }
+
+    public void setZoneManager(ZoneManager zoneManager) {
+        this.zoneManager = zoneManager;
+    }
+
+    public SeqHandler getSeqHandler() {
+        return seqHandler;
+    }
+
+    public void setSeqHandler(SeqHandler seqHandler) {
+        this.seqHandler = seqHandler;
     }
 }
@@ -4,6 +4,8 @@ package com.webank.wecross.network.p2p.netty;
 public interface MessageType {
     /** heart beat message */
     Short HEARTBEAT = 0x01;
+    /** highest message header version and the compressions the sender understands */
+    Short PROTOCOL_VERSION = 0x02;
     /** resource remote request */
     Short RESOURCE_REQUEST = 0x10;
     /** resource remote request */
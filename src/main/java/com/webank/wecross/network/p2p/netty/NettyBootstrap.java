@@ -1,27 +1,22 @@
 package com.webank.wecross.network.p2p.netty;
 
+import com.webank.wecross.network.NettyEventLoops;
+import com.webank.wecross.network.NettySsl;
 import com.webank.wecross.network.p2p.netty.channel.handler.ChannelHandler;
 import com.webank.wecross.network.p2p.netty.channel.handler.ChannelHandlerCallBack;
 import com.webank.wecross.network.p2p.netty.common.Node;
 import com.webank.wecross.network.p2p.netty.factory.P2PConfig;
-import com.webank.wecross.network.p2p.netty.message.proto.Message;
-import com.webank.wecross.network.p2p.netty.message.serialize.MessageSerializer;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.*;
 import io.netty.handler.timeout.IdleStateHandler;
-import io.netty.util.AttributeKey;
 import java.io.IOException;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
@@ -39,16 +34,28 @@ public class NettyBootstrap {
     private static final Integer maxP2PMessageLength = 64 * 1024 * 1024;
     /** P2P connection maximum idle time, default 20000 ms */
     private static final Integer connectionIdleTimeoutMS = 20000;
-    /** P2P connection hearbeat period, default 3000ms */
+    /** P2P connection hearbeat period, sent after nothing was written for it, default 3000ms */
     private static final Integer heartBeatPeriod = 3000;
     /** P2P reconnect period, default 30000 ms */
     private static final Integer reconnectPeriod = 30000;
     /** ssl handle shake timeout default 10000 ms */
     private static final Integer handShakeTimeoutMS = 10000;
+    /**
+     * Flushes of P2P messages are consolidated until the end of the event loop tick or of the read
+     * burst, but not over more than this many messages, default 256
+     */
+    private static final Integer maxConsolidatedFlushes = 256;
+    /**
+     * A channel buffering more than the high water mark of outbound data is not writable, and takes
+     * no more requests until drained below the low water mark, default 8MB and 32MB
+     */
+    private static final WriteBufferWaterMark writeBufferWaterMark =
+            new WriteBufferWaterMark(8 * 1024 * 1024, 32 * 1024 * 1024);
 
     private ChannelHandlerCallBack channelHandlerCallBack;
     private Connections connections = new Connections();
     private P2PConfig config;
+    private NettyEventLoops eventLoops;
 
     public P2PConfig getConfig() {
         return config;
@@ -66,6 +73,14 @@ public class NettyBootstrap {
         this.channelHandlerCallBack = channelHandlerCallBack;
     }
 
+    public NettyEventLoops getEventLoops() {
+        return eventLoops;
+    }
+
+    public void setEventLoops(NettyEventLoops eventLoops) {
+        this.eventLoops = eventLoops;
+    }
+
     public Connections getConnections() {
         return connections;
     }
@@ -75,6 +90,7 @@ public class NettyBootstrap {
     }
 
     private final Bootstrap bootstrap = new Bootstrap();
+    private SslContext clientSslContext;
     private final ServerBootstrap serverBootstrap = new ServerBootstrap();
 
     private ScheduledExecutorService scheduledExecutorService = new ScheduledThreadPoolExecutor(1);
@@ -94,14 +110,13 @@ public class NettyBootstrap {
             org.springframework.core.io.Resource nodeKey)
             throws IOException {
 
-        SslContext sslCtx =
+        SslContextBuilder sslContextBuilder =
                 SslContextBuilder.forServer(nodeCrt.getInputStream(), nodeKey.getInputStream())
                         .trustManager(caCrt.getInputStream())
-                        .sslProvider(SslProvider.JDK)
-                        .clientAuth(ClientAuth.REQUIRE)
-                        .build();
+                        .clientAuth(ClientAuth.REQUIRE);
+        NettySsl.configure(sslContextBuilder, config.getSslProvider(), config.getCiphers());
 
-        return sslCtx;
+        return sslContextBuilder.build();
     }
 
     /**
@@ -118,12 +133,14 @@ public class NettyBootstrap {
             org.springframework.core.io.Resource nodeCrt,
             org.springframework.core.io.Resource nodeKey)
             throws IOException {
-        return SslContextBuilder.forClient()
-                .trustManager(caCrt.getInputStream())
-                .keyManager(nodeCrt.getInputStream(), nodeKey.getInputStream())
-                .sslProvider(SslProvider.JDK)
-                .clientAuth(ClientAuth.REQUIRE)
-                .build();
+        SslContextBuilder sslContextBuilder =
+                SslContextBuilder.forClient()
+                        .trustManager(caCrt.getInputStream())
+                        .keyManager(nodeCrt.getInputStream(), nodeKey.getInputStream())
+                        .clientAuth(ClientAuth.REQUIRE);
+        NettySsl.configure(sslContextBuilder, config.getSslProvider(), config.getCiphers());
+
+        return sslContextBuilder.build();
     }
 
     /**
@@ -142,6 +159,16 @@ public class NettyBootstrap {
         getConfig().validConfig();
         // set connect peer nodes
         getConnections().setConfiguredPeers(getConfig().getConnectPeers());
+        if (getConfig().getConnectionsPerPeer() != null) {
+            getConnections().setConnectionsPerPeer(getConfig().getConnectionsPerPeer().intValue());
+        }
+        if (getConfig().getMaxInFlightPerPeer() != null) {
+            getConnections().setMaxInFlightPerPeer(getConfig().getMaxInFlightPerPeer().intValue());
+        }
+
+        if (eventLoops == null) {
+            eventLoops = new NettyEventLoops(false, 1, 0);
+        }
 
         startListen();
         startConnect();
@@ -150,9 +177,6 @@ public class NettyBootstrap {
 
     private void startListen() throws ExecutionException, InterruptedException, IOException {
 
-        EventLoopGroup bossGroup = new NioEventLoopGroup();
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
-
         P2PConfig config = getConfig();
 
         SslContext sslCtx =
@@ -160,9 +184,10 @@ public class NettyBootstrap {
                         config.getCaCert(), config.getSslCert(), config.getSslKey());
 
         serverBootstrap
-                .group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .group(eventLoops.getBossGroup(), eventLoops.getWorkerGroup())
+                .channel(eventLoops.getServerChannelClass())
                 .option(ChannelOption.SO_BACKLOG, 100)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark)
                 .handler(new LoggingHandler(LogLevel.INFO))
                 .childHandler(
                         new ChannelInitializer<SocketChannel>() {
@@ -181,12 +206,14 @@ public class NettyBootstrap {
                                 ch.pipeline()
                                         .addLast(
                                                 sslHandler,
+                                                new FlushConsolidationHandler(
+                                                        maxConsolidatedFlushes, true),
                                                 new LengthFieldBasedFrameDecoder(
                                                         Integer.MAX_VALUE, 0, 4, -4, 0),
                                                 new IdleStateHandler(
                                                         connectionIdleTimeoutMS,
-                                                        connectionIdleTimeoutMS,
-                                                        connectionIdleTimeoutMS,
+                                                        heartBeatPeriod,
+                                                        0,
                                                         TimeUnit.MILLISECONDS),
                                                 handler);
                             }
@@ -201,54 +228,23 @@ public class NettyBootstrap {
 
     private void startConnect() throws IOException {
 
-        // init netty
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
-
-        bootstrap.group(workerGroup);
-        bootstrap.channel(NioSocketChannel.class);
+        // init netty, connections share the worker threads of the server
+        bootstrap.group(eventLoops.getWorkerGroup());
+        bootstrap.channel(eventLoops.getChannelClass());
+        bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark);
 
         P2PConfig config = getConfig();
 
-        SslContext sslCtx =
+        clientSslContext =
                 initSslContextForClient(
                         config.getCaCert(), config.getSslCert(), config.getSslKey());
 
-        bootstrap.handler(
-                new ChannelInitializer<SocketChannel>() {
-                    @Override
-                    public void initChannel(SocketChannel ch) {
-                        /*
-                         * Each connection is fetched from the socketChannel, using the new handler connection information
-                         */
-                        ChannelHandler handler = new ChannelHandler();
-                        handler.setConnectToServer(true);
-                        handler.setChannelHandlerCallBack(getChannelHandlerCallBack());
-
-                        SslHandler sslHandler = sslCtx.newHandler(ch.alloc());
-                        sslHandler.setHandshakeTimeout(handShakeTimeoutMS, TimeUnit.MILLISECONDS);
-
-                        ch.pipeline()
-                                .addLast(
-                                        sslHandler,
-                                        new LengthFieldBasedFrameDecoder(
-                                                maxP2PMessageLength, 0, 4, -4, 0),
-                                        new IdleStateHandler(
-                                                connectionIdleTimeoutMS,
-                                                connectionIdleTimeoutMS,
-                                                connectionIdleTimeoutMS,
-                                                TimeUnit.MILLISECONDS),
-                                        handler);
-                    }
-                });
-
         // Connect all configured nodes
         logger.info(" start connect, config: {}", config);
     }
 
     private void startPeriodTasks() {
-        // heartbeat: 3 s
-        scheduledExecutorService.scheduleAtFixedRate(
-                () -> heartBeat(), 0, heartBeatPeriod, TimeUnit.MILLISECONDS);
+        // heartbeat: on writer idle of each channel, see ChannelHandler
 
         // reconnect : 30s
         scheduledExecutorService.scheduleAtFixedRate(
@@ -264,30 +260,9 @@ public class NettyBootstrap {
     /** list all connected nodes */
     public void listConnectedNodes() {
         Map<String, String> host2NodeID = getConnections().getHost2NodeID();
-        synchronized (host2NodeID) {
-            host2NodeID.forEach(
-                    (host, nodeID) -> {
-                        logger.info("Current peer url:{} nodeid:{}", host, nodeID);
-                    });
-        }
-    }
-
-    /** send heartbeat message to all active nodes */
-    public void heartBeat() {
-        List<ChannelHandlerContext> channelHandlers = getConnections().activeChannelHandlers();
-        channelHandlers.forEach(
-                (ctx) -> {
-                    Message message = Message.builder(MessageType.HEARTBEAT);
-                    MessageSerializer serializer = new MessageSerializer();
-                    ByteBuf byteBuf = ctx.alloc().buffer();
-                    serializer.serialize(message, byteBuf);
-                    ctx.writeAndFlush(byteBuf);
-
-                    Node node = (Node) ctx.channel().attr(AttributeKey.valueOf("node")).get();
-
-                    if (logger.isTraceEnabled()) {
-                        logger.trace(" send heartbeat message to {} ", node);
-                    }
+        host2NodeID.forEach(
+                (host, nodeID) -> {
+                    logger.info("Current peer url:{} nodeid:{}", host, nodeID);
                 });
     }
 
@@ -297,27 +272,65 @@ public class NettyBootstrap {
                 .shouldConnectNodes()
                 .forEach(
                         host -> {
-                            ChannelFuture channelFuture =
-                                    bootstrap.connect(host.getHost(), host.getPort());
-                            channelFuture.addListener(
-                                    new ChannelFutureListener() {
-                                        @Override
-                                        public void operationComplete(ChannelFuture future) {
-                                            if (future.isSuccess()) {
-                                                if (logger.isDebugEnabled()) {
-                                                    logger.debug(" connect to {} success", host);
-                                                }
-                                            } else {
-                                                logger.warn(
-                                                        " connect to {} failed, error: {}",
-                                                        host,
-                                                        future.cause());
-                                            }
-                                        }
-                                    });
-                            if (logger.isDebugEnabled()) {
-                                logger.debug(" try to connect {}", host);
+                            int missing = getConnections().missingConnections(host);
+                            for (int i = 0; i < missing; ++i) {
+                                connect(host);
                             }
                         });
     }
+
+    private ChannelInitializer<SocketChannel> newClientChannelInitializer(Node host) {
+        return new ChannelInitializer<SocketChannel>() {
+            @Override
+            public void initChannel(SocketChannel ch) {
+                /*
+                 * Each connection is fetched from the socketChannel, using the new handler connection information
+                 */
+                ChannelHandler handler = new ChannelHandler();
+                handler.setConnectToServer(true);
+                handler.setChannelHandlerCallBack(getChannelHandlerCallBack());
+
+                // created for the host, so that the session to it is resumed on reconnect
+                SslHandler sslHandler =
+                        clientSslContext.newHandler(ch.alloc(), host.getHost(), host.getPort());
+                sslHandler.setHandshakeTimeout(handShakeTimeoutMS, TimeUnit.MILLISECONDS);
+
+                ch.pipeline()
+                        .addLast(
+                                sslHandler,
+                                new FlushConsolidationHandler(maxConsolidatedFlushes, true),
+                                new LengthFieldBasedFrameDecoder(maxP2PMessageLength, 0, 4, -4, 0),
+                                new IdleStateHandler(
+                                        connectionIdleTimeoutMS,
+                                        heartBeatPeriod,
+                                        0,
+                                        TimeUnit.MILLISECONDS),
+                                handler);
+            }
+        };
+    }
+
+    private void connect(Node host) {
+        ChannelFuture channelFuture =
+                bootstrap
+                        .clone()
+                        .handler(newClientChannelInitializer(host))
+                        .connect(host.getHost(), host.getPort());
+        channelFuture.addListener(
+                new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        if (future.isSuccess()) {
+                            if (logger.isDebugEnabled()) {
+                                logger.debug(" connect to {} success", host);
+                            }
+                        } else {
+                            logger.warn(" connect to {} failed, error: {}", host, future.cause());
+                        }
+                    }
+                });
+        if (logger.isDebugEnabled()) {
+            logger.debug(" try to connect {}", host);
+        }
+    }
 }
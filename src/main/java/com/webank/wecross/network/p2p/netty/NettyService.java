@@ -3,6 +3,7 @@ package com.webank.wecross.network.p2p.netty;
 import com.webank.wecross.network.p2p.netty.channel.handler.ChannelHandlerCallBack;
 import com.webank.wecross.network.p2p.netty.common.Node;
 import com.webank.wecross.network.p2p.netty.message.proto.Message;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageCompressor;
 import com.webank.wecross.network.p2p.netty.message.serialize.MessageSerializer;
 import com.webank.wecross.network.p2p.netty.request.Request;
 import com.webank.wecross.network.p2p.netty.response.Response;
@@ -30,6 +31,7 @@ public class NettyService {
     private NettyBootstrap nettyBootstrap;
     private SeqMapper seqMapper;
     private ThreadPoolTaskExecutor threadPool;
+    private MessageCompressor messageCompressor = new MessageCompressor();
 
     public Timer getTimer() {
         return timer;
@@ -55,6 +57,14 @@ public class NettyService {
         this.seqMapper = seqMapper;
     }
 
+    public MessageCompressor getMessageCompressor() {
+        return messageCompressor;
+    }
+
+    public void setMessageCompressor(MessageCompressor messageCompressor) {
+        this.messageCompressor = messageCompressor;
+    }
+
     public Connections getConnections() {
         return nettyBootstrap.getConnections();
     }
@@ -136,6 +146,7 @@ public class NettyService {
      */
     public void asyncSendRequest(Node node, Request request, ResponseCallBack callback) {
         Message message = Message.builder(request.getType(), request.getContent());
+        message.setSeq(getSeqMapper().newSeq());
 
         callback.setMessage(message);
         callback.setSeqMapper(getSeqMapper());
@@ -143,18 +154,28 @@ public class NettyService {
         String nodeID = node.getNodeID();
         if (logger.isTraceEnabled()) {
             logger.trace(
-                    " request content, node: {}, seq: {}, type: {}, timeout: {}, content: {}",
+                    " request content, node: {}, seq: {}, type: {}, timeout: {}, length: {}",
                     nodeID,
                     message.getSeq(),
                     message.getType(),
                     request.getTimeout(),
-                    request.getContent());
+                    request.getContent().length);
         }
 
-        // select random nodes to send
-        ChannelHandlerContext ctx = getConnections().getChannelHandler(nodeID);
+        // large messages and the others go on different channels of the peer
+        ChannelHandlerContext ctx =
+                getConnections().getChannelHandler(nodeID, message.getData().readableBytes());
         if (ctx != null && ctx.channel().isActive()) {
+            // fail at once rather than queue more for a peer that does not keep up
+            if (getConnections().isOverloaded(nodeID, ctx)) {
+                callback.sendFailed(StatusCode.OVERLOAD, "node overloaded");
+                return;
+            }
+
+            message.setVersion(ProtocolVersionProcessor.getProtocolVersion(ctx));
+            messageCompressor.compress(ctx, message);
             callback.setCtx(ctx);
+            callback.setInFlight(Connections.getInFlight(ctx));
             getSeqMapper().add(message.getSeq(), callback);
 
             if (request.getTimeout() > 0) {
@@ -168,15 +189,13 @@ public class NettyService {
                                         @Override
                                         public void run(Timeout timeout) throws Exception {
                                             if (finalThreadPool == null) {
-                                                callback.sendFailed(StatusCode.TIMEOUT, "timeout");
+                                                callback.onTimeout();
                                             } else {
                                                 finalThreadPool.execute(
                                                         new Runnable() {
                                                             @Override
                                                             public void run() {
-                                                                callback.sendFailed(
-                                                                        StatusCode.TIMEOUT,
-                                                                        "timeout");
+                                                                callback.onTimeout();
                                                             }
                                                         });
                                             }
@@ -188,8 +207,7 @@ public class NettyService {
             }
 
             MessageSerializer serializer = new MessageSerializer();
-            ByteBuf byteBuf = ctx.alloc().buffer();
-            serializer.serialize(message, byteBuf);
+            ByteBuf byteBuf = serializer.serialize(ctx.alloc(), message);
             ctx.writeAndFlush(byteBuf);
             if (logger.isTraceEnabled()) {
                 logger.trace(" send request, host: {}, seq: {}", node, message.getSeq());
@@ -0,0 +1,78 @@
+package com.webank.wecross.network.p2p.netty;
+
+import com.webank.wecross.network.p2p.netty.common.Node;
+import com.webank.wecross.network.p2p.netty.message.processor.Processor;
+import com.webank.wecross.network.p2p.netty.message.proto.Message;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageCompressor;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Agree on the message header version of a connection. Both sides announce the highest version
+ * they understand once connected, and send newer headers only after the other side announced
+ * them. Older routers ignore the announcement and keep talking version 0.
+ *
+ * <p>announcement data => [version(1 Byte)][accepted compressions(1 Byte)]
+ */
+public class ProtocolVersionProcessor implements Processor {
+    private static final Logger logger = LoggerFactory.getLogger(ProtocolVersionProcessor.class);
+
+    private static final AttributeKey<Byte> PROTOCOL_VERSION =
+            AttributeKey.valueOf("protocolVersion");
+    private static final AttributeKey<Byte> COMPRESSIONS = AttributeKey.valueOf("compressions");
+
+    @Override
+    public String name() {
+        return "ProtocolVersion";
+    }
+
+    @Override
+    public void process(ChannelHandlerContext ctx, Node node, Message message) {
+        ByteBuf data = message.getData();
+        byte remoteVersion =
+                data.isReadable() ? data.getByte(data.readerIndex()) : Message.PROTOCOL_VERSION_0;
+        byte version = (byte) Math.min(remoteVersion, Message.CURRENT_PROTOCOL_VERSION);
+        byte compressions =
+                data.readableBytes() > 1 ? data.getByte(data.readerIndex() + 1) : (byte) 0;
+
+        ctx.channel().attr(COMPRESSIONS).set(compressions);
+        ctx.channel().attr(PROTOCOL_VERSION).set(version);
+        logger.info(
+                " protocol version: {}, remote version: {}, compressions: {}, host: {}, ctx: {}",
+                version,
+                remoteVersion,
+                compressions,
+                node,
+                System.identityHashCode(ctx));
+    }
+
+    /** Send what we understand, always in a version 0 header */
+    public static void announce(ChannelHandlerContext ctx) {
+        Message message =
+                Message.builder(
+                        MessageType.PROTOCOL_VERSION,
+                        new byte[] {
+                            Message.CURRENT_PROTOCOL_VERSION, MessageCompressor.COMPRESSION_DEFLATE
+                        });
+
+        MessageSerializer serializer = new MessageSerializer();
+        ByteBuf byteBuf = serializer.serialize(ctx.alloc(), message);
+        ctx.writeAndFlush(byteBuf);
+    }
+
+    /** @return the header version to send on the connection */
+    public static byte getProtocolVersion(ChannelHandlerContext ctx) {
+        Byte version = ctx.channel().attr(PROTOCOL_VERSION).get();
+        return version == null ? Message.PROTOCOL_VERSION_0 : version;
+    }
+
+    /** @return compressions the peer of the connection accepts, MessageCompressor flags */
+    public static byte getCompressions(ChannelHandlerContext ctx) {
+        Byte compressions = ctx.channel().attr(COMPRESSIONS).get();
+        return compressions == null ? 0 : compressions;
+    }
+}
@@ -4,6 +4,7 @@ import com.webank.wecross.network.NetworkProcessor;
 import com.webank.wecross.network.p2p.netty.common.Node;
 import com.webank.wecross.network.p2p.netty.message.processor.Processor;
 import com.webank.wecross.network.p2p.netty.message.proto.Message;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageCompressor;
 import com.webank.wecross.network.p2p.netty.message.serialize.MessageSerializer;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
@@ -14,6 +15,7 @@ public class RequestProcessor implements Processor {
     private static final Logger logger = LoggerFactory.getLogger(RequestProcessor.class);
 
     private NetworkProcessor networkProcessor;
+    private MessageCompressor messageCompressor = new MessageCompressor();
 
     @Override
     public String name() {
@@ -23,14 +25,14 @@ public class RequestProcessor implements Processor {
     @Override
     public void process(ChannelHandlerContext ctx, Node node, Message message) {
         try {
-            String content = new String(message.getData(), "utf-8");
+            ByteBuf content = message.getData();
 
             if (logger.isDebugEnabled()) {
                 logger.debug(
-                        "  resource request message, host: {}, seq: {}, content: {}",
+                        "  resource request message, host: {}, seq: {}, length: {}",
                         node,
                         message.getSeq(),
-                        content);
+                        content.readableBytes());
             }
 
             networkProcessor.process(
@@ -38,31 +40,30 @@ public class RequestProcessor implements Processor {
                     content,
                     new NetworkProcessor.Callback() {
                         @Override
-                        public void onResponse(String responseContent) {
+                        public void onResponse(byte[] responseContent) {
                             if (responseContent != null) {
 
                                 // send response
                                 message.setType(MessageType.RESOURCE_RESPONSE);
-                                message.setData(responseContent.getBytes());
+                                message.setData(responseContent);
+                                messageCompressor.compress(ctx, message);
 
                                 MessageSerializer serializer = new MessageSerializer();
-                                ByteBuf byteBuf = ctx.alloc().buffer();
-                                serializer.serialize(message, byteBuf);
+                                ByteBuf byteBuf = serializer.serialize(ctx.alloc(), message);
                                 ctx.writeAndFlush(byteBuf);
 
                                 if (logger.isDebugEnabled()) {
                                     logger.debug(
-                                            " Response network message, resource request, host: {}, seq: {}, response content: {}",
+                                            " Response network message, resource request, host: {}, seq: {}, response length: {}",
                                             node,
                                             message.getSeq(),
-                                            responseContent);
+                                            responseContent.length);
                                 }
                             } else {
                                 logger.error(
-                                        "response content is null, node: "
-                                                + node
-                                                + ", content: "
-                                                + content);
+                                        "response content is null, node: {}, seq: {}",
+                                        node,
+                                        message.getSeq());
                             }
                         }
                     });
@@ -75,4 +76,12 @@ public class RequestProcessor implements Processor {
     public void setNetworkProcessor(NetworkProcessor networkProcessor) {
         this.networkProcessor = networkProcessor;
     }
+
+    public MessageCompressor getMessageCompressor() {
+        return messageCompressor;
+    }
+
+    public void setMessageCompressor(MessageCompressor messageCompressor) {
+        this.messageCompressor = messageCompressor;
+    }
 }
@@ -6,6 +6,7 @@ import com.webank.wecross.network.p2p.netty.message.proto.Message;
 import com.webank.wecross.network.p2p.netty.response.Response;
 import com.webank.wecross.network.p2p.netty.response.ResponseCallBack;
 import com.webank.wecross.network.p2p.netty.response.StatusCode;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,23 +33,47 @@ public class ResponseProcessor implements Processor {
     @Override
     public void process(ChannelHandlerContext ctx, Node node, Message message) {
         try {
-            String content = new String(message.getData(), "utf-8");
+            ByteBuf content = message.getData();
             if (logger.isTraceEnabled()) {
-                logger.trace(" source response, message: {}, content: {}", message, content);
+                logger.trace(" source response, message: {}", message);
             }
 
-            ResponseCallBack callback =
-                    (ResponseCallBack) getSeqMapper().getAndRemove(message.getSeq());
+            ResponseCallBack callback = (ResponseCallBack) getSeqMapper().get(message.getSeq());
             if (null == callback) {
                 throw new UnsupportedOperationException(
                         " not found callback, seq: " + message.getSeq());
             }
 
+            // only the channel the request went out on may answer it
+            if (callback.getCtx() == null || callback.getCtx().channel() != ctx.channel()) {
+                logger.warn(
+                        " response from another channel, seq: {}, node: {}",
+                        message.getSeq(),
+                        node);
+                return;
+            }
+
+            // the request timed out meanwhile
+            if (getSeqMapper().getAndRemove(message.getSeq()) != callback) {
+                return;
+            }
+
             // cancel timeout firsts
             callback.cancelTimer();
+            callback.releaseInFlight();
 
-            Response response =
-                    Response.build(StatusCode.SUCCESS, "success", message.getSeq(), content);
+            // requests the peer could not take are answered with an error result and no data
+            Response response;
+            if (message.getResult() == StatusCode.SUCCESS) {
+                response = Response.build(StatusCode.SUCCESS, "success", message.getSeq(), content);
+            } else {
+                response =
+                        Response.build(
+                                message.getResult(),
+                                "request rejected by remote node",
+                                message.getSeq(),
+                                null);
+            }
             callback.onResponse(response);
 
         } catch (Exception e) {
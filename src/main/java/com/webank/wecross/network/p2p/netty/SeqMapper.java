@@ -1,38 +1,81 @@
 package com.webank.wecross.network.p2p.netty;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import io.netty.util.collection.LongObjectHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.springframework.stereotype.Component;
 
-/** manage uniq sequence to callback object */
+/**
+ * manage uniq sequence to callback object
+ *
+ * <p>Sequences are taken from one 64-bit counter and kept in primitive long keyed maps, split in
+ * segments to keep lock contention low.
+ */
 @Component
 public class SeqMapper {
+    private static final int SEGMENT_COUNT = 16;
+
+    private AtomicLong currentSeq = new AtomicLong();
+
     /** sequence to callback object mapper */
-    private Map<String, Object> mapper = new ConcurrentHashMap<String, Object>();
+    private LongObjectHashMap<Object>[] segments;
+
+    @SuppressWarnings("unchecked")
+    public SeqMapper() {
+        segments = new LongObjectHashMap[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; ++i) {
+            segments[i] = new LongObjectHashMap<Object>();
+        }
+    }
+
+    /** @return a new sequence, never 0 which marks messages expecting no response */
+    public long newSeq() {
+        long seq = currentSeq.incrementAndGet();
+        while (seq == 0) {
+            seq = currentSeq.incrementAndGet();
+        }
+        return seq;
+    }
 
-    public Map<String, Object> getMapper() {
-        return mapper;
+    private LongObjectHashMap<Object> segment(long seq) {
+        return segments[(int) (seq ^ (seq >>> 32)) & (SEGMENT_COUNT - 1)];
     }
 
-    public void setMapper(Map<String, Object> mapper) {
-        this.mapper = mapper;
+    public Object get(long seq) {
+        LongObjectHashMap<Object> segment = segment(seq);
+        synchronized (segment) {
+            return segment.get(seq);
+        }
     }
 
-    public Object get(String seq) {
-        return mapper.get(seq);
+    /** Only one of concurrent callers gets the object */
+    public Object getAndRemove(long seq) {
+        LongObjectHashMap<Object> segment = segment(seq);
+        synchronized (segment) {
+            return segment.remove(seq);
+        }
     }
 
-    public Object getAndRemove(String seq) {
-        Object object = mapper.get(seq);
-        mapper.remove(seq);
-        return object;
+    public void add(long seq, Object object) {
+        LongObjectHashMap<Object> segment = segment(seq);
+        synchronized (segment) {
+            segment.put(seq, object);
+        }
     }
 
-    public void add(String seq, Object object) {
-        this.mapper.put(seq, object);
+    public void remove(long seq) {
+        LongObjectHashMap<Object> segment = segment(seq);
+        synchronized (segment) {
+            segment.remove(seq);
+        }
     }
 
-    public void remove(String seq) {
-        mapper.remove(seq);
+    public int size() {
+        int size = 0;
+        for (LongObjectHashMap<Object> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
     }
 }
@@ -37,8 +37,11 @@ public class ChannelHandler extends SimpleChannelInboundHandler<ByteBuf> {
         if (evt instanceof IdleStateEvent) {
             IdleStateEvent e = (IdleStateEvent) evt;
             switch (e.state()) {
-                case READER_IDLE:
                 case WRITER_IDLE:
+                    // heartbeats only keep otherwise idle channels alive
+                    getChannelHandlerCallBack().onWriterIdle(ctx);
+                    break;
+                case READER_IDLE:
                 case ALL_IDLE:
                     logger.error(
                             " disconnect, event:{} host:{} ctx:{}, long time inactive",
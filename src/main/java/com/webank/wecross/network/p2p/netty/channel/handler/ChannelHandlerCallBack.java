@@ -1,8 +1,12 @@
 package com.webank.wecross.network.p2p.netty.channel.handler;
 
 import com.webank.wecross.network.p2p.netty.Connections;
+import com.webank.wecross.network.p2p.netty.HeartBeatProcessor;
+import com.webank.wecross.network.p2p.netty.MessageType;
+import com.webank.wecross.network.p2p.netty.ProtocolVersionProcessor;
 import com.webank.wecross.network.p2p.netty.common.Node;
 import com.webank.wecross.network.p2p.netty.message.MessageCallBack;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageSerializer;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.SocketChannel;
@@ -10,11 +14,13 @@ import io.netty.handler.ssl.SslHandler;
 import io.netty.util.AttributeKey;
 import java.security.Principal;
 import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.security.cert.X509Certificate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
@@ -23,8 +29,17 @@ public class ChannelHandlerCallBack {
 
     private static Logger logger = LoggerFactory.getLogger(ChannelHandlerCallBack.class);
 
+    private static final AttributeKey<SerialExecutor> EXECUTOR = AttributeKey.valueOf("executor");
+
     private ThreadPoolTaskExecutor threadPool = null;
 
+    /** nodeID => queue of requests and connection events of the peer, run on the thread pool */
+    private Map<String, SerialExecutor> peerExecutors = new ConcurrentHashMap<>();
+    /** messages of one peer waiting at most, further requests are answered as overloaded */
+    private int peerQueueCapacity = 1000;
+    /** messages of one peer handled in a row before the other peers get their turn */
+    private int peerBatchSize = 16;
+
     private Connections connections;
     private MessageCallBack callBack;
 
@@ -44,6 +59,22 @@ public class ChannelHandlerCallBack {
         this.connections = connections;
     }
 
+    public int getPeerQueueCapacity() {
+        return peerQueueCapacity;
+    }
+
+    public void setPeerQueueCapacity(int peerQueueCapacity) {
+        this.peerQueueCapacity = peerQueueCapacity;
+    }
+
+    public int getPeerBatchSize() {
+        return peerBatchSize;
+    }
+
+    public void setPeerBatchSize(int peerBatchSize) {
+        this.peerBatchSize = peerBatchSize;
+    }
+
     public ThreadPoolTaskExecutor getThreadPool() {
         return threadPool;
     }
@@ -119,7 +150,20 @@ public class ChannelHandlerCallBack {
         ctx.channel().attr(AttributeKey.valueOf("NodeID")).set(node.getNodeID());
 
         logger.info("add new connections: {}, ctx: {}", node, hashCode);
-        getConnections().addChannelHandler(node, ctx, connectToServer);
+        Node peerNode = getConnections().addChannelHandler(node, ctx, connectToServer);
+
+        // all channels of a peer share the node of its first channel, and its message queue
+        ctx.channel().attr(AttributeKey.valueOf("node")).set(peerNode);
+        SerialExecutor executor = null;
+        if (threadPool != null) {
+            executor =
+                    peerExecutors.computeIfAbsent(
+                            peerNode.getNodeID(),
+                            nodeID ->
+                                    new SerialExecutor(
+                                            threadPool, peerQueueCapacity, peerBatchSize));
+            ctx.channel().attr(EXECUTOR).set(executor);
+        }
 
         logger.info(
                 " node {} connect success, nodeID: {}, ctx: {}",
@@ -127,29 +171,33 @@ public class ChannelHandlerCallBack {
                 node.getNodeID(),
                 System.identityHashCode(ctx));
 
-        if (threadPool == null) {
+        ProtocolVersionProcessor.announce(ctx);
+
+        // the peer is connected by its first channel only
+        if (peerNode != node) {
+            return;
+        }
+
+        if (executor == null) {
             callBack.onConnect(ctx, node);
         } else {
-            try {
-                threadPool.execute(
-                        new Runnable() {
-                            @Override
-                            public void run() {
-                                callBack.onConnect(ctx, node);
-                            }
-                        });
-            } catch (TaskRejectedException e) {
-                logger.warn(" TaskRejectedException: {} ", e);
-                callBack.onConnect(ctx, node);
-            }
+            // queued ahead of any message of the peer
+            executor.executeUnbounded(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            callBack.onConnect(ctx, node);
+                        }
+                    });
         }
     }
 
     public void onDisconnect(ChannelHandlerContext ctx) {
         Node node = (Node) ctx.channel().attr(AttributeKey.valueOf("node")).get();
 
+        boolean lastChannel = false;
         if (null != node.getNodeID()) {
-            getConnections().removeChannelHandler(node, ctx);
+            lastChannel = getConnections().removeChannelHandler(node, ctx);
             logger.info(
                     " disconnect, host: {}, nodeID: {}, ctx: {}",
                     node,
@@ -162,44 +210,81 @@ public class ChannelHandlerCallBack {
                     System.identityHashCode(ctx));
         }
 
-        if (threadPool == null) {
+        // the peer is gone with its last channel only
+        if (!lastChannel) {
+            return;
+        }
+
+        SerialExecutor executor = ctx.channel().attr(EXECUTOR).get();
+        if (executor == null) {
             callBack.onDisconnect(ctx, node);
         } else {
-            try {
-                threadPool.execute(
-                        new Runnable() {
-                            @Override
-                            public void run() {
-                                callBack.onDisconnect(ctx, node);
+            // queued behind the messages of the peer still waiting
+            executor.executeUnbounded(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            callBack.onDisconnect(ctx, node);
+                            if (getConnections().getChannelHandler(node.getNodeID()) == null) {
+                                peerExecutors.remove(node.getNodeID(), executor);
                             }
-                        });
-            } catch (TaskRejectedException e) {
-                logger.warn(" TaskRejectedException: {} ", e);
-                callBack.onDisconnect(ctx, node);
-            }
+                        }
+                    });
+        }
+    }
+
+    /** Nothing was written to the channel for a heartbeat period, send a heartbeat */
+    public void onWriterIdle(ChannelHandlerContext ctx) {
+        Node node = (Node) (ctx.channel().attr(AttributeKey.valueOf("node")).get());
+        if (node == null) {
+            // handshake not done yet
+            return;
+        }
+
+        HeartBeatProcessor heartBeatProcessor =
+                (HeartBeatProcessor) callBack.getProcessor(MessageType.HEARTBEAT);
+        ctx.writeAndFlush(heartBeatProcessor.getHeartBeat(ctx));
+
+        if (logger.isTraceEnabled()) {
+            logger.trace(" send heartbeat message to {} ", node);
         }
     }
 
     public void onMessage(ChannelHandlerContext ctx, ByteBuf message) {
         /*
-         use thread pool first onMessage may block
+         use thread pool first onMessage may block, requests of a peer are handled in order
         */
         Node node = (Node) (ctx.channel().attr(AttributeKey.valueOf("node")).get());
+        SerialExecutor executor = ctx.channel().attr(EXECUTOR).get();
 
-        if (threadPool == null) {
+        if (executor == null) {
             callBack.onMessage(ctx, node, message);
-        } else {
-            try {
-                threadPool.execute(
-                        new Runnable() {
-                            @Override
-                            public void run() {
-                                callBack.onMessage(ctx, node, message);
-                            }
-                        });
-            } catch (TaskRejectedException e) {
-                logger.warn(" TaskRejectedException : {}, message: {}", e, message);
+            return;
+        }
+
+        Runnable task =
+                new SerialExecutor.RejectableTask() {
+                    @Override
+                    public void run() {
+                        callBack.onMessage(ctx, node, message);
+                    }
+
+                    @Override
+                    public void reject() {
+                        callBack.onOverload(ctx, node, message);
+                    }
+                };
+
+        try {
+            // responses and heartbeats complete at once, whatever the requests queued before
+            if (MessageType.RESOURCE_REQUEST.equals(MessageSerializer.peekType(message))) {
+                executor.execute(task);
+            } else {
+                threadPool.execute(task);
             }
+        } catch (RejectedExecutionException e) {
+            logger.warn(" RejectedExecutionException : {}, message: {}", e, message);
+            callBack.onOverload(ctx, node, message);
         }
     }
 }
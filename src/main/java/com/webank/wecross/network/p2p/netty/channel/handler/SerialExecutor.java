@@ -0,0 +1,128 @@
+package com.webank.wecross.network.p2p.netty.channel.handler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mailbox of one peer. Tasks run one at a time in submission order on the shared pool, which holds
+ * at most one drain per peer. A drain yields the thread after a batch of tasks and queues again
+ * behind the other peers, so that a busy peer does not starve the others.
+ */
+public class SerialExecutor implements Executor {
+    private static final Logger logger = LoggerFactory.getLogger(SerialExecutor.class);
+
+    /** A task dropped rather than run when the shared pool takes no more work */
+    public interface RejectableTask extends Runnable {
+        void reject();
+    }
+
+    private final Executor pool;
+    /** tasks queued at most, further tasks are rejected */
+    private final int capacity;
+    /** tasks run in a row before letting other peers in */
+    private final int batchSize;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public SerialExecutor(Executor pool, int capacity, int batchSize) {
+        this.pool = pool;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+    }
+
+    /** @throws RejectedExecutionException if the mailbox is full */
+    @Override
+    public void execute(Runnable task) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            throw new RejectedExecutionException("peer queue full, capacity: " + capacity);
+        }
+
+        tasks.add(task);
+        schedule();
+    }
+
+    /** Queue a task regardless of the capacity, for connection events that must not get lost */
+    public void executeUnbounded(Runnable task) {
+        size.incrementAndGet();
+        tasks.add(task);
+        schedule();
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            pool.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            logger.warn(" shared pool rejected peer queue, reject it, e: {}", e.getMessage());
+            rejectAll();
+        }
+    }
+
+    /**
+     * The caller may be an event loop, so only tasks that cannot be rejected run in place. They are
+     * connection events, which run on the event loop anyway without a pool.
+     */
+    private void rejectAll() {
+        try {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                size.decrementAndGet();
+
+                try {
+                    if (task instanceof RejectableTask) {
+                        ((RejectableTask) task).reject();
+                    } else {
+                        task.run();
+                    }
+                } catch (Exception e) {
+                    logger.error(" peer task failed, e: {}", e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            for (int i = 0; i < batchSize; ++i) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                size.decrementAndGet();
+
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.error(" peer task failed, e: {}", e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // tasks queued while this drain was finishing are picked up by a new one
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -4,21 +4,31 @@ import com.webank.wecross.network.p2p.netty.ConnectProcessor;
 import com.webank.wecross.network.p2p.netty.DisconnectProcessor;
 import com.webank.wecross.network.p2p.netty.HeartBeatProcessor;
 import com.webank.wecross.network.p2p.netty.MessageType;
+import com.webank.wecross.network.p2p.netty.ProtocolVersionProcessor;
 import com.webank.wecross.network.p2p.netty.RequestProcessor;
 import com.webank.wecross.network.p2p.netty.ResponseProcessor;
 import com.webank.wecross.network.p2p.netty.SeqMapper;
 import com.webank.wecross.network.p2p.netty.message.MessageCallBack;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageCompressor;
 import com.webank.wecross.peer.PeerManager;
 import com.webank.wecross.zone.ZoneManager;
 
 public class MessageCallbackFactory {
 
-    private static HeartBeatProcessor newHeartBeatProcessor() {
-        return new HeartBeatProcessor();
+    private static HeartBeatProcessor newHeartBeatProcessor(ZoneManager zoneManager) {
+        HeartBeatProcessor heartBeatProcessor = new HeartBeatProcessor();
+        heartBeatProcessor.setZoneManager(zoneManager);
+        return heartBeatProcessor;
     }
 
-    private static RequestProcessor newRequestProcessor() {
-        return new RequestProcessor();
+    private static ProtocolVersionProcessor newProtocolVersionProcessor() {
+        return new ProtocolVersionProcessor();
+    }
+
+    private static RequestProcessor newRequestProcessor(MessageCompressor messageCompressor) {
+        RequestProcessor requestProcessor = new RequestProcessor();
+        requestProcessor.setMessageCompressor(messageCompressor);
+        return requestProcessor;
     }
 
     private static ResponseProcessor newResponseProcessor(SeqMapper seqMapper) {
@@ -44,14 +54,19 @@ public class MessageCallbackFactory {
     }
 
     public static MessageCallBack build(
-            SeqMapper seqMapper, PeerManager peerManager, ZoneManager zoneManager) {
+            SeqMapper seqMapper,
+            MessageCompressor messageCompressor,
+            PeerManager peerManager,
+            ZoneManager zoneManager) {
         System.out.println("Initializing MessageCallBack ...");
 
         MessageCallBack callback = new MessageCallBack();
         callback.setSeqMapper(seqMapper);
+        callback.setMessageCompressor(messageCompressor);
 
-        callback.setProcessor(MessageType.HEARTBEAT, newHeartBeatProcessor());
-        callback.setProcessor(MessageType.RESOURCE_REQUEST, newRequestProcessor());
+        callback.setProcessor(MessageType.HEARTBEAT, newHeartBeatProcessor(zoneManager));
+        callback.setProcessor(MessageType.PROTOCOL_VERSION, newProtocolVersionProcessor());
+        callback.setProcessor(MessageType.RESOURCE_REQUEST, newRequestProcessor(messageCompressor));
         callback.setProcessor(MessageType.RESOURCE_RESPONSE, newResponseProcessor(seqMapper));
         callback.setProcessor(MessageCallBack.ON_CONNECT, newConnectProcessor(peerManager));
         callback.setProcessor(
@@ -1,5 +1,6 @@
 package com.webank.wecross.network.p2p.netty.factory;
 
+import com.webank.wecross.network.NettyEventLoops;
 import com.webank.wecross.network.p2p.netty.NettyBootstrap;
 import com.webank.wecross.network.p2p.netty.channel.handler.ChannelHandlerCallBack;
 import com.webank.wecross.network.p2p.netty.message.MessageCallBack;
@@ -9,7 +10,8 @@ public class NettyBootstrapFactory {
     public static NettyBootstrap build(
             P2PConfig p2pConfig,
             ThreadPoolTaskExecutor threadPool,
-            MessageCallBack messageCallBack) {
+            MessageCallBack messageCallBack,
+            NettyEventLoops eventLoops) {
         System.out.println("Initializing NettyBootstrap ...");
 
         ChannelHandlerCallBack channelHandlerCallBack = new ChannelHandlerCallBack();
@@ -19,6 +21,7 @@ public class NettyBootstrapFactory {
         NettyBootstrap bootstrap = new NettyBootstrap();
         bootstrap.setConfig(p2pConfig);
         bootstrap.setChannelHandlerCallBack(channelHandlerCallBack);
+        bootstrap.setEventLoops(eventLoops);
 
         return bootstrap;
     }
@@ -3,11 +3,15 @@ package com.webank.wecross.network.p2p.netty.factory;
 import com.webank.wecross.network.p2p.netty.NettyBootstrap;
 import com.webank.wecross.network.p2p.netty.NettyService;
 import com.webank.wecross.network.p2p.netty.SeqMapper;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageCompressor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 public class NettyServiceFactory {
     public static NettyService build(
-            SeqMapper seqMapper, ThreadPoolTaskExecutor threadPool, NettyBootstrap nettyBootstrap) {
+            SeqMapper seqMapper,
+            MessageCompressor messageCompressor,
+            ThreadPoolTaskExecutor threadPool,
+            NettyBootstrap nettyBootstrap) {
 
         System.out.println("Initializing P2PService ...");
 
@@ -15,6 +19,7 @@ public class NettyServiceFactory {
         nettyService.setThreadPool(threadPool);
         nettyService.setInitializer(nettyBootstrap);
         nettyService.setSeqMapper(seqMapper);
+        nettyService.setMessageCompressor(messageCompressor);
 
         return nettyService;
     }
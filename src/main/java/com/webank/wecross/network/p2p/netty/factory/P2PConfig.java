@@ -25,6 +25,12 @@ public class P2PConfig {
 
     private Long threadNum;
     private Long threadQueueCapacity;
+    private String codec;
+    private Long compressThreshold;
+    private Long connectionsPerPeer;
+    private Long maxInFlightPerPeer;
+    private String sslProvider;
+    private List<String> ciphers;
 
     public List<String> getPeers() {
         return peers;
@@ -176,6 +182,38 @@ public class P2PConfig {
         }
     }
 
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public Long getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(Long compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public Long getConnectionsPerPeer() {
+        return connectionsPerPeer;
+    }
+
+    public void setConnectionsPerPeer(Long connectionsPerPeer) {
+        this.connectionsPerPeer = connectionsPerPeer;
+    }
+
+    public Long getMaxInFlightPerPeer() {
+        return maxInFlightPerPeer;
+    }
+
+    public void setMaxInFlightPerPeer(Long maxInFlightPerPeer) {
+        this.maxInFlightPerPeer = maxInFlightPerPeer;
+    }
+
     public Long getThreadNum() {
         return threadNum;
     }
@@ -183,4 +221,20 @@ public class P2PConfig {
     public void setThreadNum(Long threadNum) {
         this.threadNum = threadNum;
     }
+
+    public String getSslProvider() {
+        return sslProvider;
+    }
+
+    public void setSslProvider(String sslProvider) {
+        this.sslProvider = sslProvider;
+    }
+
+    public List<String> getCiphers() {
+        return ciphers;
+    }
+
+    public void setCiphers(List<String> ciphers) {
+        this.ciphers = ciphers;
+    }
 }
@@ -1,11 +1,15 @@
 package com.webank.wecross.network.p2p.netty.message;
 
+import com.webank.wecross.network.p2p.netty.MessageType;
 import com.webank.wecross.network.p2p.netty.SeqMapper;
 import com.webank.wecross.network.p2p.netty.common.Node;
 import com.webank.wecross.network.p2p.netty.message.processor.Processor;
 import com.webank.wecross.network.p2p.netty.message.proto.Message;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageCompressor;
 import com.webank.wecross.network.p2p.netty.message.serialize.MessageSerializer;
+import com.webank.wecross.network.p2p.netty.response.StatusCode;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -22,6 +26,7 @@ public class MessageCallBack {
     private Map<Short, Processor> messageToProcessor = new ConcurrentHashMap<Short, Processor>() {};
 
     private SeqMapper seqMapper;
+    private MessageCompressor messageCompressor = new MessageCompressor();
 
     public SeqMapper getSeqMapper() {
         return seqMapper;
@@ -31,6 +36,14 @@ public class MessageCallBack {
         this.seqMapper = seqMapper;
     }
 
+    public MessageCompressor getMessageCompressor() {
+        return messageCompressor;
+    }
+
+    public void setMessageCompressor(MessageCompressor messageCompressor) {
+        this.messageCompressor = messageCompressor;
+    }
+
     public Map<Short, Processor> getMessageToProcessor() {
         return messageToProcessor;
     }
@@ -59,6 +72,34 @@ public class MessageCallBack {
         }
     }
 
+    /** Answer a request that could not be handled with an overload response instead of dropping */
+    public void onOverload(ChannelHandlerContext ctx, Node node, ByteBuf byteBuf) {
+        try {
+            MessageSerializer messageSerializer = new MessageSerializer();
+            Message message = messageSerializer.deserialize(byteBuf);
+            if (!MessageType.RESOURCE_REQUEST.equals(message.getType())) {
+                logger.warn(
+                        " overloaded, drop message, type: {}, seq: {}, host: {}",
+                        message.getType(),
+                        message.getSeq(),
+                        node);
+                return;
+            }
+
+            message.setType(MessageType.RESOURCE_RESPONSE);
+            message.setResult(StatusCode.OVERLOAD);
+            message.setData(Unpooled.EMPTY_BUFFER);
+            message.setCompressed(false);
+            ctx.writeAndFlush(messageSerializer.serialize(ctx.alloc(), message));
+
+            logger.warn(" overloaded, reject request, seq: {}, host: {}", message.getSeq(), node);
+        } catch (Exception e) {
+            logger.error(" invalid message, host: {}, e: {}", node, e);
+        } finally {
+            byteBuf.release();
+        }
+    }
+
     public void onMessage(ChannelHandlerContext ctx, Node node, ByteBuf byteBuf) {
         Integer hashCode = System.identityHashCode(ctx);
 
@@ -66,6 +107,7 @@ public class MessageCallBack {
             /** The message header fields are first parsed to get message type, result */
             MessageSerializer messageSerializer = new MessageSerializer();
             Message message = messageSerializer.deserialize(byteBuf);
+            messageCompressor.decompress(message);
 
             if (logger.isTraceEnabled()) {
                 logger.trace(
@@ -1,6 +1,7 @@
 package com.webank.wecross.network.p2p.netty.message.proto;
 
-import com.webank.wecross.network.p2p.netty.common.Utils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.io.Serializable;
 
 /**
@@ -14,6 +15,12 @@ import java.io.Serializable;
  * + 32 + 4 + length(data) type: type of this packet, specific value reference P2PMessageType seq:
  * unique value that marks a request result: the status of the p2p message itself extend fields:
  * expand other fields as needed, default None, user can extend the protocol field. data: load data
+ *
+ * <p>protocol version 1 => [length(4 Byte)][type(2 Byte)][seq(8 Byte)][result(4 Byte)][data]
+ *
+ * <p>The highest bit of type marks a version 1 header, whose seq is a 64-bit number instead of a
+ * 32 Byte string. It is only sent to peers which announced version 1 by a PROTOCOL_VERSION message.
+ * The next bit marks data compressed by MessageCompressor.
  */
 
 /** Structure of P2P message */
@@ -28,12 +35,30 @@ public class Message implements Serializable {
     public static final int RESULT_FIELD_LENGTH = 4;
     public static final int HEADER_LENGTH =
             LENGTH_FIELD_LENGTH + TYPE_FIELD_LENGTH + SEQ_FIELD_LENGTH + RESULT_FIELD_LENGTH;
+    public static final int V1_SEQ_FIELD_LENGTH = 8;
+    public static final int V1_HEADER_LENGTH =
+            LENGTH_FIELD_LENGTH + TYPE_FIELD_LENGTH + V1_SEQ_FIELD_LENGTH + RESULT_FIELD_LENGTH;
+
+    public static final byte PROTOCOL_VERSION_0 = 0;
+    public static final byte PROTOCOL_VERSION_1 = 1;
+    public static final byte CURRENT_PROTOCOL_VERSION = PROTOCOL_VERSION_1;
+    public static final short V1_TYPE_FLAG = (short) 0x8000;
+    public static final short COMPRESSED_TYPE_FLAG = 0x4000;
 
     protected Integer length = 0;
     protected Short type = 0;
-    protected String seq = Utils.newUUID();
+    protected long seq = 0;
+    /** seq of a version 0 header as received, echoed back unchanged in the response */
+    protected String legacySeq;
+
     protected Integer result = 0;
-    protected byte[] data = new byte[0];
+    protected byte version = PROTOCOL_VERSION_0;
+    protected boolean compressed = false;
+    /**
+     * For a received message this is a slice of the frame, valid until the frame is released
+     * after processing. Retain it to keep it longer.
+     */
+    protected transient ByteBuf data = Unpooled.EMPTY_BUFFER;
 
     public Integer getLength() {
         return length;
@@ -51,14 +76,43 @@ public class Message implements Serializable {
         this.type = type;
     }
 
-    public String getSeq() {
+    public long getSeq() {
         return seq;
     }
 
-    public void setSeq(String seq) {
+    public void setSeq(long seq) {
         this.seq = seq;
     }
 
+    public String getLegacySeq() {
+        return legacySeq;
+    }
+
+    public void setLegacySeq(String legacySeq) {
+        this.legacySeq = legacySeq;
+    }
+
+    public byte getVersion() {
+        return version;
+    }
+
+    public void setVersion(byte version) {
+        this.version = version;
+        setLength(data.readableBytes() + getHeaderLength());
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public int getHeaderLength() {
+        return version == PROTOCOL_VERSION_0 ? HEADER_LENGTH : V1_HEADER_LENGTH;
+    }
+
     public Integer getResult() {
         return result;
     }
@@ -67,13 +121,17 @@ public class Message implements Serializable {
         this.result = result;
     }
 
-    public byte[] getData() {
+    public ByteBuf getData() {
         return data;
     }
 
-    public void setData(byte[] data) {
+    public void setData(ByteBuf data) {
         this.data = data;
-        setLength(data.length + HEADER_LENGTH);
+        setLength(data.readableBytes() + getHeaderLength());
+    }
+
+    public void setData(byte[] data) {
+        setData(Unpooled.wrappedBuffer(data));
     }
 
     @Override
@@ -83,13 +141,16 @@ public class Message implements Serializable {
                 + length
                 + ", type="
                 + type
-                + ", seq='"
+                + ", seq="
                 + seq
-                + '\''
+                + ", version="
+                + version
+                + ", compressed="
+                + compressed
                 + ", result="
                 + result
                 + ", data.length="
-                + data.length
+                + data.readableBytes()
                 + '}';
     }
 
@@ -105,4 +166,11 @@ public class Message implements Serializable {
         message.setData(content.getBytes());
         return message;
     }
+
+    public static Message builder(Short type, byte[] content) {
+        Message message = new Message();
+        message.setType(type);
+        message.setData(content);
+        return message;
+    }
 }
@@ -0,0 +1,149 @@
+package com.webank.wecross.network.p2p.netty.message.serialize;
+
+import com.webank.wecross.network.p2p.netty.ProtocolVersionProcessor;
+import com.webank.wecross.network.p2p.netty.message.proto.Message;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression of message data. Data above the threshold is compressed on connections
+ * whose peer announced it inflates, compressed frames are marked in the version 1 header.
+ *
+ * <p>compressed data => [uncompressed length(4 Byte)][deflate stream]
+ */
+public class MessageCompressor {
+    public static final byte COMPRESSION_DEFLATE = 1;
+
+    private static final int LENGTH_FIELD_LENGTH = 4;
+
+    private static final ThreadLocal<Deflater> deflaters =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> inflaters =
+            ThreadLocal.withInitial(() -> new Inflater());
+
+    /** data shorter than this is sent as it is, 0 disables compression */
+    private int threshold = 4096;
+
+    /** largest data accepted once inflated */
+    private int maxLength = 64 * 1024 * 1024;
+
+    /** Compress the data if the peer of ctx inflates it */
+    public void compress(ChannelHandlerContext ctx, Message message) {
+        if ((ProtocolVersionProcessor.getCompressions(ctx) & COMPRESSION_DEFLATE) != 0) {
+            compress(message);
+        }
+    }
+
+    /** Compress the data in place, kept as it is when compression does not pay off */
+    public void compress(Message message) {
+        ByteBuf data = message.getData();
+        int length = data.readableBytes();
+        if (threshold <= 0
+                || length < threshold
+                || message.isCompressed()
+                || message.getVersion() == Message.PROTOCOL_VERSION_0) {
+            return;
+        }
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (data.hasArray()) {
+            deflater.setInput(data.array(), data.arrayOffset() + data.readerIndex(), length);
+        } else {
+            deflater.setInput(ByteBufUtil.getBytes(data));
+        }
+        deflater.finish();
+
+        // give up once the output is no shorter than the input
+        byte[] output = new byte[length];
+        int outputLength = LENGTH_FIELD_LENGTH;
+        while (!deflater.finished() && outputLength < output.length) {
+            outputLength += deflater.deflate(output, outputLength, output.length - outputLength);
+        }
+        if (!deflater.finished()) {
+            return;
+        }
+
+        output[0] = (byte) (length >>> 24);
+        output[1] = (byte) (length >>> 16);
+        output[2] = (byte) (length >>> 8);
+        output[3] = (byte) length;
+
+        message.setData(Unpooled.wrappedBuffer(output, 0, outputLength));
+        message.setCompressed(true);
+    }
+
+    /** Inflate the data of a compressed message in place */
+    public void decompress(Message message) throws IOException {
+        if (!message.isCompressed()) {
+            return;
+        }
+
+        ByteBuf data = message.getData();
+        if (data.readableBytes() < LENGTH_FIELD_LENGTH) {
+            throw new IOException("Truncated compressed data");
+        }
+        int length = data.getInt(data.readerIndex());
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid uncompressed length: " + length);
+        }
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        int inputLength = data.readableBytes() - LENGTH_FIELD_LENGTH;
+        if (data.hasArray()) {
+            inflater.setInput(
+                    data.array(),
+                    data.arrayOffset() + data.readerIndex() + LENGTH_FIELD_LENGTH,
+                    inputLength);
+        } else {
+            inflater.setInput(
+                    ByteBufUtil.getBytes(
+                            data, data.readerIndex() + LENGTH_FIELD_LENGTH, inputLength));
+        }
+
+        // one spare byte tells data longer than announced
+        byte[] output = new byte[length + 1];
+        int outputLength = 0;
+        try {
+            while (!inflater.finished() && outputLength < output.length) {
+                int inflated =
+                        inflater.inflate(output, outputLength, output.length - outputLength);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                outputLength += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed data: " + e.getMessage(), e);
+        }
+        if (outputLength != length || !inflater.finished()) {
+            throw new IOException("Compressed data does not match its length: " + length);
+        }
+
+        message.setData(Unpooled.wrappedBuffer(output, 0, length));
+        message.setCompressed(false);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public void setMaxLength(int maxLength) {
+        this.maxLength = maxLength;
+    }
+}
@@ -2,44 +2,105 @@ package com.webank.wecross.network.p2p.netty.message.serialize;
 
 import com.webank.wecross.network.p2p.netty.message.proto.Message;
 import io.netty.buffer.ByteBuf;
-import java.io.UnsupportedEncodingException;
+import io.netty.buffer.ByteBufAllocator;
+import java.nio.charset.StandardCharsets;
 
 public class MessageSerializer {
 
-    private void readHeader(Message message, ByteBuf in) throws UnsupportedEncodingException {
+    /** @return type of the frame without its flags, -1 if too short, the frame is not consumed */
+    public static short peekType(ByteBuf in) {
+        if (in.readableBytes() < Message.LENGTH_FIELD_LENGTH + Message.TYPE_FIELD_LENGTH) {
+            return -1;
+        }
+
+        short type = in.getShort(in.readerIndex() + Message.LENGTH_FIELD_LENGTH);
+        if ((type & Message.V1_TYPE_FLAG) != 0) {
+            type = (short) (type & ~(Message.V1_TYPE_FLAG | Message.COMPRESSED_TYPE_FLAG));
+        }
+        return type;
+    }
+
+    private void readHeader(Message message, ByteBuf in) {
         Integer length = in.readInt();
-        Short type = in.readShort();
+        short type = in.readShort();
 
-        byte[] dst = new byte[32];
-        in.readBytes(dst);
-        String seq = new String(dst, "utf-8");
+        if ((type & Message.V1_TYPE_FLAG) != 0) {
+            message.setVersion(Message.PROTOCOL_VERSION_1);
+            message.setSeq(in.readLong());
+            message.setCompressed((type & Message.COMPRESSED_TYPE_FLAG) != 0);
+            type = (short) (type & ~(Message.V1_TYPE_FLAG | Message.COMPRESSED_TYPE_FLAG));
+        } else {
+            String seq =
+                    in.toString(
+                            in.readerIndex(),
+                            Message.SEQ_FIELD_LENGTH,
+                            StandardCharsets.ISO_8859_1);
+            in.skipBytes(Message.SEQ_FIELD_LENGTH);
+            message.setLegacySeq(seq);
+            message.setSeq(parseLegacySeq(seq));
+        }
 
         Integer result = in.readInt();
 
         message.setLength(length);
         message.setType(type);
-        message.setSeq(seq);
         message.setResult(result);
     }
 
+    /**
+     * Seqs sent in version 0 headers are zero padded hex, older routers send UUIDs. Read as
+     * ISO-8859-1 so that any 32 Bytes are echoed back unchanged.
+     */
+    private long parseLegacySeq(String seq) {
+        try {
+            return Long.parseUnsignedLong(seq.substring(Message.SEQ_FIELD_LENGTH - 16), 16);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private String formatLegacySeq(long seq) {
+        String hex = Long.toHexString(seq);
+        StringBuilder builder = new StringBuilder(Message.SEQ_FIELD_LENGTH);
+        for (int i = hex.length(); i < Message.SEQ_FIELD_LENGTH; ++i) {
+            builder.append('0');
+        }
+        return builder.append(hex).toString();
+    }
+
     private void readData(Message message, ByteBuf in) {
-        byte[] data = new byte[message.getLength() - Message.HEADER_LENGTH];
-        in.readBytes(data, 0, message.getLength() - Message.HEADER_LENGTH);
-        message.setData(data);
+        // not copied, the body shares the frame which is released once processed
+        message.setData(in.readSlice(message.getLength() - message.getHeaderLength()));
     }
 
     private void writeHeader(Message message, ByteBuf out) {
-        out.writeInt(Message.HEADER_LENGTH + message.getData().length);
-        out.writeShort(message.getType());
-        out.writeBytes(message.getSeq().getBytes(), 0, 32);
+        out.writeInt(message.getHeaderLength() + message.getData().readableBytes());
+        if (message.getVersion() == Message.PROTOCOL_VERSION_0) {
+            String seq = message.getLegacySeq();
+            if (seq == null) {
+                seq = formatLegacySeq(message.getSeq());
+            }
+
+            out.writeShort(message.getType());
+            out.writeBytes(
+                    seq.getBytes(StandardCharsets.ISO_8859_1), 0, Message.SEQ_FIELD_LENGTH);
+        } else {
+            int flags = Message.V1_TYPE_FLAG;
+            if (message.isCompressed()) {
+                flags |= Message.COMPRESSED_TYPE_FLAG;
+            }
+            out.writeShort(message.getType() | flags);
+            out.writeLong(message.getSeq());
+        }
         out.writeInt(message.getResult());
     }
 
     private void writeData(Message message, ByteBuf out) {
-        out.writeBytes(message.getData());
+        ByteBuf data = message.getData();
+        out.writeBytes(data, data.readerIndex(), data.readableBytes());
     }
 
-    public Message deserialize(ByteBuf byteBuf) throws UnsupportedEncodingException {
+    public Message deserialize(ByteBuf byteBuf) {
         Message message = new Message();
         readHeader(message, byteBuf);
         readData(message, byteBuf);
@@ -50,4 +111,12 @@ public class MessageSerializer {
         writeHeader(message, byteBuf);
         writeData(message, byteBuf);
     }
+
+    /** @return a buffer of exactly the frame size holding the serialized message */
+    public ByteBuf serialize(ByteBufAllocator allocator, Message message) {
+        int length = message.getHeaderLength() + message.getData().readableBytes();
+        ByteBuf byteBuf = allocator.buffer(length, length);
+        serialize(message, byteBuf);
+        return byteBuf;
+    }
 }
@@ -2,15 +2,15 @@ package com.webank.wecross.network.p2p.netty.request;
 
 public class Request {
     private Short type;
-    private String content;
+    private byte[] content;
     /** timeout, default 60s */
     private Integer timeout = 60 * 1000;
 
-    public String getContent() {
+    public byte[] getContent() {
         return content;
     }
 
-    public void setContent(String content) {
+    public void setContent(byte[] content) {
         this.content = content;
     }
 
@@ -1,12 +1,15 @@
 package com.webank.wecross.network.p2p.netty.response;
 
+import io.netty.buffer.ByteBuf;
+
 public class Response {
     private int errorCode;
     private String errorMessage;
-    private String content;
-    private String messageID;
+    /** slice of the received frame, only valid during onResponse */
+    private ByteBuf content;
+    private long messageID;
 
-    public static Response build(int errorCode, String errorMsg, String messageID, String content) {
+    public static Response build(int errorCode, String errorMsg, long messageID, ByteBuf content) {
 
         Response response = new Response();
         response.setErrorCode(errorCode);
@@ -33,19 +36,19 @@ public class Response {
         this.errorMessage = errorMessage;
     }
 
-    public String getContent() {
+    public ByteBuf getContent() {
         return content;
     }
 
-    public void setContent(String content) {
+    public void setContent(ByteBuf content) {
         this.content = content;
     }
 
-    public String getMessageID() {
+    public long getMessageID() {
         return messageID;
     }
 
-    public void setMessageID(String messageID) {
+    public void setMessageID(long messageID) {
         this.messageID = messageID;
     }
 
@@ -57,12 +60,10 @@ public class Response {
                 + ", errorMessage='"
                 + errorMessage
                 + '\''
-                + ", content='"
-                + content
-                + '\''
-                + ", messageID='"
+                + ", content.length="
+                + (content == null ? 0 : content.readableBytes())
+                + ", messageID="
                 + messageID
-                + '\''
                 + '}';
     }
 }
@@ -4,6 +4,8 @@ import com.webank.wecross.network.p2p.netty.SeqMapper;
 import com.webank.wecross.network.p2p.netty.message.proto.Message;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.Timeout;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,6 +17,7 @@ public abstract class ResponseCallBack {
     private Timeout timeout;
     private SeqMapper seqMapper;
     private ChannelHandlerContext ctx;
+    private AtomicReference<AtomicInteger> inFlight = new AtomicReference<>();
 
     public SeqMapper getSeqMapper() {
         return seqMapper;
@@ -32,6 +35,20 @@ public abstract class ResponseCallBack {
         this.ctx = ctx;
     }
 
+    /** Count the request in flight on its channel until it is answered or failed */
+    public void setInFlight(AtomicInteger inFlight) {
+        inFlight.incrementAndGet();
+        this.inFlight.set(inFlight);
+    }
+
+    /** Count the request out of its channel, only the first call counts */
+    public void releaseInFlight() {
+        AtomicInteger inFlight = this.inFlight.getAndSet(null);
+        if (inFlight != null) {
+            inFlight.decrementAndGet();
+        }
+    }
+
     public void cancelTimer() {
         if (getTimeout() != null) {
             getTimeout().cancel();
@@ -43,6 +60,15 @@ public abstract class ResponseCallBack {
 
     public abstract boolean needOnResponse();
 
+    /** No response in time, fail the request unless the response took it first */
+    public void onTimeout() {
+        if (getSeqMapper().getAndRemove(message.getSeq()) != this) {
+            return;
+        }
+
+        sendFailed(StatusCode.TIMEOUT, "timeout");
+    }
+
     public void sendFailed(int errorCode, String errorMsg) {
 
         logger.warn(
@@ -50,6 +76,7 @@ public abstract class ResponseCallBack {
                 errorCode,
                 errorMsg,
                 getMessage());
+        releaseInFlight();
         try {
             Response response = Response.build(errorCode, errorMsg, message.getSeq(), null);
             onResponse(response);
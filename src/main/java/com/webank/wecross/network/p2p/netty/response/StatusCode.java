@@ -4,4 +4,5 @@ public interface StatusCode {
     int SUCCESS = 0;
     int UNREACHABLE = 101;
     int TIMEOUT = 102;
+    int OVERLOAD = 103;
 }
@@ -1,5 +1,7 @@
 package com.webank.wecross.network.rpc.netty;
 
+import com.webank.wecross.network.NettyEventLoops;
+import com.webank.wecross.network.NettySsl;
 import com.webank.wecross.network.p2p.netty.factory.ThreadPoolTaskExecutorFactory;
 import com.webank.wecross.network.rpc.URIHandlerDispatcher;
 import com.webank.wecross.network.rpc.netty.handler.HttpServerHandler;
@@ -8,18 +10,13 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioChannelOption;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.ssl.ClientAuth;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslHandler;
-import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.timeout.IdleStateHandler;
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
@@ -41,6 +38,7 @@ public class RPCBootstrap {
     private ServerBootstrap serverBootstrap = new ServerBootstrap();
     private RPCConfig config;
     private URIHandlerDispatcher uriHandlerDispatcher;
+    private NettyEventLoops eventLoops;
 
     public RPCConfig getConfig() {
         return config;
@@ -58,6 +56,14 @@ public class RPCBootstrap {
         this.uriHandlerDispatcher = uriHandlerDispatcher;
     }
 
+    public NettyEventLoops getEventLoops() {
+        return eventLoops;
+    }
+
+    public void setEventLoops(NettyEventLoops eventLoops) {
+        this.eventLoops = eventLoops;
+    }
+
     /**
      * init SslContext for http server
      *
@@ -76,8 +82,8 @@ public class RPCBootstrap {
 
         SslContextBuilder sslContextBuilder =
                 SslContextBuilder.forServer(nodeCrt.getInputStream(), nodeKey.getInputStream())
-                        .trustManager(caCrt.getInputStream())
-                        .sslProvider(SslProvider.JDK);
+                        .trustManager(caCrt.getInputStream());
+        NettySsl.configure(sslContextBuilder, config.getSslProvider(), config.getCiphers());
 
         if (sslSwitch == RPCConfig.SSLSwitch.SSL_ON_CLIENT_AUTH.getSwh()) {
             logger.info(" clientAuth ");
@@ -105,8 +111,9 @@ public class RPCBootstrap {
      */
     private void startHttpServer() throws ExecutionException, InterruptedException, IOException {
 
-        EventLoopGroup bossGroup = new NioEventLoopGroup();
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+        if (eventLoops == null) {
+            eventLoops = new NettyEventLoops(false, 1, 0);
+        }
 
         /** Configure to use SSL, construct SslContext. */
         SslContext sslCtx =
@@ -123,10 +130,10 @@ public class RPCBootstrap {
                         config.getThreadNum(), config.getThreadQueueCapacity(), "http-callback");
 
         serverBootstrap
-                .group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .group(eventLoops.getBossGroup(), eventLoops.getWorkerGroup())
+                .channel(eventLoops.getServerChannelClass())
                 .option(ChannelOption.SO_BACKLOG, 1024)
-                .childOption(NioChannelOption.SO_REUSEADDR, true)
+                .childOption(ChannelOption.SO_REUSEADDR, true)
                 .childHandler(
                         new ChannelInitializer<SocketChannel>() {
                             @Override
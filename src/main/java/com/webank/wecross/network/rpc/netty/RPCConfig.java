@@ -1,5 +1,6 @@
 package com.webank.wecross.network.rpc.netty;
 
+import java.util.List;
 import org.springframework.core.io.Resource;
 
 public class RPCConfig {
@@ -33,6 +34,8 @@ public class RPCConfig {
 
     private Long threadNum;
     private Long threadQueueCapacity;
+    private String sslProvider;
+    private List<String> ciphers;
 
     public Resource getCaCert() {
         return caCert;
@@ -120,4 +123,20 @@ public class RPCConfig {
                 + threadQueueCapacity
                 + '}';
     }
+
+    public String getSslProvider() {
+        return sslProvider;
+    }
+
+    public void setSslProvider(String sslProvider) {
+        this.sslProvider = sslProvider;
+    }
+
+    public List<String> getCiphers() {
+        return ciphers;
+    }
+
+    public void setCiphers(List<String> ciphers) {
+        this.ciphers = ciphers;
+    }
 }
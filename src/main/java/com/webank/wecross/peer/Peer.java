@@ -1,17 +1,35 @@
 package com.webank.wecross.peer;
 
+import com.webank.wecross.network.p2p.codec.BinaryCodec;
 import com.webank.wecross.network.p2p.netty.common.Node;
+import com.webank.wecross.resource.balancer.ConnectionStats;
 import com.webank.wecross.zone.ChainInfo;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Peer {
     Node node;
     private int seq = 0;
+    // epoch of the seq, changes when the peer restarts
+    private long epoch = 0;
     private Map<String, ChainInfo> chainInfos = new HashMap<String, ChainInfo>();
     private long lastActiveTimestamp = System.currentTimeMillis();
 
+    // codec of messages sent to this peer, negotiated once per connection
+    private volatile String codec = BinaryCodec.JSON;
+    private AtomicBoolean codecNegotiated = new AtomicBoolean(false);
+
+    // false once the peer turned out to answer full peer info only
+    private volatile boolean peerInfoDeltaSupported = true;
+
+    // seq of this router last announced to the peer
+    private volatile int announcedSeq = 0;
+
+    // load of the peer, requests sent to it and its response time
+    private final ConnectionStats connectionStats = new ConnectionStats();
+
     public Peer(Node node) {
         this.node = node;
     }
@@ -37,6 +55,35 @@ public class Peer {
         this.chainInfos = chainInfos;
     }
 
+    public synchronized void setChainInfos(long epoch, int seq, Map<String, ChainInfo> chainInfos) {
+        this.epoch = epoch;
+        setChainInfos(seq, chainInfos);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public boolean isPeerInfoDeltaSupported() {
+        return peerInfoDeltaSupported;
+    }
+
+    public void setPeerInfoDeltaSupported(boolean peerInfoDeltaSupported) {
+        this.peerInfoDeltaSupported = peerInfoDeltaSupported;
+    }
+
+    public int getAnnouncedSeq() {
+        return announcedSeq;
+    }
+
+    public void setAnnouncedSeq(int announcedSeq) {
+        this.announcedSeq = announcedSeq;
+    }
+
+    public ConnectionStats getConnectionStats() {
+        return connectionStats;
+    }
+
     public void noteAlive() {
         this.lastActiveTimestamp = System.currentTimeMillis();
     }
@@ -49,6 +96,25 @@ public class Peer {
         return lastActiveTimestamp;
     }
 
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    /** @return true for the first caller only */
+    public boolean startCodecNegotiation() {
+        return codecNegotiated.compareAndSet(false, true);
+    }
+
+    /** The last connection to the peer is gone, negotiate again with whatever reconnects */
+    public void resetCodec() {
+        codec = BinaryCodec.JSON;
+        codecNegotiated.set(false);
+    }
+
     public Map<String, ChainInfo> getChainInfos() {
         return chainInfos;
     }
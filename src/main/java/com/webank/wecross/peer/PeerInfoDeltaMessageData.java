@@ -0,0 +1,58 @@
+package com.webank.wecross.peer;
+
+import com.webank.wecross.zone.ChainInfo;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chains of a peer changed since a seq. Asked with the epoch and seq last seen, answered with the
+ * chains changed or removed since then, or with all chains when those changes are not known any
+ * more.
+ */
+public class PeerInfoDeltaMessageData {
+    private long epoch;
+    private int seq;
+    private boolean full;
+    private Map<String, ChainInfo> chainInfos;
+    private List<String> removedChains;
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+    }
+
+    public int getSeq() {
+        return seq;
+    }
+
+    public void setSeq(int seq) {
+        this.seq = seq;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public void setFull(boolean full) {
+        this.full = full;
+    }
+
+    public Map<String, ChainInfo> getChainInfos() {
+        return chainInfos;
+    }
+
+    public void setChainInfos(Map<String, ChainInfo> chainInfos) {
+        this.chainInfos = chainInfos;
+    }
+
+    public List<String> getRemovedChains() {
+        return removedChains;
+    }
+
+    public void setRemovedChains(List<String> removedChains) {
+        this.removedChains = removedChains;
+    }
+}
@@ -0,0 +1,31 @@
+package com.webank.wecross.remote;
+
+public class BlockHeaderMessageData {
+    private String path;
+    private long blockNumber;
+    private byte[] blockHeader;
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public long getBlockNumber() {
+        return blockNumber;
+    }
+
+    public void setBlockNumber(long blockNumber) {
+        this.blockNumber = blockNumber;
+    }
+
+    public byte[] getBlockHeader() {
+        return blockHeader;
+    }
+
+    public void setBlockHeader(byte[] blockHeader) {
+        this.blockHeader = blockHeader;
+    }
+}
@@ -0,0 +1,271 @@
+package com.webank.wecross.remote;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.webank.wecross.common.NetworkQueryStatus;
+import com.webank.wecross.exception.WeCrossException;
+import com.webank.wecross.network.NetworkCallback;
+import com.webank.wecross.network.NetworkMessage;
+import com.webank.wecross.network.NetworkResponse;
+import com.webank.wecross.network.p2p.netty.common.Node;
+import com.webank.wecross.peer.Peer;
+import com.webank.wecross.peer.PeerManager;
+import com.webank.wecross.restserver.Versions;
+import com.webank.wecross.stub.BlockHeaderManager;
+import com.webank.wecross.stub.Path;
+import com.webank.wecross.stubmanager.MemoryBlockHeaderManager;
+import com.webank.wecross.zone.Chain;
+import com.webank.wecross.zone.ZoneManager;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pushes new block headers of local chains to the peers that subscribed them, instead of every
+ * peer polling every remote chain through RemoteConnection.
+ */
+public class BlockHeaderPushService {
+    private Logger logger = LoggerFactory.getLogger(BlockHeaderPushService.class);
+
+    public static final String SUBSCRIBE_METHOD = "subscribeBlockHeader";
+    public static final String PUSH_METHOD = "blockHeader";
+
+    private ZoneManager zoneManager;
+    private PeerManager peerManager;
+
+    /** local chain path -> subscribed peer -> listener */
+    private Map<String, Map<Node, BlockHeaderManager.BlockHeaderListener>> subscribers =
+            new HashMap<String, Map<Node, BlockHeaderManager.BlockHeaderListener>>();
+
+    /** remote chain path -> peers pushing to us */
+    private Map<String, Set<Peer>> pushingPeers = new HashMap<String, Set<Peer>>();
+
+    /** Ask the peer owning a remote chain to push its block headers */
+    public void subscribeRemoteChain(Peer peer, String chainPath, Chain chain) {
+        if (!(chain.getBlockHeaderManager() instanceof MemoryBlockHeaderManager)) {
+            return;
+        }
+        MemoryBlockHeaderManager blockHeaderManager =
+                (MemoryBlockHeaderManager) chain.getBlockHeaderManager();
+
+        BlockHeaderMessageData data = new BlockHeaderMessageData();
+        data.setPath(chainPath);
+
+        NetworkCallback<Object> callback =
+                new NetworkCallback<Object>() {
+                    @Override
+                    public void onResponse(
+                            int status, String message, NetworkResponse<Object> msg) {
+                        if (status != NetworkQueryStatus.SUCCESS) {
+                            // peers not supporting push keep being polled
+                            logger.info(
+                                    "Subscribe block header failed, peer: {}, chain: {}, msg: {}",
+                                    peer,
+                                    chainPath,
+                                    message);
+                            return;
+                        }
+
+                        synchronized (pushingPeers) {
+                            pushingPeers
+                                    .computeIfAbsent(chainPath, key -> new HashSet<Peer>())
+                                    .add(peer);
+                        }
+                        blockHeaderManager.setPushEnabled(true);
+                        if (logger.isDebugEnabled()) {
+                            logger.debug(
+                                    "Subscribe block header success, peer: {}, chain: {}",
+                                    peer,
+                                    chainPath);
+                        }
+                    }
+                };
+        callback.setTypeReference(new TypeReference<NetworkResponse<Object>>() {});
+
+        zoneManager
+                .getP2PService()
+                .asyncSendMessage(peer, newMessage(SUBSCRIBE_METHOD, data), callback);
+    }
+
+    /** The peer no longer serves the remote chain */
+    public void onRemotePeerRemoved(Peer peer, String chainPath, Chain chain) {
+        boolean empty;
+        synchronized (pushingPeers) {
+            Set<Peer> peers = pushingPeers.get(chainPath);
+            if (peers == null) {
+                return;
+            }
+
+            peers.remove(peer);
+            empty = peers.isEmpty();
+            if (empty) {
+                pushingPeers.remove(chainPath);
+            }
+        }
+
+        if (empty && chain.getBlockHeaderManager() instanceof MemoryBlockHeaderManager) {
+            ((MemoryBlockHeaderManager) chain.getBlockHeaderManager()).setPushEnabled(false);
+        }
+    }
+
+    /**
+     * @return false if the chain is not a remote chain subscribed from the peer, the peer should
+     *     stop pushing
+     */
+    public boolean onBlockHeader(Peer peer, BlockHeaderMessageData data) throws Exception {
+        // only peers we subscribed the chain from may push it
+        boolean subscribed;
+        synchronized (pushingPeers) {
+            Set<Peer> peers = pushingPeers.get(data.getPath());
+            subscribed = peer != null && peers != null && peers.contains(peer);
+        }
+        if (!subscribed) {
+            logger.warn(
+                    "Receive block header of {} from a peer not subscribed: {}",
+                    data.getPath(),
+                    peer);
+            return false;
+        }
+
+        Chain chain = zoneManager.getChain(Path.decode(data.getPath()));
+        if (chain == null
+                || chain.hasLocalConnection()
+                || !(chain.getBlockHeaderManager() instanceof MemoryBlockHeaderManager)) {
+            logger.warn(
+                    "Receive block header of unknown chain: {}, peer: {}", data.getPath(), peer);
+            return false;
+        }
+
+        ((MemoryBlockHeaderManager) chain.getBlockHeaderManager())
+                .onPushBlockHeader(null, data.getBlockHeader());
+        return true;
+    }
+
+    /** A peer subscribes block headers of a local chain */
+    public void onSubscribe(Peer peer, BlockHeaderMessageData data) throws Exception {
+        String chainPath = data.getPath();
+        Chain chain = zoneManager.getChain(Path.decode(chainPath));
+        if (chain == null || !chain.hasLocalConnection()) {
+            throw new WeCrossException(
+                    WeCrossException.ErrorCode.PATH_ERROR, "Local chain not found: " + chainPath);
+        }
+
+        BlockHeaderManager blockHeaderManager = chain.getBlockHeaderManager();
+        BlockHeaderManager.BlockHeaderListener listener =
+                new BlockHeaderManager.BlockHeaderListener() {
+                    @Override
+                    public void onBlockHeader(long blockNumber, byte[] blockHeader) {
+                        push(peer, chainPath, blockHeaderManager, this, blockNumber, blockHeader);
+                    }
+                };
+
+        // registered only once subscribed, a failure leaves no listener behind
+        blockHeaderManager.subscribe(-1, listener);
+
+        BlockHeaderManager.BlockHeaderListener old;
+        synchronized (subscribers) {
+            Map<Node, BlockHeaderManager.BlockHeaderListener> listeners =
+                    subscribers.get(chainPath);
+            if (listeners == null) {
+                listeners = new HashMap<Node, BlockHeaderManager.BlockHeaderListener>();
+                subscribers.put(chainPath, listeners);
+            }
+            old = listeners.put(peer.getNode(), listener);
+        }
+
+        if (old != null) {
+            blockHeaderManager.unsubscribe(old);
+        }
+
+        logger.info("Peer {} subscribed block headers of {}", peer, chainPath);
+    }
+
+    private void push(
+            Peer peer,
+            String chainPath,
+            BlockHeaderManager blockHeaderManager,
+            BlockHeaderManager.BlockHeaderListener listener,
+            long blockNumber,
+            byte[] blockHeader) {
+        if (peerManager.getPeerInfo(peer.getNode()) == null) {
+            unsubscribe(peer, chainPath, blockHeaderManager, listener);
+            return;
+        }
+
+        BlockHeaderMessageData data = new BlockHeaderMessageData();
+        data.setPath(chainPath);
+        data.setBlockNumber(blockNumber);
+        data.setBlockHeader(blockHeader);
+
+        NetworkCallback<Boolean> callback =
+                new NetworkCallback<Boolean>() {
+                    @Override
+                    public void onResponse(
+                            int status, String message, NetworkResponse<Boolean> msg) {
+                        // a failed push is covered by the polling of the peer, only stop pushing
+                        // when the peer says so
+                        if (status == NetworkQueryStatus.SUCCESS
+                                && msg != null
+                                && Boolean.FALSE.equals(msg.getData())) {
+                            unsubscribe(peer, chainPath, blockHeaderManager, listener);
+                        }
+                    }
+                };
+        callback.setTypeReference(new TypeReference<NetworkResponse<Boolean>>() {});
+
+        zoneManager.getP2PService().asyncSendMessage(peer, newMessage(PUSH_METHOD, data), callback);
+    }
+
+    private void unsubscribe(
+            Peer peer,
+            String chainPath,
+            BlockHeaderManager blockHeaderManager,
+            BlockHeaderManager.BlockHeaderListener listener) {
+        boolean registered;
+        synchronized (subscribers) {
+            Map<Node, BlockHeaderManager.BlockHeaderListener> listeners =
+                    subscribers.get(chainPath);
+            // not registered if replaced, or pushing before onSubscribe registers it
+            registered = listeners != null && listeners.get(peer.getNode()) == listener;
+            if (registered) {
+                listeners.remove(peer.getNode());
+                if (listeners.isEmpty()) {
+                    subscribers.remove(chainPath);
+                }
+            }
+        }
+
+        blockHeaderManager.unsubscribe(listener);
+        if (registered) {
+            logger.info("Peer {} unsubscribed block headers of {}", peer, chainPath);
+        }
+    }
+
+    private NetworkMessage<BlockHeaderMessageData> newMessage(
+            String method, BlockHeaderMessageData data) {
+        NetworkMessage<BlockHeaderMessageData> message = new NetworkMessage<>();
+        message.newSeq();
+        message.setVersion(Versions.currentVersion);
+        message.setMethod(method);
+        message.setData(data);
+        return message;
+    }
+
+    public ZoneManager getZoneManager() {
+        return zoneManager;
+    }
+
+    public void setZoneManager(ZoneManager zoneManager) {
+        this.zoneManager = zoneManager;
+    }
+
+    public PeerManager getPeerManager() {
+        return peerManager;
+    }
+
+    public void setPeerManager(PeerManager peerManager) {
+        this.peerManager = peerManager;
+    }
+}
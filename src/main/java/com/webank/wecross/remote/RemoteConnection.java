@@ -6,6 +6,7 @@ import com.webank.wecross.network.NetworkMessage;
 import com.webank.wecross.network.NetworkResponse;
 import com.webank.wecross.network.p2p.P2PService;
 import com.webank.wecross.peer.Peer;
+import com.webank.wecross.resource.balancer.ConnectionStats;
 import com.webank.wecross.restserver.Versions;
 import com.webank.wecross.stub.Connection;
 import com.webank.wecross.stub.Request;
@@ -24,6 +25,8 @@ public class RemoteConnection implements Connection {
 
     @Override
     public Response send(Request request) {
+        ConnectionStats stats = getStats();
+        long start = stats.start();
         try {
             NetworkMessage<Request> networkMessage = new NetworkMessage<Request>();
             networkMessage.setVersion(Versions.currentVersion);
@@ -45,12 +48,15 @@ public class RemoteConnection implements Connection {
             response.setErrorMessage(
                     "Send remote connection exception: " + e.getLocalizedMessage());
             return response;
+        } finally {
+            stats.end(start);
         }
     }
 
     @Override
     public void asyncSend(Request request, Connection.Callback callback) {
-
+        ConnectionStats stats = getStats();
+        long start = stats.start();
         try {
             NetworkMessage<Request> networkMessage = new NetworkMessage<Request>();
             networkMessage.setVersion(Versions.currentVersion);
@@ -71,6 +77,7 @@ public class RemoteConnection implements Connection {
                         @Override
                         public void onResponse(
                                 int status, String message, NetworkResponse<Response> msg) {
+                            stats.end(start);
                             if (status != 0) {
                                 Response response = new Response();
                                 response.setErrorCode(StubQueryStatus.REMOTE_QUERY_FAILED);
@@ -90,6 +97,7 @@ public class RemoteConnection implements Connection {
             p2PService.asyncSendMessage(peer, networkMessage, networkCallback);
 
         } catch (Exception e) {
+            stats.end(start);
 
             Response response = new Response();
             response.setErrorCode(StubQueryStatus.REMOTE_QUERY_FAILED);
@@ -118,6 +126,11 @@ public class RemoteConnection implements Connection {
         this.properties = properties;
     }
 
+    /** load of the peer, shared by all connections to it */
+    public ConnectionStats getStats() {
+        return peer.getConnectionStats();
+    }
+
     public Peer getPeer() {
         return peer;
     }
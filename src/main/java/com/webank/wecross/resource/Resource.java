@@ -1,6 +1,8 @@
 package com.webank.wecross.resource;
 
 import com.webank.wecross.peer.Peer;
+import com.webank.wecross.resource.balancer.ConnectionBalancer;
+import com.webank.wecross.resource.balancer.EwmaBalancer;
 import com.webank.wecross.stub.Account;
 import com.webank.wecross.stub.BlockHeaderManager;
 import com.webank.wecross.stub.Connection;
@@ -14,26 +16,31 @@ import com.webank.wecross.stub.TransactionContext;
 import com.webank.wecross.stub.TransactionException;
 import com.webank.wecross.stub.TransactionRequest;
 import com.webank.wecross.stub.TransactionResponse;
-import java.security.SecureRandom;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class Resource {
+    public interface ConnectionsChangeHandler {
+        void onConnectionsChange();
+    }
+
     private final Logger logger = LoggerFactory.getLogger(Response.class);
     private String stubType;
     private Driver driver;
     private Map<Peer, Connection> connections = new HashMap<>();
+    // connections to choose from, rebuilt when one is added or removed
+    private volatile Connection[] connectionArray = new Connection[0];
+    private ConnectionBalancer connectionBalancer = new EwmaBalancer();
+    private ConnectionsChangeHandler connectionsChangeHandler;
     private Path path;
     private ResourceInfo resourceInfo;
     private BlockHeaderManager blockHeaderManager;
     boolean hasLocalConnection = false;
     boolean isTemporary = false;
-    private final Random random = new SecureRandom();
 
     public static final String RAW_TRANSACTION = "RAW_TRANSACTION";
 
@@ -43,6 +50,7 @@ public class Resource {
 
     public void setConnection(Map<Peer, Connection> connections) {
         this.connections = connections;
+        onConnectionsChange();
     }
 
     public void addConnection(Peer peer, Connection connection) {
@@ -53,25 +61,52 @@ public class Resource {
             }
 
             connections.put(peer, connection);
+            onConnectionsChange();
         }
     }
 
     public void removeConnection(Peer peer) {
         if (!hasLocalConnection) {
             connections.remove(peer);
+            onConnectionsChange();
+        }
+    }
+
+    private void onConnectionsChange() {
+        if (connections == null) {
+            connectionArray = new Connection[0];
+        } else {
+            connectionArray = connections.values().toArray(new Connection[0]);
+        }
+
+        ConnectionsChangeHandler handler = connectionsChangeHandler;
+        if (handler != null) {
+            handler.onConnectionsChange();
         }
     }
 
+    public void setConnectionsChangeHandler(ConnectionsChangeHandler connectionsChangeHandler) {
+        this.connectionsChangeHandler = connectionsChangeHandler;
+    }
+
+    public ConnectionBalancer getConnectionBalancer() {
+        return connectionBalancer;
+    }
+
+    public void setConnectionBalancer(ConnectionBalancer connectionBalancer) {
+        this.connectionBalancer = connectionBalancer;
+    }
+
     public boolean isConnectionEmpty() {
         return connections.isEmpty();
     }
 
     public Connection chooseConnection() {
-        if (connections == null || connections.size() == 0) {
+        Connection[] connections = connectionArray;
+        if (connections.length == 0) {
             return null;
         } else {
-            int index = random.nextInt(connections.size());
-            return (Connection) connections.values().toArray()[index];
+            return connectionBalancer.choose(connections);
         }
     }
 
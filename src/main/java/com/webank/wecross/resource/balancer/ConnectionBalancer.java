@@ -0,0 +1,12 @@
+package com.webank.wecross.resource.balancer;
+
+import com.webank.wecross.stub.Connection;
+
+/** Chooses the connection a request of a resource or chain goes to */
+public interface ConnectionBalancer {
+    /**
+     * @param connections connections to choose from, not empty, not to be modified
+     * @return
+     */
+    Connection choose(Connection[] connections);
+}
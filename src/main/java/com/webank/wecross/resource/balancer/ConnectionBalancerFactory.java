@@ -0,0 +1,26 @@
+package com.webank.wecross.resource.balancer;
+
+public class ConnectionBalancerFactory {
+    public static final String RANDOM = "random";
+    public static final String LEAST_OUTSTANDING = "leastOutstanding";
+    public static final String EWMA = "ewma";
+
+    public static boolean isValidStrategy(String strategy) {
+        return RANDOM.equals(strategy)
+                || LEAST_OUTSTANDING.equals(strategy)
+                || EWMA.equals(strategy);
+    }
+
+    /** @param strategy random, leastOutstanding or ewma, ewma if unknown */
+    public static ConnectionBalancer build(String strategy) {
+        if (RANDOM.equals(strategy)) {
+            return new RandomConnectionBalancer();
+        }
+
+        if (LEAST_OUTSTANDING.equals(strategy)) {
+            return new LeastOutstandingBalancer();
+        }
+
+        return new EwmaBalancer();
+    }
+}
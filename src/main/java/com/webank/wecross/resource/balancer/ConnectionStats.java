@@ -0,0 +1,61 @@
+package com.webank.wecross.resource.balancer;
+
+import com.webank.wecross.remote.RemoteConnection;
+import com.webank.wecross.stub.Connection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load of a remote router, tracked over all connections to it: requests waiting for a response,
+ * and an exponentially weighted moving average of the response time. The average decays while no
+ * response comes in, so that a router once found slow is tried again later.
+ */
+public class ConnectionStats {
+    /** weight of a new response time in the average */
+    private static final double ALPHA = 0.3;
+    /** the average falls to 1/e after this long without a response, default 10 s */
+    private static final double DECAY_NANOS = 10_000_000_000.0;
+
+    private final AtomicInteger outstanding = new AtomicInteger(0);
+    // nanoseconds, 0 until the first response
+    private volatile double latency = 0;
+    private volatile long lastUpdate = System.nanoTime();
+
+    /** @return stats of the router behind the connection, null for a local connection */
+    public static ConnectionStats of(Connection connection) {
+        if (connection instanceof RemoteConnection) {
+            return ((RemoteConnection) connection).getStats();
+        }
+        return null;
+    }
+
+    /** @return start time of the request, to be passed to end() */
+    public long start() {
+        outstanding.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void end(long start) {
+        outstanding.decrementAndGet();
+        addLatency(System.nanoTime() - start);
+    }
+
+    public synchronized void addLatency(long nanos) {
+        long now = System.nanoTime();
+        double current = getLatency(now);
+        latency = current == 0 ? nanos : current + ALPHA * (nanos - current);
+        lastUpdate = now;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /** @return average response time in nanoseconds, decayed to now */
+    public double getLatency() {
+        return getLatency(System.nanoTime());
+    }
+
+    private double getLatency(long now) {
+        return latency * Math.exp(-(now - lastUpdate) / DECAY_NANOS);
+    }
+}
@@ -0,0 +1,13 @@
+package com.webank.wecross.resource.balancer;
+
+/**
+ * Prefers the router expected to answer first: its average response time, times the requests
+ * queued ahead. Routers not measured yet are tried first.
+ */
+public class EwmaBalancer extends PowerOfTwoChoicesBalancer {
+    @Override
+    protected double cost(ConnectionStats stats) {
+        // 1 ns added, so that requests waiting still count before the first response
+        return (stats.getLatency() + 1) * (stats.getOutstanding() + 1);
+    }
+}
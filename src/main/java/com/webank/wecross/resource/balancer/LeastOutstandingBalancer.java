@@ -0,0 +1,9 @@
+package com.webank.wecross.resource.balancer;
+
+/** Prefers the router with fewer requests waiting for a response */
+public class LeastOutstandingBalancer extends PowerOfTwoChoicesBalancer {
+    @Override
+    protected double cost(ConnectionStats stats) {
+        return stats.getOutstanding();
+    }
+}
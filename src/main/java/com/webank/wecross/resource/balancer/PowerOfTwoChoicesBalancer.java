@@ -0,0 +1,37 @@
+package com.webank.wecross.resource.balancer;
+
+import com.webank.wecross.stub.Connection;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks two connections at random and takes the one of less cost. Unlike always taking the least
+ * cost, load does not pile up on a single router between updates of the stats.
+ */
+public abstract class PowerOfTwoChoicesBalancer implements ConnectionBalancer {
+    @Override
+    public Connection choose(Connection[] connections) {
+        int size = connections.length;
+        if (size == 1) {
+            return connections[0];
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            ++second;
+        }
+
+        Connection a = connections[first];
+        Connection b = connections[second];
+        return cost(a) <= cost(b) ? a : b;
+    }
+
+    private double cost(Connection connection) {
+        ConnectionStats stats = ConnectionStats.of(connection);
+        // a local connection costs nothing
+        return stats == null ? 0 : cost(stats);
+    }
+
+    protected abstract double cost(ConnectionStats stats);
+}
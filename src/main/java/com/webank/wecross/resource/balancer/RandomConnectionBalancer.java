@@ -0,0 +1,15 @@
+package com.webank.wecross.resource.balancer;
+
+import com.webank.wecross.stub.Connection;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Every connection gets an equal share */
+public class RandomConnectionBalancer implements ConnectionBalancer {
+    @Override
+    public Connection choose(Connection[] connections) {
+        if (connections.length == 1) {
+            return connections[0];
+        }
+        return connections[ThreadLocalRandom.current().nextInt(connections.length)];
+    }
+}
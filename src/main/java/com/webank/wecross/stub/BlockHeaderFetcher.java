@@ -0,0 +1,58 @@
+package com.webank.wecross.stub;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Fetches a range of block headers one by one, for the default asyncGetBlockHeaders */
+final class BlockHeaderFetcher {
+    interface GetBlockHeader {
+        void get(long blockNumber, BlockHeaderManager.GetBlockHeaderCallback callback);
+    }
+
+    private BlockHeaderFetcher() {}
+
+    /** Calls getBlockHeader for each block in [from, to] concurrently */
+    static void fetch(
+            long from,
+            long to,
+            GetBlockHeader getBlockHeader,
+            BlockHeaderManager.GetBlockHeadersCallback callback) {
+        if (from < 0 || to < from || to - from >= BlockHeaderManager.MAX_BLOCK_HEADER_RANGE) {
+            callback.onResponse(
+                    new IllegalArgumentException(
+                            "Invalid block header range: [" + from + ", " + to + "]"),
+                    null);
+            return;
+        }
+
+        int size = (int) (to - from + 1);
+        byte[][] blockHeaders = new byte[size][];
+        AtomicInteger remaining = new AtomicInteger(size);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        for (int i = 0; i < size; ++i) {
+            int index = i;
+            getBlockHeader.get(
+                    from + i,
+                    (e, blockHeader) -> {
+                        if (e != null || blockHeader == null) {
+                            if (failed.compareAndSet(false, true)) {
+                                Exception error = e;
+                                if (error == null) {
+                                    error =
+                                            new Exception(
+                                                    "Block header not found: " + (from + index));
+                                }
+                                callback.onResponse(error, null);
+                            }
+                            return;
+                        }
+
+                        blockHeaders[index] = blockHeader;
+                        if (remaining.decrementAndGet() == 0 && !failed.get()) {
+                            callback.onResponse(null, Arrays.asList(blockHeaders));
+                        }
+                    });
+        }
+    }
+}
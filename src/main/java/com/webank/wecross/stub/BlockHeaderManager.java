@@ -1,5 +1,7 @@
 package com.webank.wecross.stub;
 
+import java.util.List;
+
 public interface BlockHeaderManager {
     public void start();
 
@@ -16,4 +18,55 @@ public interface BlockHeaderManager {
     }
 
     void asyncGetBlockHeader(long blockNumber, BlockHeaderManager.GetBlockHeaderCallback callback);
+
+    public interface GetDecodedBlockHeaderCallback {
+        /**
+         * blockHeader is the object returned by Driver.decodeBlockHeader, of the driver's own type.
+         * It and data are shared between callers and must not be modified.
+         */
+        void onResponse(Exception e, BlockHeader blockHeader, byte[] data);
+    }
+
+    /**
+     * Same as asyncGetBlockHeader, but returns the header decoded by the manager as well, so that
+     * drivers verifying transactions need not decode cached headers again
+     */
+    default void asyncGetDecodedBlockHeader(
+            long blockNumber, GetDecodedBlockHeaderCallback callback) {
+        callback.onResponse(
+                new UnsupportedOperationException(
+                        getClass().getName() + " does not keep decoded block headers"),
+                null,
+                null);
+    }
+
+    public interface GetBlockHeadersCallback {
+        /** blockHeaders.get(i) is the header of block from + i */
+        void onResponse(Exception e, List<byte[]> blockHeaders);
+    }
+
+    /** Longest range asyncGetBlockHeaders serves in one call */
+    public static final long MAX_BLOCK_HEADER_RANGE = 1000;
+
+    /**
+     * Get block headers in [from, to], served from cache where possible. Ranges longer than
+     * MAX_BLOCK_HEADER_RANGE are rejected with IllegalArgumentException.
+     */
+    default void asyncGetBlockHeaders(long from, long to, GetBlockHeadersCallback callback) {
+        BlockHeaderFetcher.fetch(from, to, this::asyncGetBlockHeader, callback);
+    }
+
+    public interface BlockHeaderListener {
+        void onBlockHeader(long blockNumber, byte[] blockHeader);
+    }
+
+    /**
+     * Deliver every block header from fromBlock on to the listener, exactly once and in order
+     *
+     * @param fromBlock first block to deliver, negative for the next new block
+     * @param listener
+     */
+    public void subscribe(long fromBlock, BlockHeaderListener listener);
+
+    public void unsubscribe(BlockHeaderListener listener);
 }
@@ -1,5 +1,7 @@
 package com.webank.wecross.stub;
 
+import java.util.List;
+
 public interface Driver {
     interface Callback {
         void onTransactionResponse(
@@ -115,6 +117,51 @@ public interface Driver {
         public void onResponse(Exception e, byte[] blockHeader);
     }
 
+    public interface GetBlockHeadersCallback {
+        /** blockHeaders.get(i) is the header of block from + i */
+        public void onResponse(Exception e, List<byte[]> blockHeaders);
+    }
+
+    /**
+     * Get block headers in [from, to], stubs that can batch on the wire should override it. The
+     * default implementation calls asyncGetBlockHeader for each block concurrently, and rejects
+     * ranges longer than BlockHeaderManager.MAX_BLOCK_HEADER_RANGE with IllegalArgumentException.
+     *
+     * @param from
+     * @param to
+     * @param connection
+     * @param callback
+     */
+    default void asyncGetBlockHeaders(
+            long from, long to, Connection connection, GetBlockHeadersCallback callback) {
+        BlockHeaderFetcher.fetch(
+                from,
+                to,
+                (blockNumber, getBlockHeaderCallback) ->
+                        asyncGetBlockHeader(
+                                blockNumber, connection, getBlockHeaderCallback::onResponse),
+                callback::onResponse);
+    }
+
+    /**
+     * Subscribe new block headers, for chains that push new blocks natively
+     *
+     * @param connection
+     * @param callback called with each new block header
+     * @return false if not supported, the block header manager keeps polling
+     */
+    default boolean subscribeBlockHeader(Connection connection, GetBlockHeaderCallback callback) {
+        return false;
+    }
+
+    /**
+     * Cancel a subscription made by subscribeBlockHeader
+     *
+     * @param connection
+     * @param callback the callback it was made with
+     */
+    default void unsubscribeBlockHeader(Connection connection, GetBlockHeaderCallback callback) {}
+
     /**
      * Get verified transaction info of the Chain
      *
@@ -0,0 +1,137 @@
+package com.webank.wecross.stubmanager;
+
+import com.webank.wecross.stub.BlockHeaderManager.BlockHeaderListener;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers new block headers to one listener in order.
+ *
+ * <p>Headers are queued by the manager and drained by at most one task at a time. Headers missing
+ * from the queue, because the subscription starts from an old block or the queue overflowed, are
+ * backfilled through asyncGetBlockHeader.
+ */
+class BlockHeaderSubscription {
+    private Logger logger = LoggerFactory.getLogger(BlockHeaderSubscription.class);
+
+    private MemoryBlockHeaderManager manager;
+    private BlockHeaderListener listener;
+    private ArrayBlockingQueue<MemoryBlockHeaderManager.BlockHeaderData> queue;
+    private AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile boolean cancelled = false;
+
+    /** only accessed by the draining task, negative for the first header queued */
+    private long nextBlockNumber;
+
+    BlockHeaderSubscription(
+            MemoryBlockHeaderManager manager,
+            BlockHeaderListener listener,
+            long fromBlock,
+            int maxQueueSize) {
+        this.manager = manager;
+        this.listener = listener;
+        this.nextBlockNumber = fromBlock;
+        this.queue = new ArrayBlockingQueue<MemoryBlockHeaderManager.BlockHeaderData>(maxQueueSize);
+    }
+
+    /** Called under the write lock of the manager, in block number order */
+    void offer(MemoryBlockHeaderManager.BlockHeaderData blockHeaderData) {
+        if (!queue.offer(blockHeaderData)) {
+            // the listener falls behind, the dropped headers will be backfilled
+            logger.warn("Block header subscriber queue overflow, listener: {}", listener);
+            queue.clear();
+            queue.offer(blockHeaderData);
+        }
+    }
+
+    void schedule() {
+        if (!cancelled && scheduled.compareAndSet(false, true)) {
+            manager.getThreadPool().execute(this::drain);
+        }
+    }
+
+    void cancel() {
+        cancelled = true;
+        queue.clear();
+    }
+
+    private void drain() {
+        while (true) {
+            if (cancelled || !manager.isRunning()) {
+                scheduled.set(false);
+                return;
+            }
+
+            MemoryBlockHeaderManager.BlockHeaderData head = queue.peek();
+            if (head != null) {
+                long blockNumber = head.getBlockHeader().getNumber();
+                if (nextBlockNumber < 0) {
+                    nextBlockNumber = blockNumber;
+                }
+
+                if (blockNumber < nextBlockNumber) {
+                    queue.poll();
+                    continue;
+                }
+
+                if (blockNumber == nextBlockNumber) {
+                    queue.poll();
+                    deliver(blockNumber, head.getData());
+                    continue;
+                }
+            }
+
+            if (head != null
+                    || (nextBlockNumber >= 0
+                            && nextBlockNumber <= manager.getCachedBlockNumber())) {
+                // keep scheduled, draining goes on in the callback
+                backfill();
+                return;
+            }
+
+            scheduled.set(false);
+            if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void backfill() {
+        long blockNumber = nextBlockNumber;
+        manager.asyncGetBlockHeader(
+                blockNumber,
+                (e, data) -> {
+                    if (e != null || data == null) {
+                        logger.warn("Backfill block header {} failed: {}", blockNumber, e);
+                        manager.getTimer()
+                                .newTimeout(
+                                        (timeout) -> {
+                                            manager.getThreadPool().execute(this::drain);
+                                        },
+                                        manager.getGetBlockNumberDelay(),
+                                        TimeUnit.MILLISECONDS);
+                        return;
+                    }
+
+                    if (cancelled || !manager.isRunning()) {
+                        scheduled.set(false);
+                        return;
+                    }
+
+                    deliver(blockNumber, data);
+                    manager.getThreadPool().execute(this::drain);
+                });
+    }
+
+    private void deliver(long blockNumber, byte[] data) {
+        nextBlockNumber = blockNumber + 1;
+        try {
+            listener.onBlockHeader(blockNumber, data);
+        } catch (Exception e) {
+            logger.warn("Block header listener exception: ", e);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.webank.wecross.stubmanager;
+
+import io.netty.util.internal.PlatformDependent;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only block header store on memory-mapped segment files.
+ *
+ * <p>A segment is named by its first block number and holds block headers of ascending numbers as
+ * records of [blockNumber(8 Byte)][length(4 Byte)][data], a gap between numbers does not end it, a
+ * new segment is only started once it is full. The offset index of each segment is rebuilt by
+ * scanning on open, so a half written record at the tail is simply dropped. Once more than
+ * maxSegments segments exist the oldest one is unmapped and deleted.
+ */
+public class MappedBlockHeaderStore {
+    private Logger logger = LoggerFactory.getLogger(MappedBlockHeaderStore.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKSUM_FILE = "checksum";
+    private static final int RECORD_HEADER_LENGTH = 12;
+
+    private File dir;
+    private String checksum;
+    private int segmentSize;
+    private int maxSegments;
+    private TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+    private ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static class Segment {
+        private File file;
+        private long firstBlockNumber;
+        private MappedByteBuffer buffer;
+        private long[] blockNumbers = new long[256];
+        private int[] offsets = new int[256];
+        private int count = 0;
+        private int writePosition = 0;
+
+        private long getLastBlockNumber() {
+            return blockNumbers[count - 1];
+        }
+
+        /** @return offset of the record, -1 if the block header is not in this segment */
+        private int getOffset(long blockNumber) {
+            // contiguous headers are found directly, binary search only over gaps
+            long index = blockNumber - firstBlockNumber;
+            if (index >= 0 && index < count && blockNumbers[(int) index] == blockNumber) {
+                return offsets[(int) index];
+            }
+
+            int found = Arrays.binarySearch(blockNumbers, 0, count, blockNumber);
+            return found < 0 ? -1 : offsets[found];
+        }
+
+        private void addRecord(long blockNumber, int offset) {
+            if (count == offsets.length) {
+                blockNumbers = Arrays.copyOf(blockNumbers, blockNumbers.length * 2);
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            blockNumbers[count] = blockNumber;
+            offsets[count] = offset;
+            ++count;
+        }
+    }
+
+    public MappedBlockHeaderStore(File dir, String checksum, int segmentSize, int maxSegments)
+            throws IOException {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("segmentSize must be positive: " + segmentSize);
+        }
+        if (maxSegments <= 0) {
+            throw new IllegalArgumentException("maxSegments must be positive: " + maxSegments);
+        }
+
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+
+        open(checksum);
+    }
+
+    public void append(long blockNumber, byte[] data) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Map.Entry<Long, Segment> lastEntry = segments.lastEntry();
+            Segment segment = lastEntry == null ? null : lastEntry.getValue();
+            if (segment != null && blockNumber <= segment.getLastBlockNumber()) {
+                // append only, headers already stored are immutable
+                return;
+            }
+
+            int recordLength = RECORD_HEADER_LENGTH + data.length;
+            if (segment == null
+                    || segment.writePosition + recordLength > segment.buffer.capacity()) {
+                segment = newSegment(blockNumber, recordLength);
+            }
+
+            int offset = segment.writePosition;
+            ByteBuffer buffer = segment.buffer.duplicate();
+            ((Buffer) buffer).position(offset + RECORD_HEADER_LENGTH);
+            buffer.put(data);
+            segment.buffer.putLong(offset, blockNumber);
+            // length is written last, a record without it is ignored on open
+            segment.buffer.putInt(offset + 8, data.length);
+
+            segment.addRecord(blockNumber, offset);
+            segment.writePosition = offset + recordLength;
+
+            while (segments.size() > maxSegments) {
+                Segment oldest = segments.pollFirstEntry().getValue();
+                logger.info("Remove expired block header segment: {}", oldest.file);
+                deleteSegment(oldest);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public byte[] get(long blockNumber) {
+        lock.readLock().lock();
+        try {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(blockNumber);
+            if (entry == null) {
+                return null;
+            }
+
+            Segment segment = entry.getValue();
+            int offset = segment.getOffset(blockNumber);
+            if (offset < 0) {
+                return null;
+            }
+
+            byte[] data = new byte[segment.buffer.getInt(offset + 8)];
+            ByteBuffer buffer = segment.buffer.duplicate();
+            ((Buffer) buffer).position(offset + RECORD_HEADER_LENGTH);
+            buffer.get(data);
+            return data;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.readLock().lock();
+        try {
+            return segments.isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getFirstBlockNumber() {
+        lock.readLock().lock();
+        try {
+            return segments.isEmpty() ? -1 : segments.firstKey();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getLastBlockNumber() {
+        lock.readLock().lock();
+        try {
+            return segments.isEmpty() ? -1 : segments.lastEntry().getValue().getLastBlockNumber();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Drop all stored block headers if they were stored under another checksum, e.g. one found
+     * stale by the background revalidation
+     *
+     * @return true if the store has been reset
+     */
+    public boolean reset(String checksum) throws IOException {
+        if (checksum == null) {
+            checksum = "";
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (checksum.equals(this.checksum)) {
+                return false;
+            }
+
+            logger.warn("Chain checksum changed, drop block header store: {}", dir);
+            while (!segments.isEmpty()) {
+                deleteSegment(segments.pollFirstEntry().getValue());
+            }
+            writeChecksum(checksum);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void flush() {
+        lock.readLock().lock();
+        try {
+            if (!segments.isEmpty()) {
+                segments.lastEntry().getValue().buffer.force();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void open(String checksum) throws IOException {
+        if (checksum == null) {
+            checksum = "";
+        }
+
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Create block header store failed: " + dir);
+        }
+
+        // headers of another chain, or of a chain that has been rebuilt, must not be served
+        File checksumFile = new File(dir, CHECKSUM_FILE);
+        if (checksumFile.exists()) {
+            String stored =
+                    new String(Files.readAllBytes(checksumFile.toPath()), StandardCharsets.UTF_8);
+            if (!stored.equals(checksum)) {
+                logger.warn("Chain checksum changed, drop block header store: {}", dir);
+                for (File file : listSegmentFiles()) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+        }
+        writeChecksum(checksum);
+
+        for (File file : listSegmentFiles()) {
+            String name = file.getName();
+            long firstBlockNumber;
+            try {
+                firstBlockNumber =
+                        Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignore unknown file in block header store: {}", file);
+                continue;
+            }
+
+            Segment segment = mapSegment(file, firstBlockNumber, (int) file.length());
+            scanSegment(segment);
+            if (segment.count == 0) {
+                deleteSegment(segment);
+                continue;
+            }
+
+            segments.put(firstBlockNumber, segment);
+        }
+
+        while (segments.size() > maxSegments) {
+            deleteSegment(segments.pollFirstEntry().getValue());
+        }
+
+        if (!segments.isEmpty()) {
+            logger.info(
+                    "Block header store opened: {}, blocks: {} - {}",
+                    dir,
+                    getFirstBlockNumber(),
+                    getLastBlockNumber());
+        }
+    }
+
+    private void scanSegment(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + RECORD_HEADER_LENGTH <= buffer.capacity()) {
+            long blockNumber = buffer.getLong(position);
+            int length = buffer.getInt(position + 8);
+            if (length <= 0
+                    || length > buffer.capacity() - position - RECORD_HEADER_LENGTH
+                    || (segment.count == 0
+                            ? blockNumber != segment.firstBlockNumber
+                            : blockNumber <= segment.getLastBlockNumber())) {
+                break;
+            }
+
+            segment.addRecord(blockNumber, position);
+            position += RECORD_HEADER_LENGTH + length;
+        }
+        segment.writePosition = position;
+    }
+
+    private Segment newSegment(long firstBlockNumber, int recordLength) throws IOException {
+        File file = new File(dir, String.format("%020d", firstBlockNumber) + SEGMENT_SUFFIX);
+        Segment segment = mapSegment(file, firstBlockNumber, Math.max(segmentSize, recordLength));
+        segments.put(firstBlockNumber, segment);
+        return segment;
+    }
+
+    /** Readers copy out under the read lock, so the mapping is unused once removed */
+    private void deleteSegment(Segment segment) throws IOException {
+        unmap(segment.buffer);
+        segment.buffer = null;
+        Files.deleteIfExists(segment.file.toPath());
+    }
+
+    /**
+     * Releases the mapping at once where netty knows how to, otherwise it is left for GC to reclaim
+     * after the last reference is dropped
+     */
+    private void unmap(MappedByteBuffer buffer) {
+        if (!PlatformDependent.hasUnsafe()) {
+            return;
+        }
+
+        try {
+            PlatformDependent.freeDirectBuffer(buffer);
+        } catch (Throwable e) {
+            logger.warn("Unmap block header segment failed, leave it to GC", e);
+        }
+    }
+
+    private void writeChecksum(String checksum) throws IOException {
+        Files.write(
+                new File(dir, CHECKSUM_FILE).toPath(), checksum.getBytes(StandardCharsets.UTF_8));
+        this.checksum = checksum;
+    }
+
+    private Segment mapSegment(File file, long firstBlockNumber, int size) throws IOException {
+        Segment segment = new Segment();
+        segment.file = file;
+        segment.firstBlockNumber = firstBlockNumber;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+                FileChannel channel = randomAccessFile.getChannel()) {
+            // the mapping stays valid after the channel is closed
+            segment.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        return segment;
+    }
+
+    private File[] listSegmentFiles() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+
+        Arrays.sort(files);
+        return files;
+    }
+}
@@ -1,6 +1,7 @@
 package com.webank.wecross.stubmanager;
 
 import com.webank.wecross.exception.WeCrossException;
+import com.webank.wecross.peer.Peer;
 import com.webank.wecross.stub.BlockHeader;
 import com.webank.wecross.stub.BlockHeaderManager;
 import com.webank.wecross.stub.Connection;
@@ -8,15 +9,20 @@ import com.webank.wecross.stub.Driver;
 import com.webank.wecross.zone.Chain;
 import io.netty.util.Timeout;
 import io.netty.util.Timer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -26,15 +32,82 @@ public class MemoryBlockHeaderManager implements BlockHeaderManager {
     private ThreadPoolTaskExecutor threadPool;
     private Map<Long, List<GetBlockHeaderCallback>> getBlockHaderCallbacks =
             new HashMap<Long, List<GetBlockHeaderCallback>>();
-    private LinkedList<BlockHeaderData> blockHeaderCache = new LinkedList<BlockHeaderData>();
     private Chain chain;
     private AtomicBoolean running = new AtomicBoolean(false);
     private Timer timer;
     private Timeout timeout;
-    private ReadWriteLock lock = new ReentrantReadWriteLock();
+    private StampedLock lock = new StampedLock();
     private long getBlockNumberDelay = 1000;
     private int maxCacheSize = 20;
 
+    /** ring buffer of the latest block headers, indexed by blockNumber % maxCacheSize */
+    private BlockHeaderData[] blockHeaderCache = new BlockHeaderData[maxCacheSize];
+    /** number of valid headers in blockHeaderCache, they are contiguous and end at latest */
+    private int cacheSize = 0;
+
+    private long latestBlockNumber = 0;
+
+    private Map<BlockHeaderListener, BlockHeaderSubscription> subscriptions =
+            new HashMap<BlockHeaderListener, BlockHeaderSubscription>();
+    private int maxSubscriberQueueSize = 1000;
+    private volatile boolean pushEnabled = false;
+    /** connection the driver pushes new block headers over, null if it does not */
+    private Connection pushConnection;
+
+    private final Driver.GetBlockHeaderCallback pushCallback =
+            (e, data) -> {
+                onPushBlockHeader(e, data);
+            };
+
+    private static final double BLOCK_INTERVAL_ALPHA = 0.2;
+    private long minPollDelay = 100;
+    private long maxPollDelay = 5000;
+    private volatile double blockInterval = 0;
+    private long lastObservedBlockNumber = 0;
+    private long lastObservedTime = 0;
+    private volatile int idlePolls = 0;
+    private AtomicLong pollCount = new AtomicLong(0);
+    private AtomicLong pollHitCount = new AtomicLong(0);
+
+    private static final int MAX_CATCH_UP_ATTEMPTS = 3;
+    private static final long CATCH_UP_LOG_INTERVAL = 10000;
+    private int syncWindow = 8;
+    private int syncBatchSize = 4;
+    private long syncBatchTimeout = 10000;
+    /** blocks caught up at most, further behind the tip is synced like a cold start */
+    private long maxCatchUpBlocks = 1000;
+    private SyncState syncState = new SyncState();
+    private volatile double catchUpRate = 0;
+
+    /** Progress of the running catch up, guarded by itself */
+    private static class SyncState {
+        private long batch = 0;
+        private List<Connection> connections;
+        private long from;
+        private long nextToFetch;
+        private long nextToInsert;
+        private long target;
+        private int inFlight;
+        private boolean failed;
+        private long startTime;
+        private long lastLogTime;
+        private Map<Long, byte[]> pending = new HashMap<Long, byte[]>();
+        /** deadlines of the ranges in flight, by their first block number */
+        private Map<Long, Timeout> deadlines = new HashMap<Long, Timeout>();
+        /** timed out ranges to be fetched again, as [from, to, attempt] */
+        private LinkedList<long[]> retries = new LinkedList<long[]>();
+
+        /** Must hold the lock of the state */
+        private void reset() {
+            for (Timeout deadline : deadlines.values()) {
+                deadline.cancel();
+            }
+            deadlines.clear();
+            retries.clear();
+            pending.clear();
+        }
+    }
+
     public class BlockHeaderData {
         private BlockHeader blockHeader;
         private byte[] data;
@@ -62,18 +135,28 @@ public class MemoryBlockHeaderManager implements BlockHeaderManager {
     }
 
     public void onGetBlockNumber(Exception e, long blockNumber) {
-        lock.readLock().lock();
-        long current = 0;
-        try {
-            if (!blockHeaderCache.isEmpty()) {
-                current = blockHeaderCache.peekLast().getBlockHeader().getNumber();
-            }
-        } finally {
-            lock.readLock().unlock();
+        if (Objects.nonNull(e)) {
+            logger.warn("On block number exception: ", e);
+            waitAndSyncBlock(getGetBlockNumberDelay());
+            return;
         }
 
+        long current = getCachedBlockNumber();
+        pollCount.incrementAndGet();
+
         if (current < blockNumber) {
-            if (current == 0) {
+            pollHitCount.incrementAndGet();
+            idlePolls = 0;
+            observeBlockNumber(blockNumber);
+
+            // far behind, e.g. after a long downtime, the headers skipped are fetched on demand
+            if (current == 0 || blockNumber - current > maxCatchUpBlocks) {
+                if (current != 0) {
+                    logger.info(
+                            "{} blocks behind the tip of {}, sync from the tip",
+                            blockNumber - current,
+                            chain.getName());
+                }
                 chain.getDriver()
                         .asyncGetBlockHeader(
                                 blockNumber,
@@ -82,16 +165,94 @@ public class MemoryBlockHeaderManager implements BlockHeaderManager {
                                     onSyncBlockHeader(error, data, blockNumber);
                                 });
             } else {
-                chain.getDriver()
-                        .asyncGetBlockHeader(
-                                current + 1,
-                                chain.chooseConnection(),
-                                (error, data) -> {
-                                    onSyncBlockHeader(error, data, blockNumber);
-                                });
+                startCatchUp(current + 1, blockNumber);
             }
         } else {
-            waitAndSyncBlock(getGetBlockNumberDelay());
+            idlePolls++;
+            waitAndSyncBlock(nextPollDelay());
+        }
+    }
+
+    public void onPushBlockHeader(Exception e, byte[] data) {
+        if (Objects.nonNull(e) || data == null || !running.get()) {
+            if (Objects.nonNull(e)) {
+                logger.warn("On push block header exception: ", e);
+            }
+            return;
+        }
+
+        BlockHeader blockHeader = chain.getDriver().decodeBlockHeader(data);
+        if (blockHeader == null) {
+            logger.warn("Invalid pushed block header, chain: {}", chain.getName());
+            return;
+        }
+
+        long current = getCachedBlockNumber();
+        if (current != 0 && blockHeader.getNumber() == current + 1) {
+            insertBlockHeader(blockHeader, data);
+        } else if (blockHeader.getNumber() > current) {
+            // missed some blocks, let the sync catch up
+            syncNow();
+        }
+    }
+
+    /** Update the block interval estimate, only called by the polling task */
+    private void observeBlockNumber(long blockNumber) {
+        long now = System.currentTimeMillis();
+        if (lastObservedBlockNumber > 0 && blockNumber > lastObservedBlockNumber) {
+            // the raw interval is kept, only the poll delay derived from it is clamped
+            double sample =
+                    (double) (now - lastObservedTime) / (blockNumber - lastObservedBlockNumber);
+            blockInterval =
+                    blockInterval == 0
+                            ? sample
+                            : blockInterval * (1 - BLOCK_INTERVAL_ALPHA)
+                                    + sample * BLOCK_INTERVAL_ALPHA;
+        }
+
+        lastObservedBlockNumber = blockNumber;
+        lastObservedTime = now;
+    }
+
+    /**
+     * Poll just after the next block is expected, or back off with jitter while the chain is idle
+     * or the block interval is unknown.
+     */
+    private long nextPollDelay() {
+        if (pushEnabled) {
+            // polling is only a safety net when the driver pushes new blocks
+            return getGetBlockNumberDelay() * 10;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double interval = blockInterval;
+        long base = getGetBlockNumberDelay();
+        if (interval > 0) {
+            long untilNextBlock = lastObservedTime + (long) interval - System.currentTimeMillis();
+            if (untilNextBlock > 0) {
+                long margin = (long) (interval * 0.1 * (1 + random.nextDouble()));
+                return Math.min(Math.max(untilNextBlock + margin, minPollDelay), maxPollDelay);
+            }
+
+            base = (long) (interval / 4);
+        }
+
+        long backoff = Math.max(base, minPollDelay) << Math.min(idlePolls, 10);
+        backoff = Math.min(backoff, maxPollDelay);
+        return Math.max(backoff / 2 + random.nextLong(backoff / 2 + 1), minPollDelay);
+    }
+
+    private void syncNow() {
+        Timeout current = timeout;
+        if (current != null && current.cancel()) {
+            threadPool.execute(
+                    () -> {
+                        try {
+                            current.task().run(current);
+                        } catch (Exception e) {
+                            logger.error("Unexcept exception", e);
+                        }
+                    });
         }
     }
 
@@ -103,48 +264,316 @@ public class MemoryBlockHeaderManager implements BlockHeaderManager {
         }
 
         BlockHeader blockHeader = chain.getDriver().decodeBlockHeader(data);
+        insertBlockHeader(blockHeader, data);
 
-        lock.writeLock().lock();
+        if (blockHeader.getNumber() < target) {
+            startCatchUp(blockHeader.getNumber() + 1, target);
+        } else {
+            waitAndSyncBlock(nextPollDelay());
+        }
+    }
 
+    /** @return false if the block header has already been inserted */
+    private boolean insertBlockHeader(BlockHeader blockHeader, byte[] data) {
+        List<GetBlockHeaderCallback> callbacks;
+        List<BlockHeaderSubscription> notifySubscriptions;
+        Map<Long, List<GetBlockHeaderCallback>> skippedCallbacks = null;
+        long stamp = lock.writeLock();
         try {
+            if (cacheSize != 0 && blockHeader.getNumber() <= latestBlockNumber) {
+                return false;
+            }
 
-            blockHeaderCache.add(new BlockHeaderData(blockHeader, data));
-            List<GetBlockHeaderCallback> callbacks =
-                    getBlockHaderCallbacks.get(blockHeader.getNumber());
-            if (callbacks != null) {
-                for (GetBlockHeaderCallback callback : callbacks) {
-                    threadPool.execute(
-                            new Runnable() {
-                                @Override
-                                public void run() {
-                                    callback.onResponse(null, data);
-                                }
-                            });
+            if (cacheSize != 0 && blockHeader.getNumber() != latestBlockNumber + 1) {
+                // jumped to the tip, blocks waited for in between will never be inserted
+                skippedCallbacks = removeCallbacksBelow(blockHeader.getNumber());
+            }
+
+            // the object decoded by the driver is shared as is, it keeps its own type and fields
+            BlockHeaderData blockHeaderData = new BlockHeaderData(blockHeader, data);
+            addToCache(blockHeaderData);
+            callbacks = getBlockHaderCallbacks.remove(blockHeader.getNumber());
+
+            // offered under the lock so that every subscriber sees headers in order
+            notifySubscriptions = new ArrayList<BlockHeaderSubscription>(subscriptions.values());
+            for (BlockHeaderSubscription subscription : notifySubscriptions) {
+                subscription.offer(blockHeaderData);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        for (BlockHeaderSubscription subscription : notifySubscriptions) {
+            subscription.schedule();
+        }
+
+        onBlockHeaderSynced(blockHeader, data);
+
+        if (callbacks != null) {
+            for (GetBlockHeaderCallback callback : callbacks) {
+                threadPool.execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onResponse(null, data);
+                            }
+                        });
+            }
+        }
+
+        if (skippedCallbacks != null) {
+            for (Map.Entry<Long, List<GetBlockHeaderCallback>> entry :
+                    skippedCallbacks.entrySet()) {
+                for (GetBlockHeaderCallback callback : entry.getValue()) {
+                    fetchBlockHeader(entry.getKey(), callback);
                 }
             }
-            getBlockHaderCallbacks.remove(blockHeader.getNumber());
+        }
+
+        return true;
+    }
 
-            if (blockHeaderCache.size() > maxCacheSize) {
-                blockHeaderCache.pop();
+    /** Must hold the write lock */
+    private Map<Long, List<GetBlockHeaderCallback>> removeCallbacksBelow(long blockNumber) {
+        Map<Long, List<GetBlockHeaderCallback>> removed =
+                new HashMap<Long, List<GetBlockHeaderCallback>>();
+        Iterator<Map.Entry<Long, List<GetBlockHeaderCallback>>> iterator =
+                getBlockHaderCallbacks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, List<GetBlockHeaderCallback>> entry = iterator.next();
+            if (entry.getKey() < blockNumber) {
+                removed.put(entry.getKey(), entry.getValue());
+                iterator.remove();
             }
+        }
+        return removed;
+    }
 
-        } finally {
-            lock.writeLock().unlock();
+    /**
+     * Fetch block headers in [from, to] with up to syncWindow headers in flight, requested in
+     * ranges of syncBatchSize and spread over all connections of the chain. Results are reordered
+     * and inserted one by one. A range not answered within syncBatchTimeout is fetched again over
+     * the next connection, up to MAX_CATCH_UP_ATTEMPTS times.
+     */
+    private void startCatchUp(long from, long to) {
+        List<Connection> connections = new ArrayList<Connection>();
+        Map<Peer, Connection> chainConnections = chain.getConnections();
+        if (chainConnections != null) {
+            connections.addAll(chainConnections.values());
+        }
+        if (connections.isEmpty()) {
+            connections.add(chain.chooseConnection());
         }
 
-        if (blockHeader.getNumber() < target) {
+        synchronized (syncState) {
+            syncState.batch++;
+            syncState.connections = connections;
+            syncState.from = from;
+            syncState.nextToFetch = from;
+            syncState.nextToInsert = from;
+            syncState.target = to;
+            syncState.inFlight = 0;
+            syncState.failed = false;
+            syncState.startTime = System.currentTimeMillis();
+            syncState.lastLogTime = syncState.startTime;
+            syncState.reset();
+        }
+
+        fillSyncWindow();
+    }
+
+    private void fillSyncWindow() {
+        List<long[]> ranges = new LinkedList<long[]>();
+        long batch;
+        List<Connection> connections;
+        synchronized (syncState) {
+            batch = syncState.batch;
+            connections = syncState.connections;
+
+            while (!syncState.failed
+                    && syncState.inFlight < syncWindow
+                    && !syncState.retries.isEmpty()) {
+                long[] range = syncState.retries.poll();
+                syncState.inFlight += (int) (range[1] - range[0] + 1);
+                ranges.add(range);
+            }
+
+            while (!syncState.failed
+                    && syncState.inFlight < syncWindow
+                    && syncState.nextToFetch <= syncState.target) {
+                long count =
+                        Math.min(
+                                Math.min(syncBatchSize, syncWindow - syncState.inFlight),
+                                syncState.target - syncState.nextToFetch + 1);
+                ranges.add(
+                        new long[] {syncState.nextToFetch, syncState.nextToFetch + count - 1, 0});
+                syncState.nextToFetch += count;
+                syncState.inFlight += count;
+            }
+
+            for (long[] range : ranges) {
+                syncState.deadlines.put(
+                        range[0],
+                        timer.newTimeout(
+                                (timeout) -> {
+                                    onCatchUpTimeout(batch, range);
+                                },
+                                syncBatchTimeout,
+                                TimeUnit.MILLISECONDS));
+            }
+        }
+
+        for (long[] range : ranges) {
+            long from = range[0];
+            long to = range[1];
+            // a range fetched again goes over the next connection
+            Connection connection =
+                    connections.get(
+                            (int) ((from / syncBatchSize + range[2]) % connections.size()));
             chain.getDriver()
-                    .asyncGetBlockHeader(
-                            blockHeader.getNumber() + 1,
-                            chain.chooseConnection(),
-                            (error, blockData) -> {
-                                onSyncBlockHeader(error, blockData, target);
+                    .asyncGetBlockHeaders(
+                            from,
+                            to,
+                            connection,
+                            (error, blockHeaders) -> {
+                                onCatchUpBlockHeaders(batch, from, to, error, blockHeaders);
                             });
-        } else {
-            waitAndSyncBlock(0);
         }
     }
 
+    private void onCatchUpBlockHeaders(
+            long batch, long from, long to, Exception e, List<byte[]> blockHeaders) {
+        boolean finished;
+        boolean failed;
+        long synced;
+        long elapsed;
+        synchronized (syncState) {
+            if (batch != syncState.batch || !running.get()) {
+                return;
+            }
+
+            // an attempt timed out earlier may still answer for the range fetched again
+            Timeout deadline = syncState.deadlines.remove(from);
+            if (deadline == null) {
+                return;
+            }
+            deadline.cancel();
+
+            syncState.inFlight -= (int) (to - from + 1);
+            if (Objects.nonNull(e)
+                    || blockHeaders == null
+                    || blockHeaders.size() != to - from + 1) {
+                logger.warn("Catch up block headers [{}, {}] exception: {}", from, to, e);
+                syncState.failed = true;
+            } else {
+                for (int i = 0; i < blockHeaders.size(); ++i) {
+                    syncState.pending.put(from + i, blockHeaders.get(i));
+                }
+            }
+
+            // insert in order under the sync lock, so that a later header never overtakes
+            while (!syncState.failed && syncState.pending.containsKey(syncState.nextToInsert)) {
+                byte[] blockData = syncState.pending.remove(syncState.nextToInsert);
+                BlockHeader blockHeader = chain.getDriver().decodeBlockHeader(blockData);
+                if (blockHeader == null || blockHeader.getNumber() != syncState.nextToInsert) {
+                    logger.warn("Unexpected block header, expected: {}", syncState.nextToInsert);
+                    syncState.failed = true;
+                    break;
+                }
+
+                // may have been pushed by the driver already
+                insertBlockHeader(blockHeader, blockData);
+                syncState.nextToInsert++;
+            }
+
+            synced = syncState.nextToInsert - syncState.from;
+            long now = System.currentTimeMillis();
+            elapsed = now - syncState.startTime;
+            if (synced > 0) {
+                catchUpRate = synced * 1000.0 / Math.max(elapsed, 1);
+            }
+            if (now - syncState.lastLogTime >= CATCH_UP_LOG_INTERVAL) {
+                syncState.lastLogTime = now;
+                logger.info(
+                        "Catching up block headers of {}, synced: {}, left: {}, {} blocks/s",
+                        chain.getName(),
+                        synced,
+                        syncState.target - syncState.nextToInsert + 1,
+                        String.format("%.1f", catchUpRate));
+            }
+
+            failed = syncState.failed;
+            finished = isCatchUpFinished();
+        }
+
+        afterCatchUpProgress(finished, failed, synced, elapsed);
+    }
+
+    private void onCatchUpTimeout(long batch, long[] range) {
+        boolean finished;
+        boolean failed;
+        long synced;
+        long elapsed;
+        synchronized (syncState) {
+            if (batch != syncState.batch
+                    || !running.get()
+                    || syncState.deadlines.remove(range[0]) == null) {
+                return;
+            }
+
+            syncState.inFlight -= (int) (range[1] - range[0] + 1);
+            if (range[2] + 1 >= MAX_CATCH_UP_ATTEMPTS) {
+                logger.warn(
+                        "Catch up block headers [{}, {}] timed out {} times, give up",
+                        range[0],
+                        range[1],
+                        MAX_CATCH_UP_ATTEMPTS);
+                syncState.failed = true;
+            } else {
+                logger.warn(
+                        "Catch up block headers [{}, {}] timed out, fetch again",
+                        range[0],
+                        range[1]);
+                syncState.retries.add(new long[] {range[0], range[1], range[2] + 1});
+            }
+
+            failed = syncState.failed;
+            finished = isCatchUpFinished();
+            synced = syncState.nextToInsert - syncState.from;
+            elapsed = System.currentTimeMillis() - syncState.startTime;
+        }
+
+        afterCatchUpProgress(finished, failed, synced, elapsed);
+    }
+
+    /** Must hold the lock of syncState */
+    private boolean isCatchUpFinished() {
+        boolean finished =
+                syncState.inFlight == 0
+                        && (syncState.failed || syncState.nextToInsert > syncState.target);
+        if (finished) {
+            syncState.reset();
+        }
+        return finished;
+    }
+
+    private void afterCatchUpProgress(boolean finished, boolean failed, long synced, long elapsed) {
+        if (!finished) {
+            fillSyncWindow();
+            return;
+        }
+
+        if (synced > 1) {
+            logger.info(
+                    "Catch up {} block headers in {} ms, rate: {} blocks/s",
+                    synced,
+                    elapsed,
+                    String.format("%.1f", catchUpRate));
+        }
+
+        waitAndSyncBlock(failed ? getGetBlockNumberDelay() : nextPollDelay());
+    }
+
     private void waitAndSyncBlock(long delay) {
         timeout =
                 timer.newTimeout(
@@ -171,6 +600,24 @@ public class MemoryBlockHeaderManager implements BlockHeaderManager {
         if (connection != null && driver != null && running.compareAndSet(false, true)) {
             logger.info("MemoryBlockHeaderManager started");
 
+            // push may also be enabled by the router, e.g. peers pushing headers of remote chains
+            if (driver.subscribeBlockHeader(connection, pushCallback)) {
+                pushConnection = connection;
+                pushEnabled = true;
+                logger.info("Driver pushes new block headers, chain: {}", chain.getName());
+            }
+
+            List<BlockHeaderSubscription> startSubscriptions;
+            long stamp = lock.readLock();
+            try {
+                startSubscriptions = new ArrayList<BlockHeaderSubscription>(subscriptions.values());
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            for (BlockHeaderSubscription subscription : startSubscriptions) {
+                subscription.schedule();
+            }
+
             chain.getDriver()
                     .asyncGetBlockNumber(
                             connection,
@@ -188,21 +635,39 @@ public class MemoryBlockHeaderManager implements BlockHeaderManager {
         if (running.compareAndSet(true, false)) {
             logger.info("MemoryBlockHeaderManager stopped");
 
-            for (List<GetBlockHeaderCallback> callbacks : getBlockHaderCallbacks.values()) {
-                for (GetBlockHeaderCallback callback : callbacks) {
-                    threadPool.execute(
-                            new Runnable() {
-                                @Override
-                                public void run() {
-                                    callback.onResponse(
-                                            new WeCrossException(-1, "Operation canceled"), null);
-                                }
-                            });
+            if (pushConnection != null) {
+                chain.getDriver().unsubscribeBlockHeader(pushConnection, pushCallback);
+                pushConnection = null;
+                pushEnabled = false;
+            }
+
+            long stamp = lock.writeLock();
+            try {
+                for (List<GetBlockHeaderCallback> callbacks : getBlockHaderCallbacks.values()) {
+                    for (GetBlockHeaderCallback callback : callbacks) {
+                        threadPool.execute(
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        callback.onResponse(
+                                                new WeCrossException(-1, "Operation canceled"),
+                                                null);
+                                    }
+                                });
+                    }
                 }
+
+                clearCache();
+                getBlockHaderCallbacks.clear();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+
+            synchronized (syncState) {
+                syncState.batch++;
+                syncState.reset();
             }
 
-            blockHeaderCache.clear();
-            getBlockHaderCallbacks.clear();
             if (timeout != null) {
                 timeout.cancel();
             }
@@ -211,40 +676,34 @@ public class MemoryBlockHeaderManager implements BlockHeaderManager {
 
     @Override
     public void asyncGetBlockNumber(GetBlockNumberCallback callback) {
-        lock.readLock().lock();
-        try {
-            if (blockHeaderCache.isEmpty()) {
-                threadPool.execute(
-                        () -> {
-                            callback.onResponse(null, 0);
-                        });
-            } else {
-                threadPool.execute(
-                        () -> {
-                            callback.onResponse(
-                                    null, blockHeaderCache.peekLast().getBlockHeader().getNumber());
-                        });
-            }
-        } finally {
-            lock.readLock().unlock();
-        }
+        long blockNumber = getCachedBlockNumber();
+        threadPool.execute(
+                () -> {
+                    callback.onResponse(null, blockNumber);
+                });
     }
 
     @Override
     public void asyncGetBlockHeader(long blockNumber, GetBlockHeaderCallback callback) {
-        lock.writeLock().lock();
+        // fast path, served from cache without blocking the sync thread or other readers
+        BlockHeaderData blockHeaderData = getCachedBlockHeader(blockNumber);
+        if (blockHeaderData != null) {
+            threadPool.execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onResponse(null, blockHeaderData.getData());
+                        }
+                    });
+            return;
+        }
 
+        boolean fetchFromChain = false;
+        long stamp = lock.writeLock();
         try {
-            if (blockHeaderCache.isEmpty()
-                    || blockNumber < blockHeaderCache.peekFirst().getBlockHeader().getNumber()) {
-                chain.getDriver()
-                        .asyncGetBlockHeader(
-                                blockNumber,
-                                chain.chooseConnection(),
-                                (error, data) -> {
-                                    callback.onResponse(error, data);
-                                });
-            } else if (blockNumber > blockHeaderCache.peekLast().getBlockHeader().getNumber()) {
+            if (cacheSize == 0 || blockNumber <= latestBlockNumber - cacheSize) {
+                fetchFromChain = true;
+            } else if (blockNumber > latestBlockNumber) {
                 if (!getBlockHaderCallbacks.containsKey(blockNumber)) {
                     getBlockHaderCallbacks.put(
                             blockNumber, new LinkedList<GetBlockHeaderCallback>());
@@ -252,36 +711,333 @@ public class MemoryBlockHeaderManager implements BlockHeaderManager {
 
                 getBlockHaderCallbacks.get(blockNumber).add(callback);
 
-                if (timeout != null) {
-                    if (timeout.cancel()) {
-                        threadPool.execute(
-                                () -> {
-                                    try {
-                                        timeout.task().run(timeout);
-                                    } catch (Exception e) {
-                                        logger.error("Unexcept exception", e);
-                                    }
-                                });
-                    }
-                }
+                // someone is waiting for a new block, stop backing off
+                idlePolls = 0;
+                syncNow();
             } else {
-                for (BlockHeaderData blockHeader : blockHeaderCache) {
-                    if (blockHeader.getBlockHeader().getNumber() == blockNumber) {
-                        threadPool.execute(
-                                new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        callback.onResponse(null, blockHeader.getData());
-                                    }
-                                });
+                // the block arrived between the optimistic read and the write lock, a slot that
+                // holds no valid header falls back to the chain so the callback is always answered
+                BlockHeaderData cached = readCache(blockNumber);
+                if (cached == null) {
+                    fetchFromChain = true;
+                } else {
+                    threadPool.execute(
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    callback.onResponse(null, cached.getData());
+                                }
+                            });
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        if (fetchFromChain) {
+            fetchBlockHeader(blockNumber, callback);
+        }
+    }
+
+    @Override
+    public void asyncGetDecodedBlockHeader(
+            long blockNumber, GetDecodedBlockHeaderCallback callback) {
+        BlockHeaderData blockHeaderData = getCachedBlockHeader(blockNumber);
+        if (blockHeaderData != null) {
+            threadPool.execute(
+                    () -> {
+                        callback.onResponse(
+                                null, blockHeaderData.getBlockHeader(), blockHeaderData.getData());
+                    });
+            return;
+        }
 
-                        break;
+        asyncGetBlockHeader(
+                blockNumber,
+                (e, data) -> {
+                    if (Objects.nonNull(e) || data == null) {
+                        callback.onResponse(e, null, null);
+                        return;
                     }
+
+                    // a waited future block has been decoded and cached by the sync
+                    BlockHeaderData cached = getCachedBlockHeader(blockNumber);
+                    if (cached != null && cached.getData() == data) {
+                        callback.onResponse(null, cached.getBlockHeader(), data);
+                        return;
+                    }
+
+                    BlockHeader blockHeader;
+                    try {
+                        blockHeader = chain.getDriver().decodeBlockHeader(data);
+                    } catch (Exception decodeException) {
+                        callback.onResponse(decodeException, null, null);
+                        return;
+                    }
+                    callback.onResponse(null, blockHeader, data);
+                });
+    }
+
+    @Override
+    public void subscribe(long fromBlock, BlockHeaderListener listener) {
+        BlockHeaderSubscription subscription;
+        long stamp = lock.writeLock();
+        try {
+            if (fromBlock < 0 && cacheSize != 0) {
+                fromBlock = latestBlockNumber + 1;
+            }
+
+            subscription =
+                    new BlockHeaderSubscription(this, listener, fromBlock, maxSubscriberQueueSize);
+            BlockHeaderSubscription old = subscriptions.put(listener, subscription);
+            if (old != null) {
+                old.cancel();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        subscription.schedule();
+    }
+
+    @Override
+    public void unsubscribe(BlockHeaderListener listener) {
+        BlockHeaderSubscription subscription;
+        long stamp = lock.writeLock();
+        try {
+            subscription = subscriptions.remove(listener);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    @Override
+    public void asyncGetBlockHeaders(long from, long to, GetBlockHeadersCallback callback) {
+        if (from < 0 || to < from || to - from >= MAX_BLOCK_HEADER_RANGE) {
+            threadPool.execute(
+                    () -> {
+                        String message = "Invalid block header range: [" + from + ", " + to + "]";
+                        callback.onResponse(new WeCrossException(-1, message), null);
+                    });
+            return;
+        }
+
+        int size = (int) (to - from + 1);
+        byte[][] blockHeaders = new byte[size][];
+        long latest;
+        long stamp = lock.readLock();
+        try {
+            for (int i = 0; i < size; ++i) {
+                BlockHeaderData blockHeaderData = readCache(from + i);
+                if (blockHeaderData != null) {
+                    blockHeaders[i] = blockHeaderData.getData();
                 }
             }
+            latest = cacheSize == 0 ? -1 : latestBlockNumber;
         } finally {
-            lock.writeLock().unlock();
+            lock.unlockRead(stamp);
         }
+
+        // missing headers up to latest are fetched in contiguous ranges, future ones are waited
+        List<long[]> ranges = new ArrayList<long[]>();
+        List<Long> futureBlocks = new ArrayList<Long>();
+        for (int i = 0; i < size; ++i) {
+            long blockNumber = from + i;
+            if (blockHeaders[i] != null) {
+                continue;
+            }
+
+            if (latest >= 0 && blockNumber > latest) {
+                futureBlocks.add(blockNumber);
+            } else if (!ranges.isEmpty() && ranges.get(ranges.size() - 1)[1] == blockNumber - 1) {
+                ranges.get(ranges.size() - 1)[1] = blockNumber;
+            } else {
+                ranges.add(new long[] {blockNumber, blockNumber});
+            }
+        }
+
+        AtomicInteger remaining = new AtomicInteger(ranges.size() + futureBlocks.size());
+        AtomicBoolean failed = new AtomicBoolean(false);
+        Runnable onDone =
+                () -> {
+                    if (remaining.decrementAndGet() == 0 && !failed.get()) {
+                        callback.onResponse(null, Arrays.asList(blockHeaders));
+                    }
+                };
+
+        if (remaining.get() == 0) {
+            threadPool.execute(
+                    () -> {
+                        callback.onResponse(null, Arrays.asList(blockHeaders));
+                    });
+            return;
+        }
+
+        for (long[] range : ranges) {
+            long rangeFrom = range[0];
+            long rangeTo = range[1];
+            fetchBlockHeaders(
+                    rangeFrom,
+                    rangeTo,
+                    (e, rangeHeaders) -> {
+                        if (Objects.nonNull(e)
+                                || rangeHeaders == null
+                                || rangeHeaders.size() != rangeTo - rangeFrom + 1) {
+                            if (failed.compareAndSet(false, true)) {
+                                Exception error = e;
+                                if (error == null) {
+                                    error = new WeCrossException(-1, "Unexpected headers size");
+                                }
+                                callback.onResponse(error, null);
+                            }
+                            return;
+                        }
+
+                        for (int i = 0; i < rangeHeaders.size(); ++i) {
+                            blockHeaders[(int) (rangeFrom - from) + i] = rangeHeaders.get(i);
+                        }
+                        onDone.run();
+                    });
+        }
+
+        for (long blockNumber : futureBlocks) {
+            asyncGetBlockHeader(
+                    blockNumber,
+                    (e, data) -> {
+                        if (Objects.nonNull(e) || data == null) {
+                            if (failed.compareAndSet(false, true)) {
+                                callback.onResponse(e, null);
+                            }
+                            return;
+                        }
+
+                        blockHeaders[(int) (blockNumber - from)] = data;
+                        onDone.run();
+                    });
+        }
+    }
+
+    /** Called for block header ranges below the cache window */
+    protected void fetchBlockHeaders(long from, long to, GetBlockHeadersCallback callback) {
+        chain.getDriver()
+                .asyncGetBlockHeaders(
+                        from,
+                        to,
+                        chain.chooseConnection(),
+                        (error, blockHeaders) -> {
+                            callback.onResponse(error, blockHeaders);
+                        });
+    }
+
+    /** Called for block headers below the cache window */
+    protected void fetchBlockHeader(long blockNumber, GetBlockHeaderCallback callback) {
+        chain.getDriver()
+                .asyncGetBlockHeader(
+                        blockNumber,
+                        chain.chooseConnection(),
+                        (error, data) -> {
+                            callback.onResponse(error, data);
+                        });
+    }
+
+    /** Called after a new block header has been synced into the cache */
+    protected void onBlockHeaderSynced(BlockHeader blockHeader, byte[] data) {}
+
+    protected void cacheBlockHeader(BlockHeader blockHeader, byte[] data) {
+        long stamp = lock.writeLock();
+        try {
+            addToCache(new BlockHeaderData(blockHeader, data));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Drop all cached block headers, e.g. ones of a chain that has been rebuilt */
+    protected void resetCache() {
+        long stamp = lock.writeLock();
+        try {
+            clearCache();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    protected long getCachedBlockNumber() {
+        long stamp = lock.tryOptimisticRead();
+        long blockNumber = cacheSize == 0 ? 0 : latestBlockNumber;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                blockNumber = cacheSize == 0 ? 0 : latestBlockNumber;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return blockNumber;
+    }
+
+    private BlockHeaderData getCachedBlockHeader(long blockNumber) {
+        long stamp = lock.tryOptimisticRead();
+        BlockHeaderData blockHeaderData = readCache(blockNumber);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                blockHeaderData = readCache(blockNumber);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return blockHeaderData;
+    }
+
+    /** May run under an optimistic read, so it must not throw on an inconsistent snapshot */
+    private BlockHeaderData readCache(long blockNumber) {
+        BlockHeaderData[] cache = blockHeaderCache;
+        int size = cacheSize;
+        long latest = latestBlockNumber;
+
+        if (size == 0 || blockNumber < 0 || blockNumber > latest || blockNumber <= latest - size) {
+            return null;
+        }
+
+        BlockHeaderData blockHeaderData = cache[(int) (blockNumber % cache.length)];
+        if (blockHeaderData == null
+                || blockHeaderData.getBlockHeader() == null
+                || blockHeaderData.getBlockHeader().getNumber() != blockNumber) {
+            return null;
+        }
+
+        return blockHeaderData;
+    }
+
+    /** Must hold the write lock */
+    private void addToCache(BlockHeaderData blockHeaderData) {
+        long blockNumber = blockHeaderData.getBlockHeader().getNumber();
+        if (cacheSize != 0 && blockNumber != latestBlockNumber + 1) {
+            // not contiguous with the cached headers, start a new window
+            clearCache();
+        }
+
+        blockHeaderCache[(int) (blockNumber % blockHeaderCache.length)] = blockHeaderData;
+        latestBlockNumber = blockNumber;
+        if (cacheSize < blockHeaderCache.length) {
+            ++cacheSize;
+        }
+    }
+
+    /** Must hold the write lock */
+    private void clearCache() {
+        for (int i = 0; i < blockHeaderCache.length; ++i) {
+            blockHeaderCache[i] = null;
+        }
+        cacheSize = 0;
+        latestBlockNumber = 0;
     }
 
     public ThreadPoolTaskExecutor getThreadPool() {
@@ -316,11 +1072,128 @@ public class MemoryBlockHeaderManager implements BlockHeaderManager {
         this.getBlockNumberDelay = getBlockNumberDelay;
     }
 
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public boolean isPushEnabled() {
+        return pushEnabled;
+    }
+
+    /** New block headers arrive through onPushBlockHeader, polling becomes a safety net */
+    public void setPushEnabled(boolean pushEnabled) {
+        this.pushEnabled = pushEnabled;
+    }
+
+    public int getMaxSubscriberQueueSize() {
+        return maxSubscriberQueueSize;
+    }
+
+    public void setMaxSubscriberQueueSize(int maxSubscriberQueueSize) {
+        this.maxSubscriberQueueSize = maxSubscriberQueueSize;
+    }
+
+    /** Estimated block interval in milliseconds, 0 if not known yet */
+    public double getBlockInterval() {
+        return blockInterval;
+    }
+
+    /** Ratio of block number polls that found a new block */
+    public double getPollHitRate() {
+        long polls = pollCount.get();
+        return polls == 0 ? 0 : (double) pollHitCount.get() / polls;
+    }
+
+    public long getMinPollDelay() {
+        return minPollDelay;
+    }
+
+    public void setMinPollDelay(long minPollDelay) {
+        if (minPollDelay <= 0) {
+            throw new IllegalArgumentException("minPollDelay must be positive: " + minPollDelay);
+        }
+        this.minPollDelay = minPollDelay;
+    }
+
+    public long getMaxPollDelay() {
+        return maxPollDelay;
+    }
+
+    public void setMaxPollDelay(long maxPollDelay) {
+        if (maxPollDelay <= 0) {
+            throw new IllegalArgumentException("maxPollDelay must be positive: " + maxPollDelay);
+        }
+        this.maxPollDelay = maxPollDelay;
+    }
+
+    public int getSyncBatchSize() {
+        return syncBatchSize;
+    }
+
+    public void setSyncBatchSize(int syncBatchSize) {
+        if (syncBatchSize <= 0) {
+            throw new IllegalArgumentException("syncBatchSize must be positive: " + syncBatchSize);
+        }
+        this.syncBatchSize = syncBatchSize;
+    }
+
+    public int getSyncWindow() {
+        return syncWindow;
+    }
+
+    public void setSyncWindow(int syncWindow) {
+        if (syncWindow <= 0) {
+            throw new IllegalArgumentException("syncWindow must be positive: " + syncWindow);
+        }
+        this.syncWindow = syncWindow;
+    }
+
+    public long getSyncBatchTimeout() {
+        return syncBatchTimeout;
+    }
+
+    public void setSyncBatchTimeout(long syncBatchTimeout) {
+        if (syncBatchTimeout <= 0) {
+            throw new IllegalArgumentException(
+                    "syncBatchTimeout must be positive: " + syncBatchTimeout);
+        }
+        this.syncBatchTimeout = syncBatchTimeout;
+    }
+
+    public long getMaxCatchUpBlocks() {
+        return maxCatchUpBlocks;
+    }
+
+    public void setMaxCatchUpBlocks(long maxCatchUpBlocks) {
+        if (maxCatchUpBlocks <= 0) {
+            throw new IllegalArgumentException(
+                    "maxCatchUpBlocks must be positive: " + maxCatchUpBlocks);
+        }
+        this.maxCatchUpBlocks = maxCatchUpBlocks;
+    }
+
+    /** Blocks per second of the running catch up, or of the last one once finished */
+    public double getCatchUpRate() {
+        return catchUpRate;
+    }
+
     public int getMaxCacheSize() {
         return maxCacheSize;
     }
 
     public void setMaxCacheSize(int maxCacheSize) {
-        this.maxCacheSize = maxCacheSize;
+        if (maxCacheSize <= 0) {
+            throw new IllegalArgumentException("maxCacheSize must be positive: " + maxCacheSize);
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            this.maxCacheSize = maxCacheSize;
+            this.blockHeaderCache = new BlockHeaderData[maxCacheSize];
+            this.cacheSize = 0;
+            this.latestBlockNumber = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 }
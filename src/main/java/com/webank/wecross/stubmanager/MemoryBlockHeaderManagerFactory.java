@@ -4,10 +4,30 @@ import com.webank.wecross.config.ResourceThreadPoolConfig;
 import com.webank.wecross.zone.Chain;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timer;
+import java.io.File;
+import java.io.IOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class MemoryBlockHeaderManagerFactory {
+    private Logger logger = LoggerFactory.getLogger(MemoryBlockHeaderManagerFactory.class);
+
+    public static final String STORAGE_MEMORY = "memory";
+    public static final String STORAGE_MMAP = "mmap";
+
     private ResourceThreadPoolConfig.ResourceThreadPool resourceThreadPool;
     private Timer timer = new HashedWheelTimer();
+    private int maxCacheSize = 20;
+    private int syncWindow = 8;
+    private int syncBatchSize = 4;
+    private long syncBatchTimeout = 10000;
+    private long maxCatchUpBlocks = 1000;
+    private long minPollDelay = 100;
+    private long maxPollDelay = 5000;
+    private String storage = STORAGE_MEMORY;
+    private String storagePath = "blockheaders";
+    private int segmentSize = 32 * 1024 * 1024;
+    private int maxSegments = 32;
 
     public MemoryBlockHeaderManagerFactory(
             ResourceThreadPoolConfig.ResourceThreadPool resourceThreadPool) {
@@ -15,10 +35,128 @@ public class MemoryBlockHeaderManagerFactory {
     }
 
     public MemoryBlockHeaderManager build(Chain chain) {
-        MemoryBlockHeaderManager resourceBlockHeaderManager = new MemoryBlockHeaderManager();
+        MemoryBlockHeaderManager resourceBlockHeaderManager = null;
+        if (STORAGE_MMAP.equals(storage)) {
+            resourceBlockHeaderManager = buildPersistent(chain);
+        }
+
+        if (resourceBlockHeaderManager == null) {
+            resourceBlockHeaderManager = new MemoryBlockHeaderManager();
+        }
         resourceBlockHeaderManager.setThreadPool(resourceThreadPool.getThreadPool());
         resourceBlockHeaderManager.setChain(chain);
         resourceBlockHeaderManager.setTimer(timer);
+        resourceBlockHeaderManager.setMaxCacheSize(maxCacheSize);
+        resourceBlockHeaderManager.setSyncWindow(syncWindow);
+        resourceBlockHeaderManager.setSyncBatchSize(syncBatchSize);
+        resourceBlockHeaderManager.setSyncBatchTimeout(syncBatchTimeout);
+        resourceBlockHeaderManager.setMaxCatchUpBlocks(maxCatchUpBlocks);
+        resourceBlockHeaderManager.setMinPollDelay(minPollDelay);
+        resourceBlockHeaderManager.setMaxPollDelay(maxPollDelay);
         return resourceBlockHeaderManager;
     }
+
+    private PersistentBlockHeaderManager buildPersistent(Chain chain) {
+        File dir = new File(new File(storagePath, chain.getZoneName()), chain.getName());
+        try {
+            MappedBlockHeaderStore blockHeaderStore =
+                    new MappedBlockHeaderStore(dir, chain.getChecksum(), segmentSize, maxSegments);
+
+            PersistentBlockHeaderManager persistentBlockHeaderManager =
+                    new PersistentBlockHeaderManager();
+            persistentBlockHeaderManager.setBlockHeaderStore(blockHeaderStore);
+            return persistentBlockHeaderManager;
+        } catch (IOException e) {
+            logger.error("Open block header store failed, fall back to memory: " + dir, e);
+            return null;
+        }
+    }
+
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    public void setMaxCacheSize(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    public int getSyncWindow() {
+        return syncWindow;
+    }
+
+    public void setSyncWindow(int syncWindow) {
+        this.syncWindow = syncWindow;
+    }
+
+    public int getSyncBatchSize() {
+        return syncBatchSize;
+    }
+
+    public void setSyncBatchSize(int syncBatchSize) {
+        this.syncBatchSize = syncBatchSize;
+    }
+
+    public long getSyncBatchTimeout() {
+        return syncBatchTimeout;
+    }
+
+    public void setSyncBatchTimeout(long syncBatchTimeout) {
+        this.syncBatchTimeout = syncBatchTimeout;
+    }
+
+    public long getMaxCatchUpBlocks() {
+        return maxCatchUpBlocks;
+    }
+
+    public void setMaxCatchUpBlocks(long maxCatchUpBlocks) {
+        this.maxCatchUpBlocks = maxCatchUpBlocks;
+    }
+
+    public long getMinPollDelay() {
+        return minPollDelay;
+    }
+
+    public void setMinPollDelay(long minPollDelay) {
+        this.minPollDelay = minPollDelay;
+    }
+
+    public long getMaxPollDelay() {
+        return maxPollDelay;
+    }
+
+    public void setMaxPollDelay(long maxPollDelay) {
+        this.maxPollDelay = maxPollDelay;
+    }
+
+    public String getStorage() {
+        return storage;
+    }
+
+    public void setStorage(String storage) {
+        this.storage = storage;
+    }
+
+    public String getStoragePath() {
+        return storagePath;
+    }
+
+    public void setStoragePath(String storagePath) {
+        this.storagePath = storagePath;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    public void setMaxSegments(int maxSegments) {
+        this.maxSegments = maxSegments;
+    }
 }
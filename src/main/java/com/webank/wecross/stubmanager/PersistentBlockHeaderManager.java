@@ -0,0 +1,134 @@
+package com.webank.wecross.stubmanager;
+
+import com.webank.wecross.stub.BlockHeader;
+import com.webank.wecross.stub.Driver;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MemoryBlockHeaderManager backed by a MappedBlockHeaderStore, synced block headers are kept on
+ * disk so that a restarted router serves old headers without asking the chain again.
+ *
+ * <p>The stored headers belong to the checksum of the chain, once it changes, e.g. a cached one is
+ * found stale by the background revalidation, the store is reset on the next poll or access.
+ */
+public class PersistentBlockHeaderManager extends MemoryBlockHeaderManager {
+    private Logger logger = LoggerFactory.getLogger(PersistentBlockHeaderManager.class);
+    private MappedBlockHeaderStore blockHeaderStore;
+
+    @Override
+    public void start() {
+        checkChecksum();
+
+        Driver driver = getChain().getDriver();
+        if (driver != null && getCachedBlockNumber() == 0 && !blockHeaderStore.isEmpty()) {
+            // warm the cache up, syncing will go on from the last stored block
+            long last = blockHeaderStore.getLastBlockNumber();
+            long first =
+                    Math.max(blockHeaderStore.getFirstBlockNumber(), last - getMaxCacheSize() + 1);
+            for (long blockNumber = first; blockNumber <= last; ++blockNumber) {
+                byte[] data = blockHeaderStore.get(blockNumber);
+                if (data == null) {
+                    continue;
+                }
+
+                BlockHeader blockHeader = driver.decodeBlockHeader(data);
+                if (blockHeader == null || blockHeader.getNumber() != blockNumber) {
+                    logger.warn("Invalid block header in store, number: {}", blockNumber);
+                    continue;
+                }
+                cacheBlockHeader(blockHeader, data);
+            }
+        }
+
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        blockHeaderStore.flush();
+    }
+
+    @Override
+    public void onGetBlockNumber(Exception e, long blockNumber) {
+        checkChecksum();
+        super.onGetBlockNumber(e, blockNumber);
+    }
+
+    @Override
+    protected void fetchBlockHeader(long blockNumber, GetBlockHeaderCallback callback) {
+        checkChecksum();
+        byte[] data = blockHeaderStore.get(blockNumber);
+        if (data != null) {
+            getThreadPool()
+                    .execute(
+                            () -> {
+                                callback.onResponse(null, data);
+                            });
+            return;
+        }
+
+        super.fetchBlockHeader(blockNumber, callback);
+    }
+
+    @Override
+    protected void fetchBlockHeaders(long from, long to, GetBlockHeadersCallback callback) {
+        checkChecksum();
+        List<byte[]> blockHeaders = new ArrayList<byte[]>((int) (to - from + 1));
+        for (long blockNumber = from; blockNumber <= to; ++blockNumber) {
+            byte[] data = blockHeaderStore.get(blockNumber);
+            if (data == null) {
+                super.fetchBlockHeaders(from, to, callback);
+                return;
+            }
+            blockHeaders.add(data);
+        }
+
+        getThreadPool()
+                .execute(
+                        () -> {
+                            callback.onResponse(null, blockHeaders);
+                        });
+    }
+
+    @Override
+    protected void onBlockHeaderSynced(BlockHeader blockHeader, byte[] data) {
+        checkChecksum();
+        try {
+            blockHeaderStore.append(blockHeader.getNumber(), data);
+        } catch (IOException e) {
+            logger.warn("Store block header failed, number: " + blockHeader.getNumber(), e);
+        }
+    }
+
+    private void checkChecksum() {
+        String checksum = getChain().getChecksum();
+        if (checksum == null) {
+            checksum = "";
+        }
+        if (checksum.equals(blockHeaderStore.getChecksum())) {
+            return;
+        }
+
+        try {
+            if (blockHeaderStore.reset(checksum)) {
+                // the cache may have been warmed up from the dropped headers
+                resetCache();
+            }
+        } catch (IOException e) {
+            logger.warn("Reset block header store failed, chain: " + getChain().getName(), e);
+        }
+    }
+
+    public MappedBlockHeaderStore getBlockHeaderStore() {
+        return blockHeaderStore;
+    }
+
+    public void setBlockHeaderStore(MappedBlockHeaderStore blockHeaderStore) {
+        this.blockHeaderStore = blockHeaderStore;
+    }
+}
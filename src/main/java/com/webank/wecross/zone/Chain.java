@@ -3,17 +3,34 @@ package com.webank.wecross.zone;
 import com.webank.wecross.peer.Peer;
 import com.webank.wecross.remote.RemoteConnection;
 import com.webank.wecross.resource.Resource;
+import com.webank.wecross.resource.balancer.ConnectionBalancer;
+import com.webank.wecross.resource.balancer.EwmaBalancer;
 import com.webank.wecross.stub.*;
-import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class Chain {
+    public interface ChecksumChangeHandler {
+        void onChecksumChange(String checksum);
+    }
+
+    /** connections of the resources at a version, rebuilt once the version has changed */
+    private static class ConnectionsCache {
+        private final long version;
+        private final Connection[] connections;
+
+        ConnectionsCache(long version, Connection[] connections) {
+            this.version = version;
+            this.connections = connections;
+        }
+    }
+
     private Logger logger = LoggerFactory.getLogger(Chain.class);
 
     // chain Info
@@ -21,16 +38,27 @@ public class Chain {
     private String name;
     private String stubType;
     private Map<String, String> properties;
-    private String checksum;
+    private volatile String checksum;
+    private volatile ChecksumChangeHandler checksumChangeHandler;
 
     private Connection localConnection;
     private Set<Peer> peers = new HashSet<>();
     private Map<String, Resource> resources = new HashMap<String, Resource>();
     private Driver driver;
     private BlockHeaderManager blockHeaderManager;
-    private Random random = new SecureRandom();
     private ReadWriteLock lock = new ReentrantReadWriteLock();
 
+    private ConnectionBalancer connectionBalancer = new EwmaBalancer();
+    private AtomicLong connectionsVersion = new AtomicLong(0);
+    private volatile ConnectionsCache connectionsCache;
+    private Resource.ConnectionsChangeHandler connectionsChangeHandler =
+            new Resource.ConnectionsChangeHandler() {
+                @Override
+                public void onConnectionsChange() {
+                    connectionsVersion.incrementAndGet();
+                }
+            };
+
     public Chain(String zoneName, ChainInfo chainInfo, Driver driver, Connection localConnection) {
 
         this.zoneName = zoneName;
@@ -71,8 +99,51 @@ public class Chain {
         return logger;
     }
 
+    public String getZoneName() {
+        return zoneName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /** Replace a checksum found stale, e.g. a cached one of a chain that has been rebuilt */
+    public void updateChecksum(String checksum) {
+        if (checksum.equals(this.checksum)) {
+            return;
+        }
+
+        logger.warn("Chain {} checksum changed, old: {}, new: {}", name, this.checksum, checksum);
+        this.checksum = checksum;
+
+        ChecksumChangeHandler handler = checksumChangeHandler;
+        if (handler != null) {
+            handler.onChecksumChange(checksum);
+        }
+    }
+
+    public void setChecksumChangeHandler(ChecksumChangeHandler checksumChangeHandler) {
+        this.checksumChangeHandler = checksumChangeHandler;
+    }
+
     public void setResources(Map<String, Resource> resources) {
+        for (Resource resource : resources.values()) {
+            resource.setConnectionsChangeHandler(connectionsChangeHandler);
+        }
         this.resources = resources;
+        connectionsVersion.incrementAndGet();
+    }
+
+    public ConnectionBalancer getConnectionBalancer() {
+        return connectionBalancer;
+    }
+
+    public void setConnectionBalancer(ConnectionBalancer connectionBalancer) {
+        this.connectionBalancer = connectionBalancer;
     }
 
     public String getStubType() {
@@ -158,23 +229,35 @@ public class Chain {
     }
 
     public Connection chooseConnection() {
-        Map<Peer, Connection> connections = getConnections();
-        if (connections == null) {
-            logger.warn("Chain {} connection is null", name);
+        if (localConnection != null) {
+            return localConnection;
+        }
+
+        Connection[] connections = getConnectionArray();
+        if (connections.length == 0) {
             return null;
+        } else {
+            return connectionBalancer.choose(connections);
         }
+    }
 
-        Connection connection = connections.get(null);
-        if (connection != null) {
-            return connection;
+    private Connection[] getConnectionArray() {
+        long version = connectionsVersion.get();
+        ConnectionsCache cache = connectionsCache;
+        if (cache != null && cache.version == version) {
+            return cache.connections;
         }
 
-        if (connections.size() == 0) {
-            return null;
-        } else {
-            int index = random.nextInt(connections.size());
-            return (Connection) connections.values().toArray()[index];
+        // built on the version read before, a change meanwhile builds it again next time
+        Map<Peer, Connection> connections = getConnections();
+        if (connections == null) {
+            logger.warn("Chain {} connection is null", name);
+            return new Connection[0];
         }
+
+        Connection[] connectionArray = connections.values().toArray(new Connection[0]);
+        connectionsCache = new ConnectionsCache(version, connectionArray);
+        return connectionArray;
     }
 
     public void addResource(Path path, Resource resource, boolean replaceIfExist) {
@@ -187,7 +270,9 @@ public class Chain {
         try {
 
             if (oldResource != null && replaceIfExist || oldResource == null) {
+                resource.setConnectionsChangeHandler(connectionsChangeHandler);
                 resources.put(name, resource);
+                connectionsVersion.incrementAndGet();
             }
         } catch (Exception e) {
             if (logger.isDebugEnabled()) {
@@ -213,6 +298,7 @@ public class Chain {
             if (resources.containsKey(name)) {
 
                 resources.remove(name);
+                connectionsVersion.incrementAndGet();
             }
         } catch (Exception e) {
             if (logger.isDebugEnabled()) {
@@ -347,6 +433,8 @@ public class Chain {
             resource.setResourceInfo(resourceInfo);
             resource.setBlockHeaderManager(blockHeaderManager);
             resource.setDriver(driver);
+            resource.setConnectionBalancer(connectionBalancer);
+            resource.setConnectionsChangeHandler(connectionsChangeHandler);
             resource.addConnection(peer, remoteConnection);
 
             logger.info(
@@ -0,0 +1,87 @@
+package com.webank.wecross.zone;
+
+import com.webank.wecross.utils.Sha256Utils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chain checksums kept on disk, so that the genesis block header need not be fetched again on
+ * every start.
+ *
+ * <p>An entry is keyed by the chain path and is only valid for the connection properties it was
+ * built with, a chain configured to connect somewhere else is checksummed again.
+ */
+public class ChainChecksumCache {
+    private Logger logger = LoggerFactory.getLogger(ChainChecksumCache.class);
+
+    private static final String SEPARATOR = ":";
+
+    private File file;
+    private Properties checksums = new Properties();
+
+    public ChainChecksumCache(File file) {
+        this.file = file;
+
+        if (file.exists()) {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                checksums.load(inputStream);
+            } catch (IOException e) {
+                logger.warn("Load chain checksum cache failed: {}, {}", file, e.getMessage());
+                checksums.clear();
+            }
+        }
+    }
+
+    /** @return the cached checksum, null if absent or built with other connection properties */
+    public synchronized String get(String chainPath, Map<String, String> properties) {
+        String value = checksums.getProperty(chainPath);
+        if (value == null) {
+            return null;
+        }
+
+        int index = value.indexOf(SEPARATOR);
+        if (index < 0 || !value.substring(0, index).equals(hashProperties(properties))) {
+            return null;
+        }
+
+        return value.substring(index + 1);
+    }
+
+    public synchronized void put(
+            String chainPath, Map<String, String> properties, String checksum) {
+        String value = hashProperties(properties) + SEPARATOR + checksum;
+        if (value.equals(checksums.getProperty(chainPath))) {
+            return;
+        }
+
+        checksums.setProperty(chainPath, value);
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            logger.warn("Create chain checksum cache dir failed: {}", parent);
+            return;
+        }
+
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            checksums.store(outputStream, "chain checksums, safe to delete");
+        } catch (IOException e) {
+            logger.warn("Save chain checksum cache failed: {}, {}", file, e.getMessage());
+        }
+    }
+
+    private String hashProperties(Map<String, String> properties) {
+        String sorted =
+                properties == null ? "" : new TreeMap<String, String>(properties).toString();
+        return Sha256Utils.sha256String(sorted.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -3,9 +3,13 @@ package com.webank.wecross.zone;
 import com.webank.wecross.exception.WeCrossException;
 import com.webank.wecross.network.p2p.P2PService;
 import com.webank.wecross.peer.Peer;
+import com.webank.wecross.peer.PeerInfoDeltaMessageData;
 import com.webank.wecross.peer.PeerManager;
+import com.webank.wecross.remote.BlockHeaderPushService;
 import com.webank.wecross.remote.RemoteConnection;
 import com.webank.wecross.resource.Resource;
+import com.webank.wecross.resource.balancer.ConnectionBalancer;
+import com.webank.wecross.resource.balancer.EwmaBalancer;
 import com.webank.wecross.stub.Connection;
 import com.webank.wecross.stub.Driver;
 import com.webank.wecross.stub.Path;
@@ -14,9 +18,17 @@ import com.webank.wecross.stubmanager.MemoryBlockHeaderManager;
 import com.webank.wecross.stubmanager.MemoryBlockHeaderManagerFactory;
 import com.webank.wecross.stubmanager.StubManager;
 import com.webank.wecross.utils.core.PathUtils;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -27,11 +39,18 @@ public class ZoneManager {
     private Logger logger = LoggerFactory.getLogger(ZoneManager.class);
     private Map<String, Zone> zones = new HashMap<>();
     private AtomicInteger seq = new AtomicInteger(1);
+    // tells peers whether the seq they know is from this run
+    private long epoch = new SecureRandom().nextLong();
+    // seq => path of the chain changed at that seq, null if not known
+    private TreeMap<Integer, String> changeLog = new TreeMap<>();
+    private static final int maxChangeLogSize = 1024;
     private P2PService p2PService;
     private ReadWriteLock lock = new ReentrantReadWriteLock();
     private StubManager stubManager;
     private MemoryBlockHeaderManagerFactory memoryBlockHeaderManagerFactory;
     private PeerManager peerManager;
+    private BlockHeaderPushService blockHeaderPushService;
+    private ConnectionBalancer connectionBalancer = new EwmaBalancer();
 
     public Chain getChain(Path path) {
         lock.readLock().lock();
@@ -87,6 +106,7 @@ public class ZoneManager {
                             resource.setDriver(chain.getDriver());
                             resource.setStubType(chain.getStubType());
                             resource.setResourceInfo(resourceInfo);
+                            resource.setConnectionBalancer(chain.getConnectionBalancer());
 
                             Connection localConnection = chain.getLocalConnection();
                             if (localConnection != null) {
@@ -160,6 +180,94 @@ public class ZoneManager {
         return seq.intValue();
     }
 
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Chains changed since a seq of this run, all chains if the changes since then are not known
+     *
+     * @param epoch epoch of sinceSeq
+     * @param sinceSeq
+     * @return
+     */
+    public PeerInfoDeltaMessageData getChainsInfoDelta(long epoch, int sinceSeq) {
+        Set<String> changedChains = null;
+        int currentSeq;
+        synchronized (changeLog) {
+            currentSeq = getSeq();
+            if (epoch == this.epoch
+                    && sinceSeq <= currentSeq
+                    && (sinceSeq == currentSeq
+                            || (!changeLog.isEmpty() && changeLog.firstKey() <= sinceSeq + 1))) {
+                changedChains = new HashSet<>();
+                for (String chainPath : changeLog.tailMap(sinceSeq, false).values()) {
+                    if (chainPath == null) {
+                        changedChains = null;
+                        break;
+                    }
+                    changedChains.add(chainPath);
+                }
+            }
+        }
+
+        PeerInfoDeltaMessageData data = new PeerInfoDeltaMessageData();
+        data.setEpoch(this.epoch);
+        data.setSeq(currentSeq);
+        if (changedChains == null) {
+            data.setFull(true);
+            data.setChainInfos(getAllChainsInfo(true));
+            data.setRemovedChains(new ArrayList<>());
+            return data;
+        }
+
+        Map<String, ChainInfo> chainInfos = new HashMap<>();
+        List<String> removedChains = new ArrayList<>();
+        for (String chainPath : changedChains) {
+            ChainInfo chainInfo = getLocalChainInfo(chainPath);
+            if (chainInfo != null) {
+                chainInfos.put(chainPath, chainInfo);
+            } else {
+                removedChains.add(chainPath);
+            }
+        }
+        data.setChainInfos(chainInfos);
+        data.setRemovedChains(removedChains);
+        return data;
+    }
+
+    private ChainInfo getLocalChainInfo(String chainPath) {
+        Path path;
+        try {
+            path = Path.decode(chainPath);
+        } catch (Exception e) {
+            logger.error("Parse path error: {} {}", chainPath, e);
+            return null;
+        }
+
+        lock.readLock().lock();
+        try {
+            Zone zone = zones.get(path.getZone());
+            Chain chain = zone == null ? null : zone.getChains().get(path.getChain());
+            if (chain == null || !chain.hasLocalConnection()) {
+                return null;
+            }
+            return chain.getChainInfo();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RemoteConnection newRemoteConnection(
+            Peer peer, Path resourcePath, ChainInfo chainInfo) {
+        RemoteConnection remoteConnection = new RemoteConnection();
+        remoteConnection.setP2PService(p2PService);
+        remoteConnection.setPeer(peer);
+        remoteConnection.setPath(resourcePath.toURI());
+        remoteConnection.setProperties(chainInfo.getProperties());
+        return remoteConnection;
+    }
+
     public boolean addRemoteChains(Peer peer, Map<String, ChainInfo> chainInfos) throws Exception {
         lock.writeLock().lock();
         boolean changed = false;
@@ -186,6 +294,7 @@ public class ZoneManager {
                     Driver driver = stubManager.getStubFactory(chainInfo.getStubType()).newDriver();
 
                     chain = new Chain(chainPath.getZone(), chainInfo, driver, null);
+                    chain.setConnectionBalancer(connectionBalancer);
                     MemoryBlockHeaderManager resourceBlockHeaderManager =
                             memoryBlockHeaderManagerFactory.build(chain);
 
@@ -210,15 +319,15 @@ public class ZoneManager {
                     resourcePath.setChain(chainPath.getChain());
                     resourcePath.setResource(resourceInfo.getName());
 
-                    RemoteConnection remoteConnection = new RemoteConnection();
-                    remoteConnection.setP2PService(p2PService);
-                    remoteConnection.setPeer(peer);
-                    remoteConnection.setPath(resourcePath.toURI());
-                    remoteConnection.setProperties(chainInfo.getProperties());
-
-                    chain.addRemoteResource(peer, resourceInfo, remoteConnection);
+                    chain.addRemoteResource(
+                            peer,
+                            resourceInfo,
+                            newRemoteConnection(peer, resourcePath, chainInfo));
                 }
                 chain.start();
+                if (blockHeaderPushService != null && !chain.hasLocalConnection()) {
+                    blockHeaderPushService.subscribeRemoteChain(peer, entry.getKey(), chain);
+                }
                 changed = true;
             }
         } catch (WeCrossException e) {
@@ -290,6 +399,9 @@ public class ZoneManager {
 
                 if (removeChainPeer) {
                     chain.removePeers(peer);
+                    if (blockHeaderPushService != null) {
+                        blockHeaderPushService.onRemotePeerRemoved(peer, entry.getKey(), chain);
+                    }
                 }
 
                 if (chain.getPeers().isEmpty() && !chain.hasLocalConnection()) {
@@ -305,6 +417,132 @@ public class ZoneManager {
         return changed;
     }
 
+    /**
+     * Apply the chains of a peer changed since its last update in place. Only resources added,
+     * removed or changed are touched, a chain is rebuilt only when its checksum or properties
+     * change.
+     *
+     * @param peer
+     * @param oldChains chains of the peer before the update
+     * @param changedChains chains added or changed
+     * @param removedChains paths of the chains removed
+     * @return
+     * @throws Exception
+     */
+    public boolean updateRemoteChains(
+            Peer peer,
+            Map<String, ChainInfo> oldChains,
+            Map<String, ChainInfo> changedChains,
+            Collection<String> removedChains)
+            throws Exception {
+        boolean changed = false;
+        for (String chainPath : removedChains) {
+            ChainInfo oldChainInfo = oldChains.get(chainPath);
+            if (oldChainInfo != null) {
+                changed |=
+                        removeRemoteChains(
+                                peer, Collections.singletonMap(chainPath, oldChainInfo), true);
+            }
+        }
+
+        for (Map.Entry<String, ChainInfo> entry : changedChains.entrySet()) {
+            ChainInfo oldChainInfo = oldChains.get(entry.getKey());
+            if (oldChainInfo == null) {
+                changed |=
+                        addRemoteChains(
+                                peer, Collections.singletonMap(entry.getKey(), entry.getValue()));
+            } else {
+                changed |= updateRemoteChain(peer, entry.getKey(), oldChainInfo, entry.getValue());
+            }
+        }
+        return changed;
+    }
+
+    private boolean updateRemoteChain(
+            Peer peer, String chainPath, ChainInfo oldChainInfo, ChainInfo chainInfo)
+            throws Exception {
+        if (!Objects.equals(oldChainInfo.getChecksum(), chainInfo.getChecksum())
+                || !Objects.equals(oldChainInfo.getStubType(), chainInfo.getStubType())
+                || !Objects.equals(oldChainInfo.getProperties(), chainInfo.getProperties())) {
+            boolean changed =
+                    removeRemoteChains(
+                            peer, Collections.singletonMap(chainPath, oldChainInfo), true);
+            changed |= addRemoteChains(peer, Collections.singletonMap(chainPath, chainInfo));
+            return changed;
+        }
+
+        Path path;
+        try {
+            path = Path.decode(chainPath);
+        } catch (Exception e) {
+            logger.error("Parse path error: {} {}", chainPath, e);
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Zone zone = zones.get(path.getZone());
+            Chain chain = zone == null ? null : zone.getChains().get(path.getChain());
+            if (chain == null) {
+                return addRemoteChains(peer, Collections.singletonMap(chainPath, chainInfo));
+            }
+
+            Map<String, ResourceInfo> oldResources = new HashMap<>();
+            if (oldChainInfo.getResources() != null) {
+                for (ResourceInfo resourceInfo : oldChainInfo.getResources()) {
+                    oldResources.put(resourceInfo.getName(), resourceInfo);
+                }
+            }
+
+            boolean changed = false;
+            Set<String> names = new HashSet<>();
+            if (chainInfo.getResources() != null) {
+                for (ResourceInfo resourceInfo : chainInfo.getResources()) {
+                    ResourceInfo oldResourceInfo = oldResources.get(resourceInfo.getName());
+                    names.add(resourceInfo.getName());
+                    if (isSameResourceInfo(oldResourceInfo, resourceInfo)) {
+                        continue;
+                    }
+
+                    Path resourcePath = new Path();
+                    resourcePath.setZone(path.getZone());
+                    resourcePath.setChain(path.getChain());
+                    resourcePath.setResource(resourceInfo.getName());
+                    chain.addRemoteResource(
+                            peer,
+                            resourceInfo,
+                            newRemoteConnection(peer, resourcePath, chainInfo));
+                    changed = true;
+                }
+            }
+
+            for (String name : oldResources.keySet()) {
+                if (names.contains(name)) {
+                    continue;
+                }
+
+                Resource resource = chain.getResource(name);
+                if (resource != null && !resource.isTemporary()) {
+                    resource.removeConnection(peer);
+                    if (resource.isConnectionEmpty()) {
+                        chain.removeResource(name, false);
+                    }
+                }
+                changed = true;
+            }
+            return changed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isSameResourceInfo(ResourceInfo oldResourceInfo, ResourceInfo resourceInfo) {
+        return oldResourceInfo != null
+                && Objects.equals(oldResourceInfo.getChecksum(), resourceInfo.getChecksum())
+                && Objects.equals(oldResourceInfo.getStubType(), resourceInfo.getStubType())
+                && Objects.equals(oldResourceInfo.getProperties(), resourceInfo.getProperties());
+    }
+
     public Map<String, Resource> getAllResources(boolean ignoreRemote) {
         Map<String, Resource> resources = new HashMap<String, Resource>();
 
@@ -392,7 +630,34 @@ public class ZoneManager {
         this.peerManager = peerManager;
     }
 
+    public BlockHeaderPushService getBlockHeaderPushService() {
+        return blockHeaderPushService;
+    }
+
+    public void setBlockHeaderPushService(BlockHeaderPushService blockHeaderPushService) {
+        this.blockHeaderPushService = blockHeaderPushService;
+    }
+
+    public ConnectionBalancer getConnectionBalancer() {
+        return connectionBalancer;
+    }
+
+    /** Balancer of the remote chains, set before peers connect */
+    public void setConnectionBalancer(ConnectionBalancer connectionBalancer) {
+        this.connectionBalancer = connectionBalancer;
+    }
+
     public void newSeq() {
-        this.seq.addAndGet(1);
+        newSeq(null);
+    }
+
+    /** @param chainPath path of the changed chain, peers ask for all chains if null */
+    public void newSeq(String chainPath) {
+        synchronized (changeLog) {
+            changeLog.put(this.seq.addAndGet(1), chainPath);
+            if (changeLog.size() > maxChangeLogSize) {
+                changeLog.pollFirstEntry();
+            }
+        }
     }
 }
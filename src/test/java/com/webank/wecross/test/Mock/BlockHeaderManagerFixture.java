@@ -0,0 +1,69 @@
+package com.webank.wecross.test.Mock;
+
+import static org.junit.Assert.assertTrue;
+
+import com.webank.wecross.stub.Connection;
+import com.webank.wecross.stub.Driver;
+import com.webank.wecross.stubmanager.MemoryBlockHeaderManager;
+import com.webank.wecross.zone.Chain;
+import com.webank.wecross.zone.ChainInfo;
+import io.netty.util.HashedWheelTimer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.mockito.Mockito;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/** Block header managers polling a MockDriver quickly, and helpers waiting for them */
+public class BlockHeaderManagerFixture {
+    public static Chain newChain(String zone, Driver driver) {
+        ChainInfo chainInfo = new ChainInfo();
+        chainInfo.setName("chain");
+        return new Chain(zone, chainInfo, driver, Mockito.mock(Connection.class));
+    }
+
+    public static MemoryBlockHeaderManager newManager(Chain chain) {
+        return setUp(new MemoryBlockHeaderManager(), chain);
+    }
+
+    public static <T extends MemoryBlockHeaderManager> T setUp(T manager, Chain chain) {
+        ThreadPoolTaskExecutor threadPool = new ThreadPoolTaskExecutor();
+        threadPool.setCorePoolSize(10);
+        threadPool.setMaxPoolSize(100);
+        threadPool.setQueueCapacity(1000);
+        threadPool.initialize();
+
+        manager.setThreadPool(threadPool);
+        manager.setTimer(new HashedWheelTimer());
+        manager.setChain(chain);
+        manager.setGetBlockNumberDelay(10);
+        manager.setMinPollDelay(10);
+        manager.setMaxPollDelay(50);
+        return manager;
+    }
+
+    public static long getBlockNumber(MemoryBlockHeaderManager manager) throws Exception {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        manager.asyncGetBlockNumber((e, number) -> future.complete(number));
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    public static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); ++i) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    public static void waitForBlockNumber(MemoryBlockHeaderManager manager, long blockNumber)
+            throws InterruptedException {
+        waitFor(
+                () -> {
+                    try {
+                        return getBlockNumber(manager) == blockNumber;
+                    } catch (Exception e) {
+                        return false;
+                    }
+                });
+    }
+}
@@ -0,0 +1,148 @@
+package com.webank.wecross.test.Mock;
+
+import com.webank.wecross.stub.Account;
+import com.webank.wecross.stub.BlockHeader;
+import com.webank.wecross.stub.BlockHeaderManager;
+import com.webank.wecross.stub.Connection;
+import com.webank.wecross.stub.Driver;
+import com.webank.wecross.stub.Path;
+import com.webank.wecross.stub.Request;
+import com.webank.wecross.stub.TransactionContext;
+import com.webank.wecross.stub.TransactionRequest;
+import com.webank.wecross.stub.TransactionResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Driver of a fake chain whose block headers are their block numbers as text */
+public class MockDriver implements Driver {
+    private volatile long blockNumber = 0;
+    private AtomicInteger blockHeaderRequests = new AtomicInteger(0);
+    private AtomicInteger decodeCount = new AtomicInteger(0);
+    private ExecutorService executor =
+            Executors.newCachedThreadPool(
+                    runnable -> {
+                        Thread thread = new Thread(runnable);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+    public static byte[] encodeBlockHeader(long number) {
+        return String.valueOf(number).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public long getBlockNumber() {
+        return blockNumber;
+    }
+
+    public void setBlockNumber(long blockNumber) {
+        this.blockNumber = blockNumber;
+    }
+
+    /** asyncGetBlockHeader calls so far */
+    public int getBlockHeaderRequests() {
+        return blockHeaderRequests.get();
+    }
+
+    public int getDecodeCount() {
+        return decodeCount.get();
+    }
+
+    protected ExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public BlockHeader decodeBlockHeader(byte[] data) {
+        decodeCount.incrementAndGet();
+        BlockHeader blockHeader = new BlockHeader();
+        blockHeader.setNumber(Long.parseLong(new String(data, StandardCharsets.UTF_8)));
+        return blockHeader;
+    }
+
+    @Override
+    public void asyncGetBlockNumber(Connection connection, GetBlockNumberCallback callback) {
+        long number = blockNumber;
+        executor.execute(() -> callback.onResponse(null, number));
+    }
+
+    @Override
+    public void asyncGetBlockHeader(
+            long blockNumber, Connection connection, GetBlockHeaderCallback callback) {
+        blockHeaderRequests.incrementAndGet();
+        executor.execute(
+                () -> {
+                    if (blockNumber > this.blockNumber) {
+                        callback.onResponse(new Exception("Block not found: " + blockNumber), null);
+                    } else {
+                        callback.onResponse(null, encodeBlockHeader(blockNumber));
+                    }
+                });
+    }
+
+    @Override
+    public TransactionContext<TransactionRequest> decodeTransactionRequest(byte[] data) {
+        return null;
+    }
+
+    @Override
+    public boolean isTransaction(Request request) {
+        return false;
+    }
+
+    @Override
+    public TransactionResponse call(
+            TransactionContext<TransactionRequest> request, Connection connection) {
+        return null;
+    }
+
+    @Override
+    public void asyncCall(
+            TransactionContext<TransactionRequest> request,
+            Connection connection,
+            Callback callback) {}
+
+    @Override
+    public void asyncCallByProxy(
+            TransactionContext<TransactionRequest> request,
+            Connection connection,
+            Callback callback) {}
+
+    @Override
+    public TransactionResponse sendTransaction(
+            TransactionContext<TransactionRequest> request, Connection connection) {
+        return null;
+    }
+
+    @Override
+    public void asyncSendTransaction(
+            TransactionContext<TransactionRequest> request,
+            Connection connection,
+            Callback callback) {}
+
+    @Override
+    public void asyncSendTransactionByProxy(
+            TransactionContext<TransactionRequest> request,
+            Connection connection,
+            Callback callback) {}
+
+    @Override
+    public void asyncGetVerifiedTransaction(
+            Path expectPath,
+            String transactionHash,
+            long blockNumber,
+            BlockHeaderManager blockHeaderManager,
+            Connection connection,
+            GetVerifiedTransactionCallback callback) {}
+
+    @Override
+    public void asyncCustomCommand(
+            String command,
+            Path path,
+            Object[] args,
+            Account account,
+            BlockHeaderManager blockHeaderManager,
+            Connection connection,
+            CustomCommandCallback callback) {}
+}
@@ -0,0 +1,122 @@
+package com.webank.wecross.test.p2p;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.webank.wecross.network.NetworkMessage;
+import com.webank.wecross.network.NetworkResponse;
+import com.webank.wecross.network.p2p.P2PRequestContent;
+import com.webank.wecross.network.p2p.codec.BinaryCodec;
+import com.webank.wecross.peer.PeerSeqMessageData;
+import com.webank.wecross.stub.Request;
+import com.webank.wecross.stub.Response;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BinaryCodecTest {
+    private ObjectMapper objectMapper = new ObjectMapper();
+    private BinaryCodec binaryCodec = new BinaryCodec(objectMapper);
+
+    private NetworkMessage<Request> buildRequestMessage() {
+        Request request = new Request();
+        request.setType(1);
+        request.setPath("payment.bcos.HelloWorld");
+        request.setData(new byte[] {1, 2, 3, 4});
+
+        NetworkMessage<Request> message = new NetworkMessage<Request>();
+        message.setVersion("1");
+        message.setSeq(100);
+        message.setMethod("payment/bcos/HelloWorld/transaction");
+        message.setData(request);
+        return message;
+    }
+
+    @Test
+    public void requestTest() throws Exception {
+        NetworkMessage<Request> message = buildRequestMessage();
+        byte[] binary = binaryCodec.encodeMessage(message);
+        byte[] json = objectMapper.writeValueAsBytes(message);
+
+        Assert.assertTrue(BinaryCodec.isBinary(binary));
+        Assert.assertFalse(BinaryCodec.isBinary(json));
+        Assert.assertTrue(binary.length < json.length);
+
+        for (byte[] content : new byte[][] {binary, json}) {
+            P2PRequestContent requestContent =
+                    new P2PRequestContent(
+                            objectMapper, binaryCodec, Unpooled.wrappedBuffer(content));
+            Assert.assertEquals(message.getMethod(), requestContent.getMethod());
+            Assert.assertEquals(100, requestContent.getSeq());
+
+            NetworkMessage<Request> decoded =
+                    requestContent.read(new TypeReference<NetworkMessage<Request>>() {});
+            Assert.assertEquals("1", decoded.getVersion());
+            Assert.assertEquals(1, decoded.getData().getType());
+            Assert.assertEquals("payment.bcos.HelloWorld", decoded.getData().getPath());
+            Assert.assertArrayEquals(new byte[] {1, 2, 3, 4}, decoded.getData().getData());
+            Assert.assertNull(decoded.getData().getResourceInfo());
+        }
+    }
+
+    @Test
+    public void responseTest() throws Exception {
+        Response data = new Response();
+        data.setErrorCode(0);
+        data.setErrorMessage("success");
+        data.setData(new byte[] {5, 6});
+
+        NetworkResponse<Response> response = new NetworkResponse<Response>();
+        response.setVersion("1");
+        response.setSeq(100);
+        response.setErrorCode(0);
+        response.setMessage("ok");
+        response.setData(data);
+
+        NetworkResponse<Response> decoded =
+                binaryCodec.decodeResponse(
+                        Unpooled.wrappedBuffer(binaryCodec.encodeResponse(response)),
+                        new TypeReference<NetworkResponse<Response>>() {});
+        Assert.assertEquals(100, decoded.getSeq());
+        Assert.assertEquals("ok", decoded.getMessage());
+        Assert.assertEquals("success", decoded.getData().getErrorMessage());
+        Assert.assertArrayEquals(new byte[] {5, 6}, decoded.getData().getData());
+    }
+
+    @Test
+    public void jsonDataTest() throws Exception {
+        PeerSeqMessageData data = new PeerSeqMessageData();
+        data.setSeq(7);
+
+        NetworkMessage<PeerSeqMessageData> message = new NetworkMessage<PeerSeqMessageData>();
+        message.setVersion("1");
+        message.setSeq(1);
+        message.setMethod("seq");
+        message.setData(data);
+
+        NetworkMessage<PeerSeqMessageData> decoded =
+                binaryCodec.decodeMessage(
+                        Unpooled.wrappedBuffer(binaryCodec.encodeMessage(message)),
+                        new TypeReference<NetworkMessage<PeerSeqMessageData>>() {});
+        Assert.assertEquals(7, decoded.getData().getSeq());
+
+        message.setData(null);
+        decoded =
+                binaryCodec.decodeMessage(
+                        Unpooled.wrappedBuffer(binaryCodec.encodeMessage(message)),
+                        new TypeReference<NetworkMessage<PeerSeqMessageData>>() {});
+        Assert.assertNull(decoded.getData());
+    }
+
+    @Test
+    public void unexpectedDataTest() throws Exception {
+        try {
+            binaryCodec.decodeMessage(
+                    Unpooled.wrappedBuffer(binaryCodec.encodeMessage(buildRequestMessage())),
+                    new TypeReference<NetworkMessage<PeerSeqMessageData>>() {});
+            Assert.fail("Request decoded as PeerSeqMessageData");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
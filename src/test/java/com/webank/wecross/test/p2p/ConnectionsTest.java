@@ -0,0 +1,154 @@
+package com.webank.wecross.test.p2p;
+
+import com.webank.wecross.network.p2p.netty.Connections;
+import com.webank.wecross.network.p2p.netty.common.Node;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConnectionsTest {
+    private ChannelHandlerContext newContext() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        return channel.pipeline().firstContext();
+    }
+
+    @Test
+    public void channelPoolTest() throws Exception {
+        Connections connections = new Connections();
+        connections.setConnectionsPerPeer(3);
+        Node host = new Node("", "127.0.0.1", 25500);
+        connections.setConfiguredPeers(Collections.singleton(host));
+        Assert.assertEquals(3, connections.missingConnections(host));
+
+        ChannelHandlerContext large = newContext();
+        ChannelHandlerContext small1 = newContext();
+        ChannelHandlerContext small2 = newContext();
+
+        Node node = new Node("aabbcc", "127.0.0.1", 25500);
+        Assert.assertTrue(node == connections.addChannelHandler(node, large, true));
+        // later channels share the node of the first one
+        Node other = new Node("aabbcc", "127.0.0.1", 51234);
+        Assert.assertTrue(node == connections.addChannelHandler(other, small1, false));
+        Assert.assertEquals(1, connections.missingConnections(host));
+        connections.addChannelHandler(node, small2, true);
+        Assert.assertEquals(0, connections.missingConnections(host));
+        Assert.assertTrue(connections.shouldConnectNodes().isEmpty());
+        Assert.assertEquals(3, connections.activeChannelHandlers().size());
+
+        try {
+            connections.addChannelHandler(node, newContext(), true);
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // pool full
+        }
+
+        Assert.assertEquals(
+                large, connections.getChannelHandler("aabbcc", Connections.LARGE_MESSAGE_LENGTH));
+
+        // small messages go to the least busy of the other channels
+        Connections.getInFlight(small1).incrementAndGet();
+        Assert.assertEquals(small2, connections.getChannelHandler("aabbcc", 10));
+        Connections.getInFlight(small2).addAndGet(2);
+        Assert.assertEquals(small1, connections.getChannelHandler("aabbcc", 10));
+        Assert.assertNull(connections.getChannelHandler("ddeeff", 10));
+
+        // requests in flight on all channels count against the peer limit
+        connections.setMaxInFlightPerPeer(4);
+        Assert.assertEquals(3, connections.getInFlight("aabbcc"));
+        Assert.assertFalse(connections.isOverloaded("aabbcc", small1));
+        Connections.getInFlight(large).incrementAndGet();
+        Assert.assertTrue(connections.isOverloaded("aabbcc", small1));
+
+        Assert.assertFalse(connections.removeChannelHandler(node, large));
+        Assert.assertFalse(connections.removeChannelHandler(node, large));
+        Assert.assertFalse(connections.removeChannelHandler(node, small1));
+        Assert.assertEquals(small2, connections.getChannelHandler("aabbcc", 10));
+        Assert.assertTrue(connections.removeChannelHandler(node, small2));
+        Assert.assertNull(connections.getChannelHandler("aabbcc", 10));
+        Assert.assertTrue(connections.getHost2NodeID().isEmpty());
+        Assert.assertEquals(3, connections.missingConnections(host));
+    }
+
+    @Test
+    public void configuredHostTest() throws Exception {
+        Connections connections = new Connections();
+        Node host = new Node("", "127.0.0.1", 25500);
+        connections.setConfiguredPeers(Collections.singleton(host));
+
+        // the peer connected to us first, from a port of its own
+        ChannelHandlerContext ctx = newContext();
+        Node node = new Node("aabbcc", "127.0.0.1", 51234);
+        connections.addChannelHandler(node, ctx, false);
+        Assert.assertEquals(1, connections.missingConnections(host));
+
+        // our connection to it is rejected, but its host is known now
+        try {
+            connections.addChannelHandler(
+                    new Node("aabbcc", "127.0.0.1", 25500), newContext(), true);
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // pool full
+        }
+        Assert.assertEquals(0, connections.missingConnections(host));
+        Assert.assertEquals(1, connections.getHost2NodeID().size());
+
+        Assert.assertTrue(connections.removeChannelHandler(node, ctx));
+        Assert.assertTrue(connections.getHost2NodeID().isEmpty());
+        Assert.assertEquals(1, connections.missingConnections(host));
+    }
+
+    @Test
+    public void concurrentTest() throws Exception {
+        Connections connections = new Connections();
+        connections.setConnectionsPerPeer(2);
+
+        int threads = 8;
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < threads; ++i) {
+            Node node = new Node("node" + i, "127.0.0.1", 25500 + i);
+            new Thread(
+                            () -> {
+                                try {
+                                    for (int j = 0; j < 200; ++j) {
+                                        ChannelHandlerContext ctx1 = newContext();
+                                        ChannelHandlerContext ctx2 = newContext();
+                                        Assert.assertSame(
+                                                node,
+                                                connections.addChannelHandler(node, ctx1, true));
+                                        Assert.assertSame(
+                                                node,
+                                                connections.addChannelHandler(node, ctx2, false));
+                                        Assert.assertFalse(
+                                                connections.removeChannelHandler(node, ctx1));
+                                        Assert.assertTrue(
+                                                connections.removeChannelHandler(node, ctx2));
+                                    }
+                                } catch (Throwable e) {
+                                    failure.compareAndSet(null, e);
+                                } finally {
+                                    done.countDown();
+                                }
+                            })
+                    .start();
+        }
+
+        // heartbeats iterate while peers come and go
+        while (done.getCount() > 0) {
+            Assert.assertTrue(connections.activeChannelHandlers().size() <= threads * 2);
+        }
+        done.await();
+
+        if (failure.get() != null) {
+            throw new AssertionError("worker thread failed", failure.get());
+        }
+
+        Assert.assertTrue(connections.activeChannelHandlers().isEmpty());
+        Assert.assertTrue(connections.getHost2NodeID().isEmpty());
+    }
+}
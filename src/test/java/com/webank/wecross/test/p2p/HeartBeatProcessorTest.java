@@ -0,0 +1,88 @@
+package com.webank.wecross.test.p2p;
+
+import com.webank.wecross.network.p2p.netty.HeartBeatProcessor;
+import com.webank.wecross.network.p2p.netty.MessageType;
+import com.webank.wecross.network.p2p.netty.ProtocolVersionProcessor;
+import com.webank.wecross.network.p2p.netty.common.Node;
+import com.webank.wecross.network.p2p.netty.message.proto.Message;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageSerializer;
+import com.webank.wecross.zone.ZoneManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HeartBeatProcessorTest {
+    @Test
+    public void seqTest() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        ChannelHandlerContext ctx = channel.pipeline().firstContext();
+        Node node = new Node("aabbcc", "127.0.0.1", 25500);
+
+        ZoneManager zoneManager = new ZoneManager();
+        zoneManager.newSeq();
+
+        List<Integer> seqs = new ArrayList<>();
+        HeartBeatProcessor processor = new HeartBeatProcessor();
+        processor.setZoneManager(zoneManager);
+        processor.setSeqHandler((from, seq) -> seqs.add(seq));
+
+        // older routers get no seq
+        Message message = new MessageSerializer().deserialize(processor.getHeartBeat(ctx));
+        Assert.assertEquals(0, message.getData().readableBytes());
+        processor.process(ctx, node, message);
+        Assert.assertTrue(seqs.isEmpty());
+
+        new ProtocolVersionProcessor()
+                .process(
+                        ctx,
+                        node,
+                        Message.builder(
+                                MessageType.PROTOCOL_VERSION,
+                                new byte[] {Message.PROTOCOL_VERSION_1, 0}));
+        message = new MessageSerializer().deserialize(processor.getHeartBeat(ctx));
+        Assert.assertEquals(Message.PROTOCOL_VERSION_1, message.getVersion());
+        processor.process(ctx, node, message);
+        Assert.assertEquals(1, seqs.size());
+        Assert.assertEquals(zoneManager.getSeq(), seqs.get(0).intValue());
+    }
+
+    @Test
+    public void sharedHeartBeatTest() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        ChannelHandlerContext ctx = channel.pipeline().firstContext();
+        new ProtocolVersionProcessor()
+                .process(
+                        ctx,
+                        new Node("aabbcc", "127.0.0.1", 25500),
+                        Message.builder(
+                                MessageType.PROTOCOL_VERSION,
+                                new byte[] {Message.PROTOCOL_VERSION_1, 0}));
+
+        ZoneManager zoneManager = new ZoneManager();
+        zoneManager.newSeq();
+
+        HeartBeatProcessor processor = new HeartBeatProcessor();
+        processor.setZoneManager(zoneManager);
+
+        // written and released, the next one is still whole
+        ByteBuf heartBeat = processor.getHeartBeat(ctx);
+        int length = heartBeat.readableBytes();
+        heartBeat.skipBytes(length);
+        heartBeat.release();
+
+        heartBeat = processor.getHeartBeat(ctx);
+        Assert.assertEquals(length, heartBeat.readableBytes());
+        Message message = new MessageSerializer().deserialize(heartBeat);
+        Assert.assertEquals(zoneManager.getSeq(), message.getData().readInt());
+
+        // encoded again with the new seq
+        zoneManager.newSeq();
+        message = new MessageSerializer().deserialize(processor.getHeartBeat(ctx));
+        Assert.assertEquals(zoneManager.getSeq(), message.getData().readInt());
+    }
+}
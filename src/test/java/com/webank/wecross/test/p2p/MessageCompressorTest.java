@@ -0,0 +1,92 @@
+package com.webank.wecross.test.p2p;
+
+import com.webank.wecross.network.p2p.netty.MessageType;
+import com.webank.wecross.network.p2p.netty.message.proto.Message;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageCompressor;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageCompressorTest {
+    private MessageCompressor messageCompressor = new MessageCompressor();
+
+    private Message buildMessage(byte[] data) {
+        Message message = Message.builder(MessageType.RESOURCE_RESPONSE, data);
+        message.setVersion(Message.PROTOCOL_VERSION_1);
+        return message;
+    }
+
+    @Test
+    public void compressTest() throws Exception {
+        byte[] data = new byte[10000];
+        Arrays.fill(data, (byte) 'a');
+        Message message = buildMessage(data);
+
+        messageCompressor.compress(message);
+        Assert.assertTrue(message.isCompressed());
+        Assert.assertTrue(message.getData().readableBytes() < 1000);
+
+        MessageSerializer serializer = new MessageSerializer();
+        ByteBuf frame = serializer.serialize(UnpooledByteBufAllocator.DEFAULT, message);
+        Message decoded = serializer.deserialize(frame);
+        Assert.assertTrue(decoded.isCompressed());
+        Assert.assertEquals(MessageType.RESOURCE_RESPONSE, decoded.getType());
+
+        messageCompressor.decompress(decoded);
+        Assert.assertFalse(decoded.isCompressed());
+        Assert.assertArrayEquals(data, ByteBufUtil.getBytes(decoded.getData()));
+    }
+
+    @Test
+    public void notCompressedTest() throws Exception {
+        // below the threshold
+        Message message = buildMessage(new byte[100]);
+        messageCompressor.compress(message);
+        Assert.assertFalse(message.isCompressed());
+
+        // no gain
+        byte[] data = new byte[10000];
+        new Random(1).nextBytes(data);
+        message = buildMessage(data);
+        messageCompressor.compress(message);
+        Assert.assertFalse(message.isCompressed());
+        Assert.assertEquals(10000, message.getData().readableBytes());
+
+        // version 0 headers have no compressed flag
+        message = buildMessage(new byte[10000]);
+        message.setVersion(Message.PROTOCOL_VERSION_0);
+        messageCompressor.compress(message);
+        Assert.assertFalse(message.isCompressed());
+    }
+
+    @Test
+    public void invalidDataTest() throws Exception {
+        Message message = buildMessage(new byte[10000]);
+        messageCompressor.compress(message);
+        Assert.assertTrue(message.isCompressed());
+
+        // announce more data than the stream holds
+        message.getData().setInt(message.getData().readerIndex(), 10001);
+        try {
+            messageCompressor.decompress(message);
+            Assert.fail("Length mismatch not detected");
+        } catch (IOException e) {
+            // expected
+        }
+
+        message = buildMessage(new byte[10]);
+        message.setCompressed(true);
+        try {
+            messageCompressor.decompress(message);
+            Assert.fail("Invalid stream not detected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.webank.wecross.test.p2p;
+
+import com.webank.wecross.network.p2p.netty.MessageType;
+import com.webank.wecross.network.p2p.netty.message.proto.Message;
+import com.webank.wecross.network.p2p.netty.message.serialize.MessageSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageSerializerTest {
+    @Test
+    public void serializeTest() throws Exception {
+        byte[] data = new byte[] {1, 2, 3, 4, 5};
+        Message message = Message.builder(MessageType.RESOURCE_REQUEST, data);
+        message.setSeq(Long.MAX_VALUE - 1);
+        message.setVersion(Message.PROTOCOL_VERSION_1);
+
+        MessageSerializer serializer = new MessageSerializer();
+        ByteBuf frame = serializer.serialize(UnpooledByteBufAllocator.DEFAULT, message);
+        Assert.assertEquals(Message.V1_HEADER_LENGTH + data.length, frame.readableBytes());
+        Assert.assertEquals(frame.readableBytes(), frame.capacity());
+
+        Assert.assertEquals(
+                MessageType.RESOURCE_REQUEST.shortValue(), MessageSerializer.peekType(frame));
+        Message decoded = serializer.deserialize(frame);
+        Assert.assertEquals(message.getSeq(), decoded.getSeq());
+        Assert.assertEquals(message.getType(), decoded.getType());
+        Assert.assertEquals(message.getLength(), decoded.getLength());
+        Assert.assertEquals(Message.PROTOCOL_VERSION_1, decoded.getVersion());
+
+        ByteBuf body = decoded.getData();
+        Assert.assertEquals(data.length, body.readableBytes());
+        byte[] bodyBytes = new byte[body.readableBytes()];
+        body.getBytes(body.readerIndex(), bodyBytes);
+        Assert.assertArrayEquals(data, bodyBytes);
+
+        // the body is a view of the frame, releasing the frame releases it
+        Assert.assertEquals(1, body.refCnt());
+        frame.release();
+        Assert.assertEquals(0, body.refCnt());
+    }
+
+    @Test
+    public void legacyHeaderTest() throws Exception {
+        MessageSerializer serializer = new MessageSerializer();
+
+        Message message = Message.builder(MessageType.HEARTBEAT);
+        message.setSeq(0x1234);
+        ByteBuf frame = serializer.serialize(UnpooledByteBufAllocator.DEFAULT, message);
+        Assert.assertEquals(Message.HEADER_LENGTH, frame.readableBytes());
+        Assert.assertEquals(MessageType.HEARTBEAT.shortValue(), MessageSerializer.peekType(frame));
+
+        Message decoded = serializer.deserialize(frame);
+        Assert.assertEquals(Message.PROTOCOL_VERSION_0, decoded.getVersion());
+        Assert.assertEquals(MessageType.HEARTBEAT, decoded.getType());
+        Assert.assertEquals(0x1234, decoded.getSeq());
+
+        // seqs of older routers are echoed back as they were
+        String uuid = "0123456789abcdef0123456789abcdef";
+        message.setLegacySeq(uuid);
+        decoded =
+                serializer.deserialize(
+                        serializer.serialize(UnpooledByteBufAllocator.DEFAULT, message));
+        Assert.assertEquals(uuid, decoded.getLegacySeq());
+        decoded.setType(MessageType.RESOURCE_RESPONSE);
+        decoded =
+                serializer.deserialize(
+                        serializer.serialize(UnpooledByteBufAllocator.DEFAULT, decoded));
+        Assert.assertEquals(uuid, decoded.getLegacySeq());
+        Assert.assertEquals(MessageType.RESOURCE_RESPONSE, decoded.getType());
+    }
+}
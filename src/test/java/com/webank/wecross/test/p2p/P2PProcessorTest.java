@@ -1,8 +1,16 @@
 package com.webank.wecross.test.p2p;
 
+import com.webank.wecross.common.NetworkQueryStatus;
+import com.webank.wecross.network.NetworkCallback;
+import com.webank.wecross.network.NetworkMessage;
 import com.webank.wecross.network.p2p.P2PProcessor;
+import com.webank.wecross.network.p2p.P2PService;
 import com.webank.wecross.network.p2p.netty.common.Node;
 import com.webank.wecross.peer.Peer;
+import com.webank.wecross.peer.PeerManager;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class P2PProcessorTest {
@@ -18,4 +26,48 @@ public class P2PProcessorTest {
         // NetworkResponse<Object> response = p2pProcessor.onStatusMessage(peer, method,
         // p2pRequestString);
     }
+
+    @Test
+    public void peerInfoDeltaFallbackTest() {
+        List<String> methods = new ArrayList<String>();
+        List<Integer> statuses = new ArrayList<Integer>();
+        P2PService p2pService =
+                new P2PService() {
+                    @Override
+                    public <T> void asyncSendMessage(
+                            Peer peer, NetworkMessage<T> msg, NetworkCallback<?> callback) {
+                        methods.add(msg.getMethod());
+                        executeCallback(callback, statuses.remove(0), "failed", null);
+                    }
+                };
+
+        PeerManager peerManager = new PeerManager();
+        Peer peer = peerManager.addPeerInfo(new Node("123456", "127.0.0.1", 25500));
+        P2PProcessor p2pProcessor = new P2PProcessor();
+        p2pProcessor.setPeerManager(peerManager);
+        p2pProcessor.setP2PService(p2pService);
+
+        // a failed delta request is retried as a full one, the peer keeps getting delta requests
+        statuses.add(NetworkQueryStatus.INTERNAL_ERROR);
+        statuses.add(NetworkQueryStatus.INTERNAL_ERROR);
+        p2pProcessor.onPeerSeq(peer, 1);
+        Assert.assertTrue(peer.isPeerInfoDeltaSupported());
+
+        // peers not knowing the method are asked for full peer info only
+        statuses.add(NetworkQueryStatus.METHOD_ERROR);
+        statuses.add(NetworkQueryStatus.INTERNAL_ERROR);
+        p2pProcessor.onPeerSeq(peer, 1);
+        Assert.assertFalse(peer.isPeerInfoDeltaSupported());
+
+        statuses.add(NetworkQueryStatus.INTERNAL_ERROR);
+        p2pProcessor.onPeerSeq(peer, 1);
+
+        List<String> expected = new ArrayList<String>();
+        expected.add(P2PProcessor.REQUEST_PEER_INFO_DELTA_METHOD);
+        expected.add("requestPeerInfo");
+        expected.add(P2PProcessor.REQUEST_PEER_INFO_DELTA_METHOD);
+        expected.add("requestPeerInfo");
+        expected.add("requestPeerInfo");
+        Assert.assertEquals(expected, methods);
+    }
 }
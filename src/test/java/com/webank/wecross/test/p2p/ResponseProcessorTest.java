@@ -0,0 +1,98 @@
+package com.webank.wecross.test.p2p;
+
+import com.webank.wecross.network.p2p.netty.MessageType;
+import com.webank.wecross.network.p2p.netty.ResponseProcessor;
+import com.webank.wecross.network.p2p.netty.SeqMapper;
+import com.webank.wecross.network.p2p.netty.common.Node;
+import com.webank.wecross.network.p2p.netty.message.proto.Message;
+import com.webank.wecross.network.p2p.netty.response.Response;
+import com.webank.wecross.network.p2p.netty.response.ResponseCallBack;
+import com.webank.wecross.network.p2p.netty.response.StatusCode;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResponseProcessorTest {
+    private Node node = new Node("aabbcc", "127.0.0.1", 25500);
+    private SeqMapper seqMapper = new SeqMapper();
+    private ResponseProcessor responseProcessor = new ResponseProcessor();
+    private List<Response> responses = new ArrayList<Response>();
+
+    private ChannelHandlerContext newContext() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        return channel.pipeline().firstContext();
+    }
+
+    private ResponseCallBack sendRequest(ChannelHandlerContext ctx) {
+        Message request = Message.builder(MessageType.RESOURCE_REQUEST, "request");
+        request.setSeq(seqMapper.newSeq());
+
+        ResponseCallBack callback =
+                new ResponseCallBack() {
+                    @Override
+                    public void onResponse(Response response) {
+                        responses.add(response);
+                    }
+
+                    @Override
+                    public boolean needOnResponse() {
+                        return true;
+                    }
+                };
+        callback.setMessage(request);
+        callback.setSeqMapper(seqMapper);
+        callback.setCtx(ctx);
+        seqMapper.add(request.getSeq(), callback);
+        return callback;
+    }
+
+    private Message newResponse(long seq) {
+        Message response = Message.builder(MessageType.RESOURCE_RESPONSE, "response");
+        response.setSeq(seq);
+        response.setResult(StatusCode.SUCCESS);
+        return response;
+    }
+
+    @Test
+    public void otherChannelTest() throws Exception {
+        responseProcessor.setSeqMapper(seqMapper);
+        ChannelHandlerContext ctx = newContext();
+        ResponseCallBack callback = sendRequest(ctx);
+        long seq = callback.getMessage().getSeq();
+
+        // a response with the seq of a request sent to another channel is dropped
+        responseProcessor.process(newContext(), node, newResponse(seq));
+        Assert.assertTrue(responses.isEmpty());
+        Assert.assertEquals(callback, seqMapper.get(seq));
+
+        responseProcessor.process(ctx, node, newResponse(seq));
+        Assert.assertEquals(1, responses.size());
+        Assert.assertEquals(StatusCode.SUCCESS, responses.get(0).getErrorCode());
+        Assert.assertEquals(0, seqMapper.size());
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        responseProcessor.setSeqMapper(seqMapper);
+        ChannelHandlerContext ctx = newContext();
+
+        // a timeout after the response does not call back again
+        ResponseCallBack answered = sendRequest(ctx);
+        responseProcessor.process(ctx, node, newResponse(answered.getMessage().getSeq()));
+        answered.onTimeout();
+        Assert.assertEquals(1, responses.size());
+        Assert.assertEquals(StatusCode.SUCCESS, responses.get(0).getErrorCode());
+
+        // nor does a response after the timeout
+        ResponseCallBack timedOut = sendRequest(ctx);
+        timedOut.onTimeout();
+        responseProcessor.process(ctx, node, newResponse(timedOut.getMessage().getSeq()));
+        Assert.assertEquals(2, responses.size());
+        Assert.assertEquals(StatusCode.TIMEOUT, responses.get(1).getErrorCode());
+        Assert.assertEquals(0, seqMapper.size());
+    }
+}
@@ -0,0 +1,29 @@
+package com.webank.wecross.test.p2p;
+
+import com.webank.wecross.network.p2p.netty.SeqMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SeqMapperTest {
+    @Test
+    public void seqMapperTest() throws Exception {
+        SeqMapper seqMapper = new SeqMapper();
+        long seq1 = seqMapper.newSeq();
+        long seq2 = seqMapper.newSeq();
+        Assert.assertTrue(seq1 != 0);
+        Assert.assertTrue(seq1 != seq2);
+
+        Object callback = new Object();
+        seqMapper.add(seq1, callback);
+        seqMapper.add(seq2, "other");
+        Assert.assertEquals(2, seqMapper.size());
+        Assert.assertEquals(callback, seqMapper.get(seq1));
+
+        Assert.assertEquals(callback, seqMapper.getAndRemove(seq1));
+        Assert.assertNull(seqMapper.getAndRemove(seq1));
+        Assert.assertNull(seqMapper.get(seq1));
+
+        seqMapper.remove(seq2);
+        Assert.assertEquals(0, seqMapper.size());
+    }
+}
@@ -0,0 +1,118 @@
+package com.webank.wecross.test.p2p;
+
+import com.webank.wecross.network.p2p.netty.channel.handler.SerialExecutor;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SerialExecutorTest {
+    @Test
+    public void fairnessTest() throws Exception {
+        // a pool run by hand, one task at a time
+        Queue<Runnable> pool = new LinkedList<>();
+        List<String> trace = new ArrayList<>();
+
+        SerialExecutor busy = new SerialExecutor(pool::add, 100, 2);
+        SerialExecutor quiet = new SerialExecutor(pool::add, 100, 2);
+        for (int i = 0; i < 5; ++i) {
+            String name = "busy" + i;
+            busy.execute(() -> trace.add(name));
+        }
+        quiet.execute(() -> trace.add("quiet0"));
+
+        // one drain per peer is queued, whatever the number of tasks
+        Assert.assertEquals(2, pool.size());
+        Assert.assertEquals(5, busy.size());
+
+        while (!pool.isEmpty()) {
+            pool.poll().run();
+        }
+
+        // tasks keep their order, the busy peer yields after a batch
+        List<String> expected = new ArrayList<>();
+        expected.add("busy0");
+        expected.add("busy1");
+        expected.add("quiet0");
+        expected.add("busy2");
+        expected.add("busy3");
+        expected.add("busy4");
+        Assert.assertEquals(expected, trace);
+        Assert.assertEquals(0, busy.size());
+    }
+
+    @Test
+    public void capacityTest() throws Exception {
+        Queue<Runnable> pool = new LinkedList<>();
+        SerialExecutor executor = new SerialExecutor(pool::add, 2, 16);
+        executor.execute(() -> {});
+        executor.execute(() -> {});
+        try {
+            executor.execute(() -> {});
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // full
+        }
+
+        // connection events are queued anyway
+        executor.executeUnbounded(() -> {});
+        Assert.assertEquals(3, executor.size());
+
+        pool.poll().run();
+        Assert.assertEquals(0, executor.size());
+        Assert.assertTrue(pool.isEmpty());
+    }
+
+    private SerialExecutor.RejectableTask newTask(List<String> trace, String name) {
+        return new SerialExecutor.RejectableTask() {
+            @Override
+            public void run() {
+                trace.add(name);
+            }
+
+            @Override
+            public void reject() {
+                trace.add("reject " + name);
+            }
+        };
+    }
+
+    @Test
+    public void poolRejectedTest() throws Exception {
+        Queue<Runnable> pool = new LinkedList<>();
+        AtomicBoolean full = new AtomicBoolean(true);
+        List<String> trace = new ArrayList<>();
+        SerialExecutor executor =
+                new SerialExecutor(
+                        task -> {
+                            if (full.get()) {
+                                throw new RejectedExecutionException("pool full");
+                            }
+                            pool.add(task);
+                        },
+                        100,
+                        16);
+
+        // requests are rejected, connection events still run
+        executor.execute(newTask(trace, "request0"));
+        executor.executeUnbounded(() -> trace.add("connect"));
+        Assert.assertEquals(0, executor.size());
+        Assert.assertTrue(pool.isEmpty());
+
+        full.set(false);
+        executor.execute(newTask(trace, "request1"));
+        Assert.assertEquals(1, pool.size());
+        pool.poll().run();
+
+        List<String> expected = new ArrayList<>();
+        expected.add("reject request0");
+        expected.add("connect");
+        expected.add("request1");
+        Assert.assertEquals(expected, trace);
+        Assert.assertEquals(0, executor.size());
+    }
+}
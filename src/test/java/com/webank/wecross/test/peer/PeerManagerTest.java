@@ -1,7 +1,11 @@
 package com.webank.wecross.test.peer;
 
+import com.webank.wecross.network.p2p.codec.BinaryCodec;
+import com.webank.wecross.network.p2p.netty.DisconnectProcessor;
 import com.webank.wecross.network.p2p.netty.common.Node;
+import com.webank.wecross.peer.Peer;
 import com.webank.wecross.peer.PeerManager;
+import com.webank.wecross.zone.ZoneManager;
 import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -42,4 +46,25 @@ public class PeerManagerTest {
         Assert.assertNull(peerManager.getPeerInfo(new Node("node2", "", 8889)));
         Assert.assertNotNull(peerManager.getPeerInfo(new Node("node1", "", 8888)));
     }
+
+    @Test
+    public void disconnectTest() {
+        PeerManager peerManager = new PeerManager();
+        Node node = new Node("node1", "", 8888);
+        Peer peer = peerManager.addPeerInfo(node);
+
+        Assert.assertTrue(peer.startCodecNegotiation());
+        Assert.assertFalse(peer.startCodecNegotiation());
+        peer.setCodec(BinaryCodec.BINARY);
+
+        DisconnectProcessor disconnectProcessor = new DisconnectProcessor();
+        disconnectProcessor.setPeerManager(peerManager);
+        disconnectProcessor.setZoneManager(new ZoneManager());
+        disconnectProcessor.process(null, node, null);
+
+        // the peer may come back as an older version, negotiate again
+        Assert.assertNull(peerManager.getPeerInfo(node));
+        Assert.assertEquals(BinaryCodec.JSON, peer.getCodec());
+        Assert.assertTrue(peer.startCodecNegotiation());
+    }
 }
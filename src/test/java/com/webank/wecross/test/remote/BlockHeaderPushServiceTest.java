@@ -0,0 +1,219 @@
+package com.webank.wecross.test.remote;
+
+import static com.webank.wecross.test.Mock.BlockHeaderManagerFixture.getBlockNumber;
+import static com.webank.wecross.test.Mock.BlockHeaderManagerFixture.newChain;
+import static com.webank.wecross.test.Mock.BlockHeaderManagerFixture.newManager;
+import static com.webank.wecross.test.Mock.BlockHeaderManagerFixture.waitFor;
+import static com.webank.wecross.test.Mock.BlockHeaderManagerFixture.waitForBlockNumber;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.webank.wecross.common.NetworkQueryStatus;
+import com.webank.wecross.network.NetworkCallback;
+import com.webank.wecross.network.NetworkMessage;
+import com.webank.wecross.network.NetworkResponse;
+import com.webank.wecross.network.p2p.P2PService;
+import com.webank.wecross.network.p2p.netty.common.Node;
+import com.webank.wecross.peer.Peer;
+import com.webank.wecross.peer.PeerManager;
+import com.webank.wecross.remote.BlockHeaderMessageData;
+import com.webank.wecross.remote.BlockHeaderPushService;
+import com.webank.wecross.resource.Resource;
+import com.webank.wecross.stub.Connection;
+import com.webank.wecross.stubmanager.MemoryBlockHeaderManager;
+import com.webank.wecross.test.Mock.MockDriver;
+import com.webank.wecross.zone.Chain;
+import com.webank.wecross.zone.ChainInfo;
+import com.webank.wecross.zone.Zone;
+import com.webank.wecross.zone.ZoneManager;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class BlockHeaderPushServiceTest {
+    private static final String CHAIN_PATH = "payment.chain";
+
+    /** Delivers messages straight to the push service of the other router */
+    private static class LoopbackP2PService extends P2PService {
+        private Peer self;
+        private BlockHeaderPushService target;
+        private AtomicInteger pushes = new AtomicInteger(0);
+
+        @Override
+        public <T> void asyncSendMessage(
+                Peer peer, NetworkMessage<T> msg, NetworkCallback<?> callback) {
+            BlockHeaderMessageData data = (BlockHeaderMessageData) msg.getData();
+            NetworkResponse<Object> response = new NetworkResponse<Object>();
+            try {
+                if (target == null) {
+                    // a router without push support
+                    executeCallback(
+                            callback,
+                            NetworkQueryStatus.METHOD_ERROR,
+                            "Unsupported method: " + msg.getMethod(),
+                            null);
+                    return;
+                }
+
+                if (BlockHeaderPushService.SUBSCRIBE_METHOD.equals(msg.getMethod())) {
+                    target.onSubscribe(self, data);
+                } else {
+                    pushes.incrementAndGet();
+                    response.setData(target.onBlockHeader(self, data));
+                }
+                executeCallback(callback, NetworkQueryStatus.SUCCESS, "success", response);
+            } catch (Exception e) {
+                executeCallback(callback, NetworkQueryStatus.INTERNAL_ERROR, e.getMessage(), null);
+            }
+        }
+    }
+
+    private Peer peerA = new Peer(new Node("nodeA", "127.0.0.1", 25500));
+    private Peer peerB = new Peer(new Node("nodeB", "127.0.0.1", 25501));
+
+    // router A owns the chain, router B reaches it through A
+    private MockDriver driverA = new MockDriver();
+    private MockDriver driverB = new MockDriver();
+    private MemoryBlockHeaderManager managerA;
+    private MemoryBlockHeaderManager managerB;
+    private Chain chainB;
+    private BlockHeaderPushService serviceA = new BlockHeaderPushService();
+    private BlockHeaderPushService serviceB = new BlockHeaderPushService();
+    private LoopbackP2PService p2pServiceA = new LoopbackP2PService();
+    private LoopbackP2PService p2pServiceB = new LoopbackP2PService();
+
+    private ZoneManager newZoneManager(Chain chain, P2PService p2pService) {
+        Map<String, Chain> chains = new HashMap<String, Chain>();
+        chains.put("chain", chain);
+        Zone zone = new Zone();
+        zone.setChains(chains);
+        Map<String, Zone> zones = new HashMap<String, Zone>();
+        zones.put("payment", zone);
+
+        ZoneManager zoneManager = new ZoneManager();
+        zoneManager.setZones(zones);
+        zoneManager.setP2PService(p2pService);
+        return zoneManager;
+    }
+
+    private void startRouters() throws Exception {
+        ChainInfo chainInfo = new ChainInfo();
+        chainInfo.setName("chain");
+
+        Chain chainA = newChain("payment", driverA);
+        managerA = newManager(chainA);
+        chainA.setBlockHeaderManager(managerA);
+        PeerManager peerManagerA = new PeerManager();
+        peerManagerA.addPeerInfo(peerB.getNode());
+        serviceA.setZoneManager(newZoneManager(chainA, p2pServiceA));
+        serviceA.setPeerManager(peerManagerA);
+
+        // the remote chain is only polled once a second unless pushed
+        chainB = new Chain("payment", chainInfo, driverB, null);
+        Map<Peer, Connection> connections = new HashMap<Peer, Connection>();
+        connections.put(peerA, Mockito.mock(Connection.class));
+        Resource resource = new Resource();
+        resource.setConnection(connections);
+        Map<String, Resource> resources = new HashMap<String, Resource>();
+        resources.put("resource", resource);
+        chainB.setResources(resources);
+        managerB = newManager(chainB);
+        chainB.setBlockHeaderManager(managerB);
+        managerB.setGetBlockNumberDelay(1000);
+        managerB.setMinPollDelay(1000);
+        managerB.setMaxPollDelay(1000);
+        serviceB.setZoneManager(newZoneManager(chainB, p2pServiceB));
+        serviceB.setPeerManager(new PeerManager());
+
+        p2pServiceA.self = peerA;
+        p2pServiceB.self = peerB;
+        p2pServiceB.target = serviceA;
+        p2pServiceA.target = serviceB;
+
+        driverA.setBlockNumber(10);
+        driverB.setBlockNumber(10);
+        managerA.start();
+        managerB.start();
+        waitForBlockNumber(managerA, 10);
+        waitForBlockNumber(managerB, 10);
+    }
+
+    private void stopRouters() {
+        managerA.stop();
+        managerB.stop();
+    }
+
+    @Test
+    public void pushTest() throws Exception {
+        startRouters();
+        serviceB.subscribeRemoteChain(peerA, CHAIN_PATH, chainB);
+        assertTrue(managerB.isPushEnabled());
+
+        // new blocks of A reach B by push, B's own polling does not see them
+        for (long i = 11; i <= 15; ++i) {
+            driverA.setBlockNumber(i);
+            waitForBlockNumber(managerA, i);
+        }
+        waitForBlockNumber(managerB, 15);
+        assertEquals(5, p2pServiceA.pushes.get());
+        stopRouters();
+    }
+
+    @Test
+    public void unsubscribeTest() throws Exception {
+        startRouters();
+        serviceB.subscribeRemoteChain(peerA, CHAIN_PATH, chainB);
+        driverA.setBlockNumber(11);
+        waitForBlockNumber(managerB, 11);
+
+        // B falls back to polling, and tells A to stop pushing on the next push
+        serviceB.onRemotePeerRemoved(peerA, CHAIN_PATH, chainB);
+        assertFalse(managerB.isPushEnabled());
+
+        driverA.setBlockNumber(12);
+        waitFor(() -> p2pServiceA.pushes.get() == 2);
+        driverA.setBlockNumber(13);
+        waitForBlockNumber(managerA, 13);
+        Thread.sleep(100);
+        assertEquals(2, p2pServiceA.pushes.get());
+        assertEquals(11, getBlockNumber(managerB));
+        stopRouters();
+    }
+
+    @Test
+    public void fallbackTest() throws Exception {
+        startRouters();
+        // A does not support push, B keeps polling
+        p2pServiceB.target = null;
+        serviceB.subscribeRemoteChain(peerA, CHAIN_PATH, chainB);
+        assertFalse(managerB.isPushEnabled());
+
+        driverB.setBlockNumber(11);
+        waitForBlockNumber(managerB, 11);
+        stopRouters();
+    }
+
+    @Test
+    public void unsubscribedPeerTest() throws Exception {
+        startRouters();
+        serviceB.subscribeRemoteChain(peerA, CHAIN_PATH, chainB);
+
+        // headers of the chain pushed by a peer B did not subscribe it from are rejected
+        Peer peerC = new Peer(new Node("nodeC", "127.0.0.1", 25502));
+        BlockHeaderMessageData data = new BlockHeaderMessageData();
+        data.setPath(CHAIN_PATH);
+        data.setBlockNumber(11);
+        data.setBlockHeader(MockDriver.encodeBlockHeader(11));
+        assertFalse(serviceB.onBlockHeader(peerC, data));
+        assertFalse(serviceB.onBlockHeader(null, data));
+        Thread.sleep(100);
+        assertEquals(10, getBlockNumber(managerB));
+
+        assertTrue(serviceB.onBlockHeader(peerA, data));
+        waitForBlockNumber(managerB, 11);
+        stopRouters();
+    }
+}
@@ -0,0 +1,106 @@
+package com.webank.wecross.test.resource;
+
+import com.webank.wecross.network.p2p.netty.common.Node;
+import com.webank.wecross.peer.Peer;
+import com.webank.wecross.remote.RemoteConnection;
+import com.webank.wecross.resource.balancer.ConnectionBalancer;
+import com.webank.wecross.resource.balancer.ConnectionBalancerFactory;
+import com.webank.wecross.stub.Connection;
+import com.webank.wecross.stub.ResourceInfo;
+import com.webank.wecross.zone.Chain;
+import com.webank.wecross.zone.ChainInfo;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConnectionBalancerTest {
+    private RemoteConnection newConnection(String nodeID) {
+        RemoteConnection connection = new RemoteConnection();
+        connection.setPeer(new Peer(new Node(nodeID, "127.0.0.1", 25500)));
+        connection.setPath("a.b.c");
+        return connection;
+    }
+
+    @Test
+    public void ewmaTest() throws Exception {
+        RemoteConnection fast = newConnection("aa");
+        RemoteConnection slow = newConnection("bb");
+        fast.getStats().addLatency(1000000);
+        slow.getStats().addLatency(100000000);
+
+        ConnectionBalancer balancer =
+                ConnectionBalancerFactory.build(ConnectionBalancerFactory.EWMA);
+        Connection[] connections = new Connection[] {fast, slow};
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertSame(fast, balancer.choose(connections));
+        }
+
+        // queued requests make the fast one wait longer
+        for (int i = 0; i < 200; ++i) {
+            fast.getStats().start();
+        }
+        Assert.assertSame(slow, balancer.choose(connections));
+    }
+
+    @Test
+    public void leastOutstandingTest() throws Exception {
+        RemoteConnection busy = newConnection("aa");
+        RemoteConnection idle = newConnection("bb");
+        long start = busy.getStats().start();
+
+        ConnectionBalancer balancer =
+                ConnectionBalancerFactory.build(ConnectionBalancerFactory.LEAST_OUTSTANDING);
+        Connection[] connections = new Connection[] {busy, idle};
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertSame(idle, balancer.choose(connections));
+        }
+
+        busy.getStats().end(start);
+        Assert.assertEquals(0, busy.getStats().getOutstanding());
+        Assert.assertTrue(busy.getStats().getLatency() > 0);
+    }
+
+    @Test
+    public void randomTest() throws Exception {
+        ConnectionBalancer balancer =
+                ConnectionBalancerFactory.build(ConnectionBalancerFactory.RANDOM);
+        Connection[] connections = new Connection[] {newConnection("aa"), newConnection("bb")};
+
+        Set<Connection> chosen = new HashSet<>();
+        for (int i = 0; i < 1000; ++i) {
+            chosen.add(balancer.choose(connections));
+        }
+        Assert.assertEquals(2, chosen.size());
+    }
+
+    @Test
+    public void chainConnectionsTest() throws Exception {
+        ChainInfo chainInfo = new ChainInfo();
+        chainInfo.setName("b");
+        Chain chain = new Chain("a", chainInfo, null, null);
+        Assert.assertNull(chain.chooseConnection());
+
+        ResourceInfo resourceInfo = new ResourceInfo();
+        resourceInfo.setName("c");
+        RemoteConnection connection0 = newConnection("aa");
+        RemoteConnection connection1 = newConnection("bb");
+        chain.addRemoteResource(connection0.getPeer(), resourceInfo, connection0);
+        Assert.assertSame(connection0, chain.chooseConnection());
+        Assert.assertSame(connection0, chain.getResource("c").chooseConnection());
+
+        chain.addRemoteResource(connection1.getPeer(), resourceInfo, connection1);
+        Set<Connection> chosen = new HashSet<>();
+        for (int i = 0; i < 1000; ++i) {
+            chosen.add(chain.chooseConnection());
+        }
+        Assert.assertEquals(2, chosen.size());
+
+        // removed from the resource, not chosen by the chain any more
+        chain.getResource("c").removeConnection(connection0.getPeer());
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertSame(connection1, chain.chooseConnection());
+            Assert.assertSame(connection1, chain.getResource("c").chooseConnection());
+        }
+    }
+}
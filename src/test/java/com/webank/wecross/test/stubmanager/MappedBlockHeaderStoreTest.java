@@ -0,0 +1,204 @@
+package com.webank.wecross.test.stubmanager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.webank.wecross.stub.Connection;
+import com.webank.wecross.stubmanager.MappedBlockHeaderStore;
+import com.webank.wecross.stubmanager.PersistentBlockHeaderManager;
+import com.webank.wecross.test.Mock.BlockHeaderManagerFixture;
+import com.webank.wecross.test.Mock.MockDriver;
+import com.webank.wecross.zone.Chain;
+import com.webank.wecross.zone.ChainInfo;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+public class MappedBlockHeaderStoreTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] buildData(long number) {
+        return ("block header " + number).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void appendAndReopenTest() throws Exception {
+        File dir = folder.newFolder("chain");
+        MappedBlockHeaderStore store = new MappedBlockHeaderStore(dir, "checksum", 1024, 100);
+        assertTrue(store.isEmpty());
+
+        for (long i = 10; i <= 200; ++i) {
+            store.append(i, buildData(i));
+        }
+        // duplicated and out of order headers are ignored
+        store.append(100, buildData(0));
+        store.append(5, buildData(5));
+
+        assertEquals(10, store.getFirstBlockNumber());
+        assertEquals(200, store.getLastBlockNumber());
+        assertArrayEquals(buildData(100), store.get(100));
+        assertNull(store.get(5));
+        assertNull(store.get(201));
+        store.flush();
+
+        store = new MappedBlockHeaderStore(dir, "checksum", 1024, 100);
+        assertEquals(10, store.getFirstBlockNumber());
+        assertEquals(200, store.getLastBlockNumber());
+        for (long i = 10; i <= 200; ++i) {
+            assertArrayEquals(buildData(i), store.get(i));
+        }
+
+        // a gap goes on in the same segment
+        store.append(300, buildData(300));
+        assertNull(store.get(250));
+        assertArrayEquals(buildData(300), store.get(300));
+    }
+
+    @Test
+    public void gapTest() throws Exception {
+        File dir = folder.newFolder("chain");
+        MappedBlockHeaderStore store = new MappedBlockHeaderStore(dir, "checksum", 4096, 100);
+
+        for (long i = 0; i < 50; ++i) {
+            store.append(i * 10, buildData(i * 10));
+        }
+        assertEquals(1, dir.listFiles((d, name) -> name.endsWith(".seg")).length);
+        store.flush();
+
+        store = new MappedBlockHeaderStore(dir, "checksum", 4096, 100);
+        assertEquals(0, store.getFirstBlockNumber());
+        assertEquals(490, store.getLastBlockNumber());
+        for (long i = 0; i < 490; ++i) {
+            if (i % 10 == 0) {
+                assertArrayEquals(buildData(i), store.get(i));
+            } else {
+                assertNull(store.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void retentionTest() throws Exception {
+        File dir = folder.newFolder("chain");
+        MappedBlockHeaderStore store = new MappedBlockHeaderStore(dir, "checksum", 256, 2);
+
+        for (long i = 0; i < 100; ++i) {
+            store.append(i, buildData(i));
+        }
+
+        assertTrue(store.getFirstBlockNumber() > 0);
+        assertNull(store.get(0));
+        assertArrayEquals(buildData(99), store.get(99));
+        assertEquals(2, dir.listFiles((d, name) -> name.endsWith(".seg")).length);
+    }
+
+    @Test
+    public void checksumChangedTest() throws Exception {
+        File dir = folder.newFolder("chain");
+        MappedBlockHeaderStore store = new MappedBlockHeaderStore(dir, "checksum", 1024, 10);
+        store.append(1, buildData(1));
+
+        store = new MappedBlockHeaderStore(dir, "another", 1024, 10);
+        assertTrue(store.isEmpty());
+        assertNull(store.get(1));
+    }
+
+    @Test
+    public void resetTest() throws Exception {
+        File dir = folder.newFolder("chain");
+        MappedBlockHeaderStore store = new MappedBlockHeaderStore(dir, "checksum", 256, 10);
+        for (long i = 0; i < 100; ++i) {
+            store.append(i, buildData(i));
+        }
+
+        assertFalse(store.reset("checksum"));
+        assertArrayEquals(buildData(99), store.get(99));
+
+        assertTrue(store.reset("another"));
+        assertTrue(store.isEmpty());
+        assertNull(store.get(99));
+        assertEquals(0, dir.listFiles((d, name) -> name.endsWith(".seg")).length);
+
+        store.append(200, buildData(200));
+        store = new MappedBlockHeaderStore(dir, "another", 256, 10);
+        assertArrayEquals(buildData(200), store.get(200));
+    }
+
+    @Test
+    public void checksumRevalidatedTest() throws Exception {
+        File dir = folder.newFolder("chain");
+        MappedBlockHeaderStore store = new MappedBlockHeaderStore(dir, "checksum", 1024, 10);
+        for (long i = 1; i <= 10; ++i) {
+            store.append(i, MockDriver.encodeBlockHeader(i));
+        }
+
+        MockDriver driver = new MockDriver();
+        driver.setBlockNumber(10);
+        ChainInfo chainInfo = new ChainInfo();
+        chainInfo.setName("chain");
+        chainInfo.setChecksum("checksum");
+        Chain chain = new Chain("zone", chainInfo, driver, null);
+
+        ThreadPoolTaskExecutor threadPool = new ThreadPoolTaskExecutor();
+        threadPool.initialize();
+        PersistentBlockHeaderManager manager = new PersistentBlockHeaderManager();
+        manager.setThreadPool(threadPool);
+        manager.setChain(chain);
+        manager.setBlockHeaderStore(store);
+
+        CompletableFuture<byte[]> stored = new CompletableFuture<>();
+        manager.asyncGetBlockHeader(5, (e, data) -> stored.complete(data));
+        assertArrayEquals(MockDriver.encodeBlockHeader(5), stored.get(5, TimeUnit.SECONDS));
+        assertEquals(0, driver.getBlockHeaderRequests());
+
+        // the background revalidation found the cached checksum stale
+        chain.updateChecksum("rebuilt");
+
+        CompletableFuture<byte[]> fetched = new CompletableFuture<>();
+        manager.asyncGetBlockHeader(5, (e, data) -> fetched.complete(data));
+        assertArrayEquals(MockDriver.encodeBlockHeader(5), fetched.get(5, TimeUnit.SECONDS));
+        assertEquals(1, driver.getBlockHeaderRequests());
+        assertTrue(store.isEmpty());
+        assertEquals("rebuilt", store.getChecksum());
+    }
+
+    @Test
+    public void warmStartFarBehindTest() throws Exception {
+        File dir = folder.newFolder("chain");
+        MappedBlockHeaderStore store = new MappedBlockHeaderStore(dir, "checksum", 1024, 10);
+        for (long i = 1; i <= 10; ++i) {
+            store.append(i, MockDriver.encodeBlockHeader(i));
+        }
+
+        // the chain went on while the router was down
+        MockDriver driver = new MockDriver();
+        driver.setBlockNumber(5000);
+        ChainInfo chainInfo = new ChainInfo();
+        chainInfo.setName("chain");
+        chainInfo.setChecksum("checksum");
+        Chain chain = new Chain("zone", chainInfo, driver, Mockito.mock(Connection.class));
+
+        PersistentBlockHeaderManager manager =
+                BlockHeaderManagerFixture.setUp(new PersistentBlockHeaderManager(), chain);
+        manager.setBlockHeaderStore(store);
+        manager.setMaxCatchUpBlocks(100);
+        manager.start();
+        BlockHeaderManagerFixture.waitForBlockNumber(manager, 5000);
+
+        // synced from the tip, the downtime is left as a gap in the store
+        assertTrue(driver.getBlockHeaderRequests() < 10);
+        assertArrayEquals(MockDriver.encodeBlockHeader(10), store.get(10));
+        assertNull(store.get(11));
+        assertArrayEquals(MockDriver.encodeBlockHeader(5000), store.get(5000));
+        manager.stop();
+    }
+}
@@ -1,5 +1,11 @@
 package com.webank.wecross.test.stubmanager;
 
+import static com.webank.wecross.test.Mock.BlockHeaderManagerFixture.getBlockNumber;
+import static com.webank.wecross.test.Mock.BlockHeaderManagerFixture.newChain;
+import static com.webank.wecross.test.Mock.BlockHeaderManagerFixture.newManager;
+import static com.webank.wecross.test.Mock.BlockHeaderManagerFixture.waitFor;
+import static com.webank.wecross.test.Mock.BlockHeaderManagerFixture.waitForBlockNumber;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -7,7 +13,11 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.webank.wecross.network.p2p.netty.common.Node;
+import com.webank.wecross.peer.Peer;
+import com.webank.wecross.resource.Resource;
 import com.webank.wecross.stub.BlockHeader;
+import com.webank.wecross.stub.BlockHeaderManager;
 import com.webank.wecross.stub.Connection;
 import com.webank.wecross.stub.Driver;
 import com.webank.wecross.stub.Driver.GetBlockHeaderCallback;
@@ -16,13 +26,21 @@ import com.webank.wecross.stub.Request;
 import com.webank.wecross.stub.ResourceInfo;
 import com.webank.wecross.stub.Response;
 import com.webank.wecross.stubmanager.MemoryBlockHeaderManager;
+import com.webank.wecross.test.Mock.MockDriver;
 import com.webank.wecross.zone.Chain;
+import com.webank.wecross.zone.ChainInfo;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -96,6 +114,12 @@ public class MemoryBlockHeaderManagerTest {
                 .when(driver)
                 .asyncGetBlockHeader(Mockito.anyLong(), Mockito.any(), Mockito.any());
 
+        // the catch up fetches ranges, served by the default method over asyncGetBlockHeader
+        Mockito.doCallRealMethod()
+                .when(driver)
+                .asyncGetBlockHeaders(
+                        Mockito.anyLong(), Mockito.anyLong(), Mockito.any(), Mockito.any());
+
         Chain chain = Mockito.mock(Chain.class);
         Mockito.when(chain.getDriver()).thenReturn(driver);
         Mockito.when(chain.chooseConnection())
@@ -263,6 +287,432 @@ public class MemoryBlockHeaderManagerTest {
         memoryBlockHeaderManager.stop();
     }
 
+    private long getBlockHeader(MockDriver driver, MemoryBlockHeaderManager manager, long number)
+            throws Exception {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        manager.asyncGetBlockHeader(
+                number,
+                (e, data) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    } else {
+                        future.complete(data);
+                    }
+                });
+        return driver.decodeBlockHeader(future.get(5, TimeUnit.SECONDS)).getNumber();
+    }
+
+    @Test
+    public void ringBufferTest() throws Exception {
+        MockDriver driver = new MockDriver();
+        driver.setBlockNumber(100);
+        MemoryBlockHeaderManager manager = newManager(newChain("zone", driver));
+        manager.setMaxCacheSize(20);
+        manager.start();
+        waitForBlockNumber(manager, 100);
+
+        driver.setBlockNumber(130);
+        waitForBlockNumber(manager, 130);
+
+        // the last 20 headers are served from the cache
+        int requests = driver.getBlockHeaderRequests();
+        for (long i = 111; i <= 130; ++i) {
+            assertEquals(i, getBlockHeader(driver, manager, i));
+        }
+        assertEquals(requests, driver.getBlockHeaderRequests());
+
+        // older ones have been evicted and go to the chain
+        assertEquals(110, getBlockHeader(driver, manager, 110));
+        assertEquals(requests + 1, driver.getBlockHeaderRequests());
+
+        // readers see consistent headers while new blocks are inserted
+        AtomicBoolean wrong = new AtomicBoolean(false);
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int t = 0; t < 4; ++t) {
+            Thread reader =
+                    new Thread(
+                            () -> {
+                                for (int i = 0; i < 200; ++i) {
+                                    try {
+                                        long latest = getBlockNumber(manager);
+                                        if (getBlockHeader(driver, manager, latest) != latest) {
+                                            wrong.set(true);
+                                        }
+                                    } catch (Exception e) {
+                                        wrong.set(true);
+                                    }
+                                }
+                            });
+            reader.start();
+            readers.add(reader);
+        }
+        for (long i = 131; i <= 200; ++i) {
+            driver.setBlockNumber(i);
+            Thread.sleep(2);
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertFalse(wrong.get());
+
+        waitForBlockNumber(manager, 200);
+        manager.stop();
+    }
+
+    @Test
+    public void farBehindTest() throws Exception {
+        MockDriver driver = new MockDriver();
+        driver.setBlockNumber(100);
+        MemoryBlockHeaderManager manager = newManager(newChain("zone", driver));
+        manager.setMaxCatchUpBlocks(50);
+        manager.start();
+        waitForBlockNumber(manager, 100);
+
+        // waits for a block the jump to the tip skips
+        CompletableFuture<byte[]> waiting = new CompletableFuture<>();
+        manager.asyncGetBlockHeader(105, (e, data) -> waiting.complete(data));
+
+        // far behind, only the tip is synced
+        int requests = driver.getBlockHeaderRequests();
+        driver.setBlockNumber(100000);
+        waitForBlockNumber(manager, 100000);
+        assertTrue(driver.getBlockHeaderRequests() - requests < 10);
+        assertArrayEquals(MockDriver.encodeBlockHeader(105), waiting.get(5, TimeUnit.SECONDS));
+
+        // a gap within the bound is caught up
+        driver.setBlockNumber(100030);
+        waitForBlockNumber(manager, 100030);
+        requests = driver.getBlockHeaderRequests();
+        assertEquals(100015, getBlockHeader(driver, manager, 100015));
+        assertEquals(requests, driver.getBlockHeaderRequests());
+        manager.stop();
+    }
+
+    @Test
+    public void catchUpTest() throws Exception {
+        List<long[]> requests = new ArrayList<long[]>();
+        Map<Connection, Integer> connectionIndex = new HashMap<Connection, Integer>();
+        AtomicBoolean dropped = new AtomicBoolean(false);
+        MockDriver driver =
+                new MockDriver() {
+                    @Override
+                    public void asyncGetBlockHeaders(
+                            long from,
+                            long to,
+                            Connection connection,
+                            GetBlockHeadersCallback callback) {
+                        synchronized (requests) {
+                            requests.add(new long[] {from, to, connectionIndex.get(connection)});
+                        }
+
+                        // the first range sent to the first connection is never answered
+                        if (connectionIndex.get(connection) == 0
+                                && dropped.compareAndSet(false, true)) {
+                            return;
+                        }
+                        super.asyncGetBlockHeaders(from, to, connection, callback);
+                    }
+                };
+        driver.setBlockNumber(1);
+
+        Map<Peer, Connection> connections = new HashMap<Peer, Connection>();
+        for (int i = 0; i < 3; ++i) {
+            Connection connection = Mockito.mock(Connection.class);
+            connectionIndex.put(connection, i);
+            connections.put(new Peer(new Node("node" + i, "127.0.0.1", 25500 + i)), connection);
+        }
+        Resource resource = new Resource();
+        resource.setConnection(connections);
+        Map<String, Resource> resources = new HashMap<String, Resource>();
+        resources.put("resource", resource);
+
+        ChainInfo chainInfo = new ChainInfo();
+        chainInfo.setName("chain");
+        Chain chain = new Chain("zone", chainInfo, driver, null);
+        chain.setResources(resources);
+
+        MemoryBlockHeaderManager manager = newManager(chain);
+        manager.setMaxCacheSize(200);
+        manager.setSyncWindow(8);
+        manager.setSyncBatchSize(4);
+        manager.setSyncBatchTimeout(200);
+        manager.start();
+        waitForBlockNumber(manager, 1);
+
+        driver.setBlockNumber(101);
+        waitForBlockNumber(manager, 101);
+        for (long i = 1; i <= 101; ++i) {
+            assertEquals(i, getBlockHeader(driver, manager, i));
+        }
+        assertTrue(manager.getCatchUpRate() > 0);
+        manager.stop();
+
+        long[] lost = null;
+        boolean[] used = new boolean[3];
+        synchronized (requests) {
+            for (long[] request : requests) {
+                assertTrue(request[1] - request[0] < 4);
+                used[(int) request[2]] = true;
+                if (lost == null && request[2] == 0) {
+                    lost = request;
+                }
+            }
+
+            // the lost range is fetched again over another connection after its deadline
+            boolean retried = false;
+            for (long[] request : requests) {
+                if (request != lost && request[0] == lost[0]) {
+                    assertEquals(lost[1], request[1]);
+                    assertTrue(request[2] != lost[2]);
+                    retried = true;
+                }
+            }
+            assertTrue(retried);
+        }
+        assertTrue(used[0] && used[1] && used[2]);
+    }
+
+    @Test
+    public void subscribeTest() throws Exception {
+        AtomicInteger driverSubscriptions = new AtomicInteger(0);
+        MockDriver driver =
+                new MockDriver() {
+                    @Override
+                    public boolean subscribeBlockHeader(
+                            Connection connection, GetBlockHeaderCallback callback) {
+                        driverSubscriptions.incrementAndGet();
+                        return true;
+                    }
+
+                    @Override
+                    public void unsubscribeBlockHeader(
+                            Connection connection, GetBlockHeaderCallback callback) {
+                        driverSubscriptions.decrementAndGet();
+                    }
+                };
+        driver.setBlockNumber(10);
+        MemoryBlockHeaderManager manager = newManager(newChain("zone", driver));
+        manager.setMaxCacheSize(100);
+        manager.start();
+        waitForBlockNumber(manager, 10);
+        assertEquals(1, driverSubscriptions.get());
+        assertTrue(manager.isPushEnabled());
+
+        // older headers are delivered first, then the new ones, each exactly once and in order
+        List<Long> received = Collections.synchronizedList(new ArrayList<Long>());
+        BlockHeaderManager.BlockHeaderListener listener =
+                (blockNumber, data) -> {
+                    if (driver.decodeBlockHeader(data).getNumber() == blockNumber) {
+                        received.add(blockNumber);
+                    }
+                };
+        manager.subscribe(5, listener);
+        driver.setBlockNumber(30);
+        waitFor(() -> received.size() == 26);
+        for (int i = 0; i < received.size(); ++i) {
+            assertEquals(5 + i, received.get(i).longValue());
+        }
+
+        manager.unsubscribe(listener);
+        driver.setBlockNumber(40);
+        waitForBlockNumber(manager, 40);
+        Thread.sleep(50);
+        assertEquals(26, received.size());
+
+        // the driver subscription does not outlive the manager
+        manager.stop();
+        assertEquals(0, driverSubscriptions.get());
+        manager.start();
+        assertEquals(1, driverSubscriptions.get());
+        manager.stop();
+        assertEquals(0, driverSubscriptions.get());
+    }
+
+    @Test
+    public void blockIntervalTest() throws Exception {
+        MockDriver driver = new MockDriver();
+        driver.setBlockNumber(1);
+        MemoryBlockHeaderManager manager = newManager(newChain("zone", driver));
+        manager.start();
+        waitForBlockNumber(manager, 1);
+
+        // blocks come slower than the longest poll delay
+        long maxLag = 0;
+        for (long i = 2; i <= 8; ++i) {
+            Thread.sleep(300);
+            driver.setBlockNumber(i);
+            long start = System.currentTimeMillis();
+            waitForBlockNumber(manager, i);
+            maxLag = Math.max(maxLag, System.currentTimeMillis() - start);
+        }
+
+        // the estimate follows the real interval, the polls still come within maxPollDelay
+        assertTrue(manager.getBlockInterval() > 200);
+        assertTrue(manager.getBlockInterval() < 600);
+        assertTrue(maxLag < 200);
+        manager.stop();
+    }
+
+    /** Block header of a driver that carries more than the base fields */
+    private static class ExtendedBlockHeader extends BlockHeader {
+        private String extraData;
+    }
+
+    private BlockHeader getDecodedBlockHeader(MemoryBlockHeaderManager manager, long number)
+            throws Exception {
+        CompletableFuture<BlockHeader> future = new CompletableFuture<>();
+        manager.asyncGetDecodedBlockHeader(
+                number,
+                (e, blockHeader, data) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    } else {
+                        future.complete(blockHeader);
+                    }
+                });
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void decodedBlockHeaderTest() throws Exception {
+        MockDriver driver =
+                new MockDriver() {
+                    @Override
+                    public BlockHeader decodeBlockHeader(byte[] data) {
+                        ExtendedBlockHeader blockHeader = new ExtendedBlockHeader();
+                        blockHeader.setNumber(super.decodeBlockHeader(data).getNumber());
+                        blockHeader.extraData = "extra " + blockHeader.getNumber();
+                        return blockHeader;
+                    }
+                };
+        driver.setBlockNumber(100);
+        MemoryBlockHeaderManager manager = newManager(newChain("zone", driver));
+        manager.setMaxCacheSize(20);
+        manager.start();
+        waitForBlockNumber(manager, 100);
+
+        // cached headers are decoded once by the sync and shared as the driver returned them
+        int decoded = driver.getDecodeCount();
+        BlockHeader blockHeader = getDecodedBlockHeader(manager, 100);
+        assertTrue(blockHeader instanceof ExtendedBlockHeader);
+        assertEquals("extra 100", ((ExtendedBlockHeader) blockHeader).extraData);
+        assertTrue(blockHeader == getDecodedBlockHeader(manager, 100));
+        assertEquals(decoded, driver.getDecodeCount());
+
+        // evicted ones are fetched and decoded again
+        blockHeader = getDecodedBlockHeader(manager, 50);
+        assertEquals(50, blockHeader.getNumber());
+        assertEquals("extra 50", ((ExtendedBlockHeader) blockHeader).extraData);
+        assertEquals(decoded + 1, driver.getDecodeCount());
+        manager.stop();
+    }
+
+    private List<byte[]> getBlockHeaders(MemoryBlockHeaderManager manager, long from, long to)
+            throws Exception {
+        CompletableFuture<List<byte[]>> future = new CompletableFuture<>();
+        manager.asyncGetBlockHeaders(
+                from,
+                to,
+                (e, blockHeaders) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    } else {
+                        future.complete(blockHeaders);
+                    }
+                });
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    private void assertBlockHeaders(long from, long to, List<byte[]> blockHeaders) {
+        assertEquals(to - from + 1, blockHeaders.size());
+        for (int i = 0; i < blockHeaders.size(); ++i) {
+            assertArrayEquals(MockDriver.encodeBlockHeader(from + i), blockHeaders.get(i));
+        }
+    }
+
+    @Test
+    public void blockHeadersTest() throws Exception {
+        List<long[]> batches = new ArrayList<long[]>();
+        MockDriver driver =
+                new MockDriver() {
+                    @Override
+                    public void asyncGetBlockHeaders(
+                            long from,
+                            long to,
+                            Connection connection,
+                            GetBlockHeadersCallback callback) {
+                        synchronized (batches) {
+                            batches.add(new long[] {from, to});
+                        }
+                        super.asyncGetBlockHeaders(from, to, connection, callback);
+                    }
+                };
+        driver.setBlockNumber(1);
+        MemoryBlockHeaderManager manager = newManager(newChain("zone", driver));
+        manager.setMaxCacheSize(20);
+        manager.start();
+        waitForBlockNumber(manager, 1);
+        driver.setBlockNumber(100);
+        waitForBlockNumber(manager, 100);
+
+        // cached headers are served without asking the chain
+        int requests = driver.getBlockHeaderRequests();
+        assertBlockHeaders(81, 100, getBlockHeaders(manager, 81, 100));
+        assertEquals(requests, driver.getBlockHeaderRequests());
+
+        // the evicted part is fetched by one batch call
+        synchronized (batches) {
+            batches.clear();
+        }
+        assertBlockHeaders(51, 90, getBlockHeaders(manager, 51, 90));
+        synchronized (batches) {
+            assertEquals(1, batches.size());
+            assertEquals(51, batches.get(0)[0]);
+            assertEquals(80, batches.get(0)[1]);
+        }
+
+        // future headers are answered once synced
+        CompletableFuture<List<byte[]>> future = new CompletableFuture<>();
+        manager.asyncGetBlockHeaders(
+                95,
+                105,
+                (e, blockHeaders) -> {
+                    future.complete(blockHeaders);
+                });
+        Thread.sleep(50);
+        assertFalse(future.isDone());
+        driver.setBlockNumber(105);
+        assertBlockHeaders(95, 105, future.get(5, TimeUnit.SECONDS));
+
+        // invalid ranges fail
+        CompletableFuture<Exception> error = new CompletableFuture<>();
+        manager.asyncGetBlockHeaders(10, 5, (e, blockHeaders) -> error.complete(e));
+        assertNotNull(error.get(5, TimeUnit.SECONDS));
+        manager.stop();
+    }
+
+    @Test
+    public void driverBlockHeadersTest() throws Exception {
+        MockDriver driver = new MockDriver();
+        driver.setBlockNumber(2000);
+
+        CompletableFuture<List<byte[]>> future = new CompletableFuture<>();
+        driver.asyncGetBlockHeaders(
+                10, 20, null, (e, blockHeaders) -> future.complete(blockHeaders));
+        assertBlockHeaders(10, 20, future.get(5, TimeUnit.SECONDS));
+
+        // empty, reversed and too long ranges are answered with an error, nothing is fetched
+        int requests = driver.getBlockHeaderRequests();
+        long[][] ranges = {{10, 9}, {10, 5}, {-1, 5}, {1, 1001}};
+        for (long[] range : ranges) {
+            CompletableFuture<Exception> error = new CompletableFuture<>();
+            driver.asyncGetBlockHeaders(
+                    range[0], range[1], null, (e, blockHeaders) -> error.complete(e));
+            assertTrue(error.get(5, TimeUnit.SECONDS) instanceof IllegalArgumentException);
+        }
+        assertEquals(requests, driver.getBlockHeaderRequests());
+    }
+
     private void waitingForAllDone(ThreadPoolTaskExecutor threadPool, String prefix)
             throws InterruptedException {
         int waitingTimes = 0;
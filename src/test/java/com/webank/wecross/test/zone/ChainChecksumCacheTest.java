@@ -0,0 +1,38 @@
+package com.webank.wecross.test.zone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.webank.wecross.zone.ChainChecksumCache;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChainChecksumCacheTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void cacheTest() throws Exception {
+        File file = new File(folder.newFolder("cache"), "conf/checksums.properties");
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("host", "127.0.0.1");
+        properties.put("port", "8545");
+
+        ChainChecksumCache cache = new ChainChecksumCache(file);
+        assertNull(cache.get("payment.bcos", properties));
+        cache.put("payment.bcos", properties, "0x1234");
+        assertEquals("0x1234", cache.get("payment.bcos", properties));
+
+        // reloaded from disk
+        cache = new ChainChecksumCache(file);
+        assertEquals("0x1234", cache.get("payment.bcos", new HashMap<>(properties)));
+        assertNull(cache.get("payment.fabric", properties));
+
+        // connecting somewhere else invalidates the entry
+        properties.put("port", "8546");
+        assertNull(cache.get("payment.bcos", properties));
+    }
+}
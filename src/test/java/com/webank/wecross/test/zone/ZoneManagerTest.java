@@ -6,6 +6,7 @@ import static org.junit.Assert.assertNull;
 import com.webank.wecross.config.ResourceThreadPoolConfig;
 import com.webank.wecross.network.p2p.netty.common.Node;
 import com.webank.wecross.peer.Peer;
+import com.webank.wecross.peer.PeerInfoDeltaMessageData;
 import com.webank.wecross.resource.Resource;
 import com.webank.wecross.stub.Path;
 import com.webank.wecross.stub.ResourceInfo;
@@ -17,6 +18,7 @@ import com.webank.wecross.zone.ChainInfo;
 import com.webank.wecross.zone.Zone;
 import com.webank.wecross.zone.ZoneManager;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import org.junit.Assert;
@@ -320,4 +322,124 @@ public class ZoneManagerTest {
         zoneManager.addRemoteChains(peer, chains2);
         Assert.assertTrue(zoneManager.getChain(Path.decode(path)) != null);
     }
+
+    @Test
+    public void chainsInfoDeltaTest() throws Exception {
+        ZoneManager zoneManager = new ZoneManager();
+        long epoch = zoneManager.getEpoch();
+
+        // up to date
+        PeerInfoDeltaMessageData data = zoneManager.getChainsInfoDelta(epoch, 1);
+        Assert.assertFalse(data.isFull());
+        Assert.assertEquals(1, data.getSeq());
+        Assert.assertTrue(data.getChainInfos().isEmpty());
+        Assert.assertTrue(data.getRemovedChains().isEmpty());
+
+        // restarted since
+        data = zoneManager.getChainsInfoDelta(epoch + 1, 1);
+        Assert.assertTrue(data.isFull());
+        Assert.assertEquals(epoch, data.getEpoch());
+
+        // the chain is not local any more
+        zoneManager.newSeq("payment.bcos.null");
+        data = zoneManager.getChainsInfoDelta(epoch, 1);
+        Assert.assertFalse(data.isFull());
+        Assert.assertEquals(2, data.getSeq());
+        Assert.assertEquals(
+                Collections.singletonList("payment.bcos.null"), data.getRemovedChains());
+
+        data = zoneManager.getChainsInfoDelta(epoch, 2);
+        Assert.assertFalse(data.isFull());
+        Assert.assertTrue(data.getRemovedChains().isEmpty());
+
+        // unknown change
+        zoneManager.newSeq();
+        data = zoneManager.getChainsInfoDelta(epoch, 2);
+        Assert.assertTrue(data.isFull());
+        Assert.assertEquals(3, data.getSeq());
+    }
+
+    @Test
+    public void updateRemoteChainsTest() throws Exception {
+        StubFactory stubFactory = Mockito.spy(StubFactory.class);
+        Mockito.when(stubFactory.newConnection(Mockito.anyString())).thenReturn(null);
+        Mockito.when(stubFactory.newDriver()).thenReturn(null);
+
+        StubManager stubManager = Mockito.mock(StubManager.class);
+        Mockito.when(stubManager.getStubFactory("test")).thenReturn(stubFactory);
+
+        ResourceThreadPoolConfig.ResourceThreadPool resourceThreadPool =
+                new ResourceThreadPoolConfig.ResourceThreadPool(10, 10, 200);
+        MemoryBlockHeaderManagerFactory resourceBlockHeaderManagerFactory =
+                new MemoryBlockHeaderManagerFactory(resourceThreadPool);
+
+        ZoneManager zoneManager = new ZoneManager();
+        zoneManager.setStubManager(stubManager);
+        zoneManager.setResourceBlockHeaderManagerFactory(resourceBlockHeaderManagerFactory);
+
+        Peer peer = new Peer(new Node("aaa", "127.0.0.1", 100));
+        String path = "payment.bcos";
+
+        ChainInfo chainInfo = new ChainInfo();
+        chainInfo.setName("bcos");
+        chainInfo.setStubType("test");
+        chainInfo.setChecksum("chainChecksum");
+        chainInfo.setResources(new ArrayList<ResourceInfo>());
+        for (int i = 0; i < 2; i++) {
+            ResourceInfo resourceInfo = new ResourceInfo();
+            resourceInfo.setName("resource" + i);
+            resourceInfo.setStubType("test");
+            chainInfo.getResources().add(resourceInfo);
+        }
+
+        Map<String, ChainInfo> oldChains = new HashMap<String, ChainInfo>();
+        zoneManager.updateRemoteChains(
+                peer,
+                oldChains,
+                Collections.singletonMap(path, chainInfo),
+                new ArrayList<String>());
+        oldChains.put(path, chainInfo);
+        Chain chain = zoneManager.getChain(Path.decode(path));
+        Assert.assertNotNull(chain);
+        Assert.assertNotNull(zoneManager.getResource(Path.decode("payment.bcos.resource0")));
+
+        // resource0 removed, resource2 added, the chain is kept
+        ChainInfo chainInfo2 = new ChainInfo();
+        chainInfo2.setName("bcos");
+        chainInfo2.setStubType("test");
+        chainInfo2.setChecksum("chainChecksum");
+        chainInfo2.setResources(new ArrayList<ResourceInfo>());
+        for (int i = 1; i < 3; i++) {
+            ResourceInfo resourceInfo = new ResourceInfo();
+            resourceInfo.setName("resource" + i);
+            resourceInfo.setStubType("test");
+            chainInfo2.getResources().add(resourceInfo);
+        }
+
+        Assert.assertTrue(
+                zoneManager.updateRemoteChains(
+                        peer,
+                        oldChains,
+                        Collections.singletonMap(path, chainInfo2),
+                        new ArrayList<String>()));
+        oldChains.put(path, chainInfo2);
+        Assert.assertTrue(chain == zoneManager.getChain(Path.decode(path)));
+        Assert.assertNull(zoneManager.getResource(Path.decode("payment.bcos.resource0")));
+        Assert.assertNotNull(zoneManager.getResource(Path.decode("payment.bcos.resource2")));
+
+        // nothing changed
+        Assert.assertFalse(
+                zoneManager.updateRemoteChains(
+                        peer,
+                        oldChains,
+                        Collections.singletonMap(path, chainInfo2),
+                        new ArrayList<String>()));
+
+        zoneManager.updateRemoteChains(
+                peer,
+                oldChains,
+                new HashMap<String, ChainInfo>(),
+                Collections.singletonList(path));
+        Assert.assertNull(zoneManager.getChain(Path.decode(path)));
+    }
 }